@@ -0,0 +1,54 @@
+package sk.soliont.text.format.benchmarks;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.soliont.text.format.CompiledMessage;
+import sk.soliont.text.format.NamedArgsMessageFormat;
+
+/**
+ * Cost of parsing a pattern and creating its subformats.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+
+  @Benchmark
+  public NamedArgsMessageFormat applyPatternShort() {
+    return new NamedArgsMessageFormat(Fixtures.SHORT_PATTERN, Fixtures.LOCALE);
+  }
+
+  @Benchmark
+  public NamedArgsMessageFormat applyPatternLong() {
+    return new NamedArgsMessageFormat(Fixtures.LONG_PATTERN, Fixtures.LOCALE);
+  }
+
+  @Benchmark
+  public CompiledMessage compileLong() {
+    return CompiledMessage.compile(Fixtures.LONG_PATTERN, Fixtures.LOCALE);
+  }
+
+  @Benchmark
+  public MessageFormat messageFormatShort() {
+    return new MessageFormat(Fixtures.SHORT_INDEXED, Fixtures.LOCALE);
+  }
+
+  @Benchmark
+  public MessageFormat messageFormatLong() {
+    return new MessageFormat(Fixtures.LONG_INDEXED, Fixtures.LOCALE);
+  }
+}
@@ -0,0 +1,73 @@
+package sk.soliont.text.format.benchmarks;
+
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.soliont.text.format.CompiledMessage;
+import sk.soliont.text.format.NamedArgsMessageFormat;
+
+/**
+ * One template shared by all benchmark threads: a shared compiled message,
+ * a shared format behind a lock, and a clone per call.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+  private CompiledMessage compiledMessage;
+  private NamedArgsMessageFormat namedFormat;
+  private MessageFormat messageFormat;
+  private Map<String, Object> namedArguments;
+  private Object[] indexedArguments;
+
+  @Setup
+  public void setUp() {
+    compiledMessage = CompiledMessage.compile(Fixtures.LONG_PATTERN, Fixtures.LOCALE);
+    namedFormat = new NamedArgsMessageFormat(Fixtures.LONG_PATTERN, Fixtures.LOCALE);
+    messageFormat = new MessageFormat(Fixtures.LONG_INDEXED, Fixtures.LOCALE);
+    namedArguments = Fixtures.longArguments();
+    indexedArguments = Fixtures.longIndexed();
+  }
+
+  @Benchmark
+  public String compiledMessageShared() {
+    return compiledMessage.format(namedArguments);
+  }
+
+  @Benchmark
+  public String namedArgsMessageFormatLocked() {
+    synchronized (namedFormat) {
+      return namedFormat.format(namedArguments);
+    }
+  }
+
+  @Benchmark
+  public String namedArgsMessageFormatCloned() {
+    return ((NamedArgsMessageFormat) namedFormat.clone()).format(namedArguments);
+  }
+
+  @Benchmark
+  public String messageFormatLocked() {
+    synchronized (messageFormat) {
+      return messageFormat.format(indexedArguments);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package sk.soliont.text.format.benchmarks;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Patterns and arguments shared by the benchmarks. Every named pattern has
+ * an equivalent indexed pattern for the <code>MessageFormat</code> baseline
+ * and a format string for the <code>String.format</code> baseline. The
+ * format strings take the same indexed arguments and produce output of a
+ * similar length, not the same text: <code>String.format</code> has no
+ * choice or percent conversion.
+ */
+final class Fixtures {
+
+  static final Locale LOCALE = Locale.US;
+
+  static final String SHORT_PATTERN = "Hello {name}!";
+  static final String SHORT_INDEXED = "Hello {0}!";
+
+  static final String LONG_PATTERN = "Dear {name}, your order {order} of {count,number,integer} items"
+      + " worth {price,number,#,##0.00} was shipped on {shipped,date,yyyy-MM-dd} at {shipped,time,short}."
+      + " You have {count,choice,0#no parcels|1#one parcel|1<{count,number,integer} parcels} on the way."
+      + " Questions? Write to {support} and quote {order}.";
+  static final String LONG_INDEXED = "Dear {0}, your order {1} of {2,number,integer} items"
+      + " worth {3,number,#,##0.00} was shipped on {4,date,yyyy-MM-dd} at {4,time,short}."
+      + " You have {2,choice,0#no parcels|1#one parcel|1<{2,number,integer} parcels} on the way."
+      + " Questions? Write to {5} and quote {1}.";
+  static final String LONG_PRINTF = "Dear %1$s, your order %2$s of %3$d items"
+      + " worth %4$,.2f was shipped on %5$tF at %5$tR."
+      + " You have %3$d parcels on the way."
+      + " Questions? Write to %6$s and quote %2$s.";
+
+  static final String STRINGS_PATTERN = "{first} {second} {third} {fourth}";
+  static final String STRINGS_INDEXED = "{0} {1} {2} {3}";
+  static final String STRINGS_PRINTF = "%s %s %s %s";
+
+  static final String NUMBERS_PATTERN = "{count} of {total,number,integer} ({ratio,number,percent})";
+  static final String NUMBERS_INDEXED = "{0} of {1,number,integer} ({2,number,percent})";
+  static final String NUMBERS_PRINTF = "%,d of %,d (%.3f)";
+
+  static final String DATES_PATTERN = "{when} / {when,date,long} / {when,time,medium}";
+  static final String DATES_INDEXED = "{0} / {0,date,long} / {0,time,medium}";
+  static final String DATES_PRINTF = "%1$tc / %1$tB %1$te, %1$tY / %1$tr";
+
+  static final String CHOICE_PATTERN = "There {count,choice,0#are no files|1#is one file|1<are {count,number,integer} files}.";
+  static final String CHOICE_INDEXED = "There {0,choice,0#are no files|1#is one file|1<are {0,number,integer} files}.";
+  static final String CHOICE_PRINTF = "There are %d files.";
+
+  static final Date DATE = new Date(1546300800000L);
+
+  static Map<String, Object> shortArguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    return arguments;
+  }
+
+  static Object[] shortIndexed() {
+    return new Object[] {"user"};
+  }
+
+  static Map<String, Object> longArguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("order", "A-1234567");
+    arguments.put("count", 3);
+    arguments.put("price", 1234.5);
+    arguments.put("shipped", DATE);
+    arguments.put("support", "support@example.com");
+    return arguments;
+  }
+
+  static Object[] longIndexed() {
+    return new Object[] {"user", "A-1234567", 3, 1234.5, DATE, "support@example.com"};
+  }
+
+  static Map<String, Object> stringArguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("first", "alpha");
+    arguments.put("second", "beta");
+    arguments.put("third", "gamma");
+    arguments.put("fourth", "delta");
+    return arguments;
+  }
+
+  static Object[] stringIndexed() {
+    return new Object[] {"alpha", "beta", "gamma", "delta"};
+  }
+
+  static Map<String, Object> numberArguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("count", 1234567);
+    arguments.put("total", 9876543210L);
+    arguments.put("ratio", 0.125);
+    return arguments;
+  }
+
+  static Object[] numberIndexed() {
+    return new Object[] {1234567, 9876543210L, 0.125};
+  }
+
+  static Map<String, Object> dateArguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("when", DATE);
+    return arguments;
+  }
+
+  static Object[] dateIndexed() {
+    return new Object[] {DATE};
+  }
+
+  static Map<String, Object> choiceArguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("count", 42);
+    return arguments;
+  }
+
+  static Object[] choiceIndexed() {
+    return new Object[] {42};
+  }
+
+  private Fixtures() {
+  }
+}
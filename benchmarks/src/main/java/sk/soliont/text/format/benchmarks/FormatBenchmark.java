@@ -0,0 +1,120 @@
+package sk.soliont.text.format.benchmarks;
+
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.soliont.text.format.CompiledMessage;
+import sk.soliont.text.format.NamedArgsMessageFormat;
+
+/**
+ * Formatting with an already compiled pattern, by argument type.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatBenchmark {
+
+  @Param({"strings", "numbers", "dates", "choice", "long"})
+  public String arguments;
+
+  private NamedArgsMessageFormat namedFormat;
+  private CompiledMessage compiledMessage;
+  private CompiledMessage specializedMessage;
+  private MessageFormat messageFormat;
+  private String printf;
+  private Map<String, Object> namedArguments;
+  private Object[] indexedArguments;
+
+  @Setup
+  public void setUp() {
+    String pattern;
+    String indexed;
+    switch (arguments) {
+      case "strings":
+        pattern = Fixtures.STRINGS_PATTERN;
+        indexed = Fixtures.STRINGS_INDEXED;
+        printf = Fixtures.STRINGS_PRINTF;
+        namedArguments = Fixtures.stringArguments();
+        indexedArguments = Fixtures.stringIndexed();
+        break;
+      case "numbers":
+        pattern = Fixtures.NUMBERS_PATTERN;
+        indexed = Fixtures.NUMBERS_INDEXED;
+        printf = Fixtures.NUMBERS_PRINTF;
+        namedArguments = Fixtures.numberArguments();
+        indexedArguments = Fixtures.numberIndexed();
+        break;
+      case "dates":
+        pattern = Fixtures.DATES_PATTERN;
+        indexed = Fixtures.DATES_INDEXED;
+        printf = Fixtures.DATES_PRINTF;
+        namedArguments = Fixtures.dateArguments();
+        indexedArguments = Fixtures.dateIndexed();
+        break;
+      case "choice":
+        pattern = Fixtures.CHOICE_PATTERN;
+        indexed = Fixtures.CHOICE_INDEXED;
+        printf = Fixtures.CHOICE_PRINTF;
+        namedArguments = Fixtures.choiceArguments();
+        indexedArguments = Fixtures.choiceIndexed();
+        break;
+      default:
+        pattern = Fixtures.LONG_PATTERN;
+        indexed = Fixtures.LONG_INDEXED;
+        printf = Fixtures.LONG_PRINTF;
+        namedArguments = Fixtures.longArguments();
+        indexedArguments = Fixtures.longIndexed();
+        break;
+    }
+    namedFormat = new NamedArgsMessageFormat(pattern, Fixtures.LOCALE);
+    compiledMessage = CompiledMessage.compile(pattern, Fixtures.LOCALE);
+    specializedMessage = compiledMessage.specialize();
+    messageFormat = new MessageFormat(indexed, Fixtures.LOCALE);
+  }
+
+  @Benchmark
+  public String namedArgsMessageFormat() {
+    return namedFormat.format(namedArguments);
+  }
+
+  @Benchmark
+  public String compiledMessageMap() {
+    return compiledMessage.format(namedArguments);
+  }
+
+  @Benchmark
+  public String compiledMessageSlots() {
+    return compiledMessage.format(indexedArguments);
+  }
+
+  @Benchmark
+  public String specializedMessageSlots() {
+    return specializedMessage.format(indexedArguments);
+  }
+
+  @Benchmark
+  public String messageFormat() {
+    return messageFormat.format(indexedArguments);
+  }
+
+  @Benchmark
+  public String stringFormat() {
+    return String.format(Fixtures.LOCALE, printf, indexedArguments);
+  }
+}
@@ -0,0 +1,68 @@
+package sk.soliont.text.format.benchmarks;
+
+import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.soliont.text.format.CompiledMessage;
+import sk.soliont.text.format.MessageArguments;
+import sk.soliont.text.format.NamedArgsMessageFormat;
+
+/**
+ * Parsing formatted text back into arguments.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+  private NamedArgsMessageFormat namedFormat;
+  private MessageFormat messageFormat;
+  private CompiledMessage compiledMessage;
+  private MessageArguments arguments;
+  private ParsePosition position;
+  private String source;
+
+  @Setup
+  public void setUp() {
+    namedFormat = new NamedArgsMessageFormat(Fixtures.STRINGS_PATTERN, Fixtures.LOCALE);
+    messageFormat = new MessageFormat(Fixtures.STRINGS_INDEXED, Fixtures.LOCALE);
+    compiledMessage = CompiledMessage.compile(Fixtures.STRINGS_PATTERN, Fixtures.LOCALE);
+    arguments = compiledMessage.newArguments();
+    position = new ParsePosition(0);
+    source = namedFormat.format(Fixtures.stringArguments());
+  }
+
+  @Benchmark
+  public Map<String, Object> namedArgsMessageFormat() throws ParseException {
+    return namedFormat.parse(source);
+  }
+
+  @Benchmark
+  public MessageArguments compiledMessageHolder() {
+    position.setIndex(0);
+    compiledMessage.parse(source, position, arguments);
+    return arguments;
+  }
+
+  @Benchmark
+  public Object[] messageFormat() throws ParseException {
+    return messageFormat.parse(source);
+  }
+}
@@ -0,0 +1,71 @@
+package sk.soliont.text.format.benchmarks;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.soliont.text.format.NamedArgsMessageFormat;
+
+/**
+ * The one-shot static format methods, which compile the pattern on every
+ * call unless it is cached.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StaticFormatBenchmark {
+
+  private Map<String, Object> stringArguments;
+  private Object[] stringIndexed;
+  private Map<String, Object> longArguments;
+  private Object[] longIndexed;
+
+  @Setup
+  public void setUp() {
+    Locale.setDefault(Locale.Category.FORMAT, Fixtures.LOCALE);
+    stringArguments = Fixtures.stringArguments();
+    stringIndexed = Fixtures.stringIndexed();
+    longArguments = Fixtures.longArguments();
+    longIndexed = Fixtures.longIndexed();
+  }
+
+  @Benchmark
+  public String namedArgsMessageFormatStrings() {
+    return NamedArgsMessageFormat.format(Fixtures.STRINGS_PATTERN, stringArguments);
+  }
+
+  @Benchmark
+  public String messageFormatStrings() {
+    return MessageFormat.format(Fixtures.STRINGS_INDEXED, stringIndexed);
+  }
+
+  @Benchmark
+  public String stringFormatStrings() {
+    return String.format(Fixtures.STRINGS_PRINTF, stringIndexed);
+  }
+
+  @Benchmark
+  public String namedArgsMessageFormatLong() {
+    return NamedArgsMessageFormat.format(Fixtures.LONG_PATTERN, longArguments);
+  }
+
+  @Benchmark
+  public String messageFormatLong() {
+    return MessageFormat.format(Fixtures.LONG_INDEXED, longIndexed);
+  }
+}
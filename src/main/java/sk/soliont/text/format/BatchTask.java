@@ -0,0 +1,59 @@
+package sk.soliont.text.format;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Formats a range of argument sets into the matching range of a result
+ * array, splitting the range in halves while it is larger than the
+ * threshold. Every worker formats with the per-thread subformats of the
+ * shared message, so the message is never copied.
+ */
+final class BatchTask extends RecursiveAction {
+
+  private static final long serialVersionUID = 1L;
+
+  private final CompiledMessage message;
+  private final List<? extends Map<String, ?>> rows;
+  private final String[] results;
+  private final int from;
+  private final int to;
+  private final int threshold;
+
+  BatchTask(
+      CompiledMessage message, List<? extends Map<String, ?>> rows, String[] results,
+      int from, int to, int threshold
+  ) {
+    this.message = message;
+    this.rows = rows;
+    this.results = results;
+    this.from = from;
+    this.to = to;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Returns the range size below which a task is not split, aiming at a few
+   * tasks per worker so that uneven rows still balance.
+   */
+  static int threshold(int size, int parallelism) {
+    return Math.max(MIN_THRESHOLD, size / (Math.max(1, parallelism) * TASKS_PER_WORKER));
+  }
+
+  @Override
+  protected void compute() {
+    if (to - from <= threshold) {
+      message.formatRange(rows, results, from, to);
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    invokeAll(
+        new BatchTask(message, rows, results, from, middle, threshold),
+        new BatchTask(message, rows, results, middle, to, threshold));
+  }
+
+  private static final int MIN_THRESHOLD = 16;
+
+  private static final int TASKS_PER_WORKER = 4;
+}
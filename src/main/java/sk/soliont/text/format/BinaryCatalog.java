@@ -0,0 +1,225 @@
+package sk.soliont.text.format;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A message catalog stored in a binary file of tokenized templates, read
+ * through a memory mapping.
+ * <p>
+ * The file starts with a header listing the bundles, followed by the
+ * bundles themselves:
+ * <pre>
+ *   int     magic, "NMCF"
+ *   int     version
+ *   string  base name
+ *   int     number of bundles
+ *   per bundle:
+ *     string  language, script, country and variant of the locale
+ *     int     position of the bundle index, relative to the end of the header
+ *   per bundle:
+ *     the {@linkplain MessageTemplate templates} of the bundle
+ *     the bundle index:
+ *       int     number of keys
+ *       per key:
+ *         string  key
+ *         int     position of the template, relative to the end of the header
+ * </pre>
+ * Opening a catalog reads only the header. The index of a bundle is read
+ * when the bundle is first used, and a template when its message is first
+ * compiled, so no pattern is parsed at run time.
+ */
+final class BinaryCatalog implements MessageCatalog.Source {
+
+  private static final int MAGIC = 0x4E4D4346;
+  private static final int VERSION = 2;
+
+  /**
+   * Writes the given bundles, by locale, to a binary catalog file.
+   */
+  static void write(Path file, String baseName, Map<Locale, ? extends MessageCatalog.Bundle> bundles) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream bodyOut = new DataOutputStream(body);
+    List<Integer> indexPositions = new ArrayList<>();
+    for (MessageCatalog.Bundle bundle : bundles.values()) {
+      Map<String, Integer> positions = new LinkedHashMap<>();
+      for (String key : new TreeSet<>(bundle.keys())) {
+        positions.put(key, bodyOut.size());
+        bundle.template(key).writeTo(bodyOut);
+      }
+      indexPositions.add(bodyOut.size());
+      bodyOut.writeInt(positions.size());
+      for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+        MessageTemplate.writeString(bodyOut, entry.getKey());
+        bodyOut.writeInt(entry.getValue());
+      }
+    }
+    bodyOut.flush();
+    try (OutputStream stream = Files.newOutputStream(file);
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      MessageTemplate.writeString(out, baseName);
+      out.writeInt(bundles.size());
+      int bundle = 0;
+      for (Locale locale : bundles.keySet()) {
+        MessageTemplate.writeString(out, locale.getLanguage());
+        MessageTemplate.writeString(out, locale.getScript());
+        MessageTemplate.writeString(out, locale.getCountry());
+        MessageTemplate.writeString(out, locale.getVariant());
+        out.writeInt(indexPositions.get(bundle++));
+      }
+      body.writeTo(out);
+    }
+  }
+
+  /**
+   * Maps the given file and reads its header.
+   *
+   * @throws IOException if the file can not be read or is not a binary catalog
+   */
+  static BinaryCatalog open(Path file) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+        throw new IOException("Not a message catalog: " + file);
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported message catalog version " + version + ": " + file);
+      }
+      String baseName = MessageTemplate.readString(buffer);
+      int count = buffer.getInt();
+      Map<Locale, Integer> indexPositions = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        Locale locale = locale(MessageTemplate.readString(buffer), MessageTemplate.readString(buffer),
+            MessageTemplate.readString(buffer), MessageTemplate.readString(buffer));
+        indexPositions.put(locale, buffer.getInt());
+      }
+      ByteBuffer body = buffer.slice();
+      return new BinaryCatalog(file, baseName, body, indexPositions);
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt message catalog: " + file, e);
+    }
+  }
+
+  /**
+   * Creates the locale with the given fields, ignoring a script that can
+   * not be combined with a legacy variant.
+   */
+  static Locale locale(String language, String script, String country, String variant) {
+    if (!script.isEmpty()) {
+      try {
+        return new Locale.Builder().setLanguage(language).setScript(script)
+            .setRegion(country).setVariant(variant).build();
+      } catch (RuntimeException e) {
+        // fall through
+      }
+    }
+    return new Locale(language, country, variant);
+  }
+
+  private final Path file;
+  private final String baseName;
+  private final ByteBuffer body;
+  private final Map<Locale, Integer> indexPositions;
+
+  private BinaryCatalog(Path file, String baseName, ByteBuffer body, Map<Locale, Integer> indexPositions) {
+    this.file = file;
+    this.baseName = baseName;
+    this.body = body;
+    this.indexPositions = indexPositions;
+  }
+
+  String getBaseName() {
+    return baseName;
+  }
+
+  /**
+   * Maps the file again, to see a new version written in its place.
+   */
+  @Override
+  public BinaryCatalog reopen() throws IOException {
+    return open(file);
+  }
+
+  @Override
+  public List<Locale> locales() {
+    return new ArrayList<>(indexPositions.keySet());
+  }
+
+  @Override
+  public MessageCatalog.Bundle bundle(Locale locale) {
+    Integer position = indexPositions.get(locale);
+    if (position == null) {
+      return null;
+    }
+    ByteBuffer buffer = body.duplicate();
+    buffer.position(position);
+    int count = buffer.getInt();
+    Map<String, Integer> index = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+    for (int i = 0; i < count; i++) {
+      index.put(MessageTemplate.readString(buffer), buffer.getInt());
+    }
+    return new Bundle(index);
+  }
+
+  /**
+   * The templates of one locale, read from the mapping on demand.
+   */
+  private final class Bundle implements MessageCatalog.Bundle {
+    private final Map<String, Integer> index;
+
+    Bundle(Map<String, Integer> index) {
+      this.index = index;
+    }
+
+    @Override
+    public Set<String> keys() {
+      return Collections.unmodifiableSet(index.keySet());
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+      return index.containsKey(key);
+    }
+
+    @Override
+    public CompiledMessage compile(String key, Locale locale) {
+      return template(key).compile(locale);
+    }
+
+    @Override
+    public Object source(String key) {
+      return index.containsKey(key) ? template(key) : null;
+    }
+
+    @Override
+    public MessageTemplate template(String key) {
+      ByteBuffer buffer = body.duplicate();
+      buffer.position(index.get(key));
+      return MessageTemplate.readFrom(buffer);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link CompiledMessage} bound to a Java type, which formats objects of
+ * that type directly instead of a map of arguments.
+ * <p>
+ * Every argument name of the message is resolved to an accessor of the type
+ * when the binding is created: a public getter (<code>getName()</code> or
+ * <code>isName()</code>), a record-style accessor (<code>name()</code>) or a
+ * public field. Names with dots, such as <code>{user.name}</code>, are
+ * resolved segment by segment against the declared type of the previous
+ * segment; a {@code null} value along the path makes the argument
+ * {@code null}. The accessors are combined into one
+ * <code>MethodHandle</code> per argument, so formatting uses neither
+ * reflection nor a map.
+ * <p>
+ * Instances are immutable and thread-safe.
+ *
+ * @param <T> the type of the formatted objects
+ */
+public final class BoundMessage<T> {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodHandle IS_NULL;
+
+  static {
+    try {
+      IS_NULL = LOOKUP.findStatic(Objects.class, "isNull",
+          MethodType.methodType(boolean.class, Object.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final CompiledMessage message;
+  private final Class<T> type;
+  private final MethodHandle[] accessors;
+
+  BoundMessage(CompiledMessage message, Class<T> type) {
+    this.message = message;
+    this.type = type;
+    List<String> names = message.getArgumentNames();
+    this.accessors = new MethodHandle[names.size()];
+    for (int slot = 0; slot < accessors.length; slot++) {
+      accessors[slot] = resolve(type, names.get(slot));
+    }
+  }
+
+  /**
+   * Gets the message this binding formats.
+   *
+   * @return the bound message
+   */
+  public CompiledMessage getMessage() {
+    return message;
+  }
+
+  /**
+   * Gets the type this message is bound to.
+   *
+   * @return the bound type
+   */
+  public Class<T> getType() {
+    return type;
+  }
+
+  /**
+   * Formats the given object.
+   *
+   * @param object the object to take the arguments from, may be {@code null}
+   * @return the formatted string
+   * @throws IllegalArgumentException if an accessor fails with a checked exception, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   */
+  public String format(T object) {
+    return message.format(values(object));
+  }
+
+  /**
+   * Formats the given object and appends the result to the provided
+   * <code>StringBuilder</code>.
+   *
+   * @param object the object to take the arguments from, may be {@code null}
+   * @param result where text is appended
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if an accessor fails with a checked exception, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public StringBuilder format(T object, StringBuilder result) {
+    return message.format(values(object), result);
+  }
+
+  /**
+   * Formats the given object and appends the result to the provided
+   * <code>Appendable</code>.
+   *
+   * @param object the object to take the arguments from, may be {@code null}
+   * @param result where text is appended
+   * @param <A>    the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if an accessor fails with a checked exception, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public <A extends Appendable> A formatTo(T object, A result) throws IOException {
+    return message.formatTo(values(object), result);
+  }
+
+  /**
+   * Reads the argument values of the given object in slot order. All
+   * arguments of a {@code null} object are unavailable.
+   */
+  Object[] values(T object) {
+    if (object == null) {
+      return null;
+    }
+    Object[] values = new Object[accessors.length];
+    for (int slot = 0; slot < accessors.length; slot++) {
+      try {
+        values[slot] = (Object) accessors[slot].invokeExact((Object) object);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalArgumentException("Accessor of '" + message.getArgumentNames().get(slot) + "' failed", e);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Resolves a possibly dotted argument name to a single handle of type
+   * <code>(Object)Object</code>.
+   */
+  private static MethodHandle resolve(Class<?> type, String path) {
+    MethodHandle handle = null;
+    Class<?> current = type;
+    for (String name : path.split("\\.", -1)) {
+      MethodHandle accessor = accessor(current, name);
+      if (accessor == null) {
+        throw new IllegalArgumentException("No accessor for '" + name + "' of argument '"
+            + path + "' in " + current.getName());
+      }
+      current = accessor.type().returnType();
+      accessor = accessor.asType(ACCESSOR_TYPE);
+      if (handle == null) {
+        handle = accessor;
+      } else {
+        // (Object)Object returning null when the previous segment is null
+        MethodHandle nullSafe = MethodHandles.guardWithTest(IS_NULL,
+            MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object.class),
+            accessor);
+        handle = MethodHandles.filterReturnValue(handle, nullSafe);
+      }
+    }
+    return handle;
+  }
+
+  /**
+   * Finds the accessor of one property, trying the getter, the record
+   * style accessor and the field in this order.
+   */
+  private static MethodHandle accessor(Class<?> type, String name) {
+    if (name.isEmpty() || type.isPrimitive()) {
+      return null;
+    }
+    String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    Method method = method(type, "get" + capitalized);
+    if (method == null) {
+      method = method(type, "is" + capitalized);
+      if (method != null && method.getReturnType() != boolean.class) {
+        method = null;
+      }
+    }
+    if (method == null) {
+      method = method(type, name);
+    }
+    try {
+      if (method != null) {
+        try {
+          return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+          // public member of a class that is not accessible from here
+          method.setAccessible(true);
+          return LOOKUP.unreflect(method);
+        }
+      }
+      Field field = type.getField(name);
+      if (Modifier.isStatic(field.getModifiers())) {
+        return null;
+      }
+      try {
+        return LOOKUP.unreflectGetter(field);
+      } catch (IllegalAccessException e) {
+        field.setAccessible(true);
+        return LOOKUP.unreflectGetter(field);
+      }
+    } catch (NoSuchFieldException e) {
+      return null;
+    } catch (IllegalAccessException | RuntimeException e) {
+      throw new IllegalArgumentException("Cannot access '" + name + "' in " + type.getName(), e);
+    }
+  }
+
+  private static Method method(Class<?> type, String name) {
+    try {
+      Method method = type.getMethod(name);
+      if (Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class) {
+        return null;
+      }
+      return method;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes that messages are encoded into, for sinks
+ * that take whole byte arrays or buffers. Unlike
+ * <code>ByteArrayOutputStream</code> it is not synchronized and gives
+ * access to its content without copying it.
+ * <p>
+ * A sink is not thread-safe. It is meant to be reused: {@link #reset()}
+ * empties it and keeps its capacity.
+ *
+ * @see CompiledMessage#encode(java.util.Map, ByteSink)
+ */
+public final class ByteSink {
+
+  private static final int DEFAULT_CAPACITY = 256;
+
+  private byte[] bytes;
+  private int size;
+
+  /**
+   * Creates an empty sink with a default capacity.
+   */
+  public ByteSink() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty sink with the given capacity.
+   *
+   * @param capacity the initial capacity in bytes
+   * @throws IllegalArgumentException if {@code capacity} is negative
+   */
+  public ByteSink(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Negative capacity: " + capacity);
+    }
+    this.bytes = new byte[capacity];
+  }
+
+  /**
+   * Gets the number of bytes written.
+   *
+   * @return the size of the content
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Empties this sink, keeping its capacity.
+   */
+  public void reset() {
+    size = 0;
+  }
+
+  /**
+   * Returns a copy of the content.
+   *
+   * @return the bytes written
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(bytes, size);
+  }
+
+  /**
+   * Returns a read-only buffer over the content, without copying it. The
+   * buffer is only valid until this sink is written to or reset.
+   *
+   * @return a buffer with the bytes written between its position and limit
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(bytes, 0, size).asReadOnlyBuffer();
+  }
+
+  /**
+   * Writes the content to the given stream.
+   *
+   * @param out the stream to write to
+   * @throws IOException if the stream fails
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, size);
+  }
+
+  /**
+   * Encodes the rest of the given message at the end of the content,
+   * growing the array as needed.
+   */
+  void append(MessageEncoder encoder) {
+    while (true) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, size, bytes.length - size);
+      boolean done = encoder.encode(buffer).isUnderflow();
+      size = buffer.position();
+      if (done) {
+        return;
+      }
+      bytes = Arrays.copyOf(bytes, Math.max(16, bytes.length * 2));
+    }
+  }
+
+  /**
+   * Returns the content decoded as UTF-8, for debugging.
+   */
+  @Override
+  public String toString() {
+    return new String(bytes, 0, size, StandardCharsets.UTF_8);
+  }
+}
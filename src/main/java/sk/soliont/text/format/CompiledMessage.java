@@ -0,0 +1,1896 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.AttributedCharacterIterator;
+import java.text.ChoiceFormat;
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.Format;
+import java.text.ParsePosition;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * An immutable, compiled form of a {@link NamedArgsMessageFormat} pattern.
+ * <p>
+ * A <code>CompiledMessage</code> holds the same information as the
+ * <code>NamedArgsMessageFormat</code> it was created from, but it can not be
+ * modified and it is safe to share a single instance between threads.
+ * Formatting needs neither cloning nor synchronization: subformats that are
+ * not thread-safe, such as <code>DecimalFormat</code> or
+ * <code>SimpleDateFormat</code>, are copied once per thread on first use.
+ * <p>
+ * Instances are created with {@link #compile(String, Locale)} or from an
+ * existing format with {@link NamedArgsMessageFormat#toCompiledMessage()}.
+ * Formatting follows the rules of
+ * {@link NamedArgsMessageFormat#format(Map, StringBuffer, java.text.FieldPosition)}.
+ * <p>
+ * An argument value may be a <code>Supplier</code>, which is called when
+ * formatting first reaches an element of the argument; its result is
+ * formatted instead and reused for the other elements of the argument in
+ * the same call. A value only used in a branch of a choice that is not
+ * selected is never computed. Together with {@link #defer(Map)} this keeps
+ * messages that are never written nearly free.
+ */
+public final class CompiledMessage {
+
+  /**
+   * Compiles the given pattern for the default
+   * {@link Locale.Category#FORMAT FORMAT} locale.
+   *
+   * @param pattern the pattern for this message
+   * @return the compiled message
+   * @throws IllegalArgumentException if the pattern is invalid
+   * @throws NullPointerException     if {@code pattern} is {@code null}
+   */
+  public static CompiledMessage compile(String pattern) {
+    return compile(pattern, Locale.getDefault(Locale.Category.FORMAT));
+  }
+
+  /**
+   * Compiles the given pattern for the specified locale.
+   *
+   * @param pattern the pattern for this message
+   * @param locale  the locale for this message
+   * @return the compiled message
+   * @throws IllegalArgumentException if the pattern is invalid
+   * @throws NullPointerException     if {@code pattern} is {@code null}
+   */
+  public static CompiledMessage compile(String pattern, Locale locale) {
+    return new NamedArgsMessageFormat(pattern, locale).toCompiledMessage();
+  }
+
+  /**
+   * Gets the locale used for formatting numbers and dates.
+   *
+   * @return the locale of this message
+   */
+  public Locale getLocale() {
+    return locale;
+  }
+
+  /**
+   * Returns the slot layout of this message: the distinct argument names in
+   * the order of their first appearance in the pattern, followed by the
+   * names only used in the branches of choice subformats. The index of a name
+   * in this list is its slot, the position of its value in the
+   * <code>Object[]</code> passed to the slot-based format methods.
+   *
+   * @return the argument names by slot
+   */
+  public List<String> getArgumentNames() {
+    return Collections.unmodifiableList(Arrays.asList(slotNames));
+  }
+
+  /**
+   * Returns the slot of the given argument name.
+   *
+   * @param argumentName the argument name
+   * @return the slot of the argument, or -1 if the pattern does not use it
+   */
+  public int slotOf(String argumentName) {
+    Integer slot = slotsByName.get(argumentName);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * Returns a pattern representing this message, in the syntax of
+   * {@link NamedArgsMessageFormat#toPattern()}. It identifies the message
+   * in metrics and is created on first use.
+   *
+   * @return the pattern of this message
+   */
+  public String getPattern() {
+    String source = this.source;
+    if (source == null) {
+      StringBuilder result = new StringBuilder(pattern.length() + ESTIMATED_ARGUMENT_LENGTH * offsets.length);
+      int lastOffset = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        NamedArgsMessageFormat.copyAndFixQuotes(pattern, lastOffset, offsets[i], result);
+        lastOffset = offsets[i];
+        result.append('{').append(argumentNames[i]);
+        NamedArgsMessageFormat.appendFormatStyle(i < formats.length ? formats[i] : null, locale, result);
+        result.append('}');
+      }
+      NamedArgsMessageFormat.copyAndFixQuotes(pattern, lastOffset, pattern.length(), result);
+      source = result.toString();
+      this.source = source;
+    }
+    return source;
+  }
+
+  /**
+   * Returns the total length of the literal text of the pattern, the
+   * smallest possible length of the output of a message without choice
+   * elements.
+   *
+   * @return the number of literal characters
+   */
+  public int getLiteralLength() {
+    return pattern.length();
+  }
+
+  /**
+   * Returns the expected length of the output of this message, for sizing
+   * an output buffer in one allocation. The estimate starts from the
+   * literal length and follows the lengths of strings returned by the
+   * format methods as a moving average: it moves a quarter of the way
+   * towards a longer output and an eighth of the way towards a much shorter
+   * one. It never exceeds eight times the initial estimate, so that a few
+   * very long outputs do not make every later call allocate a huge buffer.
+   *
+   * @return the estimated number of characters of a formatted message
+   */
+  public int getEstimatedLength() {
+    return estimatedLength;
+  }
+
+  /**
+   * Creates a reusable holder for the arguments of this message.
+   *
+   * @return a new, empty argument holder
+   */
+  public MessageArguments newArguments() {
+    return new MessageArguments(this);
+  }
+
+  /**
+   * Binds this message to the given type, so that objects of the type can
+   * be formatted directly. All argument names are resolved to accessors of
+   * the type immediately.
+   *
+   * @param type the type of the formatted objects
+   * @param <T>  the type of the formatted objects
+   * @return the bound message
+   * @throws IllegalArgumentException if an argument name can not be resolved
+   *                                  to an accessible getter, accessor or field
+   * @see BoundMessage
+   */
+  public <T> BoundMessage<T> bind(Class<T> type) {
+    return new BoundMessage<>(this, type);
+  }
+
+  /**
+   * Returns an equivalent message that formats through a formatter
+   * generated for this pattern. The generated formatter is a chain of
+   * <code>MethodHandle</code>s with the literal segments as constants and
+   * one direct append per format element, instead of the general loop that
+   * interprets the pattern on every call. It is used when formatting to a
+   * <code>String</code> or <code>StringBuilder</code> without a
+   * <code>FieldPosition</code>; the output is the same as that of this
+   * message, and exceptions thrown for argument values propagate
+   * unchanged. If the formatter can not be generated, this message is
+   * returned and formats with the interpreter.
+   *
+   * @return the specialized message, or this message if it is already
+   *         specialized or can not be specialized
+   */
+  public CompiledMessage specialize() {
+    if (specialized != null) {
+      return this;
+    }
+    MethodHandle handle;
+    try {
+      handle = specializedFormatter();
+    } catch (RuntimeException e) {
+      return this;
+    }
+    return new CompiledMessage(this, handle);
+  }
+
+  /**
+   * Tells whether this message formats through a generated formatter.
+   *
+   * @return {@code true} if this message was returned by {@link #specialize()}
+   */
+  public boolean isSpecialized() {
+    return specialized != null;
+  }
+
+  /**
+   * Formats the given arguments.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @return the formatted string
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   */
+  public String format(Map<String, ?> arguments) {
+    return observed(format(arguments, new StringBuilder(estimatedLength), null));
+  }
+
+  /**
+   * Formats the given arguments and appends the result to the provided
+   * <code>StringBuilder</code>.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param result    where text is appended
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public StringBuilder format(Map<String, ?> arguments, StringBuilder result) {
+    return format(arguments, result, null);
+  }
+
+  /**
+   * Formats the given arguments and appends the result to the provided
+   * <code>StringBuilder</code>.
+   * If <code>pos</code> is non-null, and refers to
+   * <code>NamedArgsMessageFormat.Field.ARGUMENT</code>, the location of the
+   * first formatted string will be returned.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param result    where text is appended
+   * @param pos       keeps track on the position of the first replaced argument
+   *                  in the output string, may be {@code null}
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public StringBuilder format(Map<String, ?> arguments, StringBuilder result, FieldPosition pos) {
+    return formatSlots(slotValues(arguments), result, pos);
+  }
+
+  /**
+   * Formats the given arguments and appends the result to the provided
+   * <code>Appendable</code>, for example a <code>Writer</code>. The output
+   * is written piece by piece, no intermediate string of the whole message
+   * is created.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param result    where text is appended
+   * @param <A>       the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public <A extends Appendable> A formatTo(Map<String, ?> arguments, A result) throws IOException {
+    appendTo(slotValues(arguments), null, result);
+    return result;
+  }
+
+  /**
+   * Formats the given argument values, given in slot order as described by
+   * {@link #getArgumentNames()}. A {@code null} value is formatted as
+   * <code>"null"</code>; slots beyond the end of the array are unavailable
+   * and formatted as <code>"{" + argumentName + "}"</code>.
+   *
+   * @param values the argument values by slot, may be {@code null}
+   * @return the formatted string
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   */
+  public String format(Object[] values) {
+    return observed(format(values, new StringBuilder(estimatedLength)));
+  }
+
+  /**
+   * Formats the given argument values, given in slot order, and appends the
+   * result to the provided <code>StringBuilder</code>.
+   *
+   * @param values the argument values by slot, may be {@code null}
+   * @param result where text is appended
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   * @see #format(Object[])
+   */
+  public StringBuilder format(Object[] values, StringBuilder result) {
+    return formatSlots(ownValues(values), result, null);
+  }
+
+  /**
+   * Formats the given argument values, given in slot order, and appends the
+   * result to the provided <code>Appendable</code>.
+   *
+   * @param values the argument values by slot, may be {@code null}
+   * @param result where text is appended
+   * @param <A>    the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   * @see #format(Object[])
+   */
+  public <A extends Appendable> A formatTo(Object[] values, A result) throws IOException {
+    appendTo(ownValues(values), null, result);
+    return result;
+  }
+
+  /**
+   * Formats the arguments held by the given holder.
+   *
+   * @param arguments the arguments, created by {@link #newArguments()} of this message
+   * @return the formatted string
+   * @throws IllegalArgumentException if the holder belongs to another message, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   */
+  public String format(MessageArguments arguments) {
+    return observed(format(arguments, new StringBuilder(estimatedLength)));
+  }
+
+  /**
+   * Formats the arguments held by the given holder and appends the result
+   * to the provided <code>StringBuilder</code>.
+   *
+   * @param arguments the arguments, created by {@link #newArguments()} of this message
+   * @param result    where text is appended
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if the holder belongs to another message, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public StringBuilder format(MessageArguments arguments, StringBuilder result) {
+    return formatSlots(ownValues(arguments.valuesFor(this)), result, null);
+  }
+
+  /**
+   * Formats the arguments held by the given holder and appends the result
+   * to the provided <code>Appendable</code>.
+   *
+   * @param arguments the arguments, created by {@link #newArguments()} of this message
+   * @param result    where text is appended
+   * @param <A>       the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if the holder belongs to another message, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public <A extends Appendable> A formatTo(MessageArguments arguments, A result) throws IOException {
+    appendTo(ownValues(arguments.valuesFor(this)), null, result);
+    return result;
+  }
+
+  /**
+   * Formats the given arguments, producing an
+   * <code>AttributedCharacterIterator</code>. The text of every argument
+   * that has a value is attributed with
+   * <code>NamedArgsMessageFormat.Field.ARGUMENT</code>, whose value is the
+   * name of the argument, and carries the attributes that its subformat
+   * returns from <code>formatToCharacterIterator</code>, such as
+   * <code>NumberFormat.Field</code> and <code>DateFormat.Field</code>.
+   * Numbers and dates without a subformat are attributed by the default
+   * number and date formats of the locale. Missing arguments are written
+   * as <code>{name}</code> and have no attributes.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @return the formatted text with its attributes
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   */
+  public AttributedCharacterIterator formatToCharacterIterator(Map<String, ?> arguments) {
+    return attributed(slotValues(arguments));
+  }
+
+  /**
+   * Formats the given values, producing an
+   * <code>AttributedCharacterIterator</code>.
+   *
+   * @param values the values by slot, may be {@code null}
+   * @return the formatted text with its attributes
+   * @throws IllegalArgumentException if a value is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @see #formatToCharacterIterator(Map)
+   */
+  public AttributedCharacterIterator formatToCharacterIterator(Object[] values) {
+    return attributed(ownValues(values));
+  }
+
+  /**
+   * Returns an encoder that writes the given arguments formatted with this
+   * message as UTF-8 into byte buffers, resuming where it stopped when a
+   * buffer is full. The literal text is encoded once per message and only
+   * the argument values are encoded per call.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @return the encoder, positioned at the start of the message
+   * @see MessageEncoder#encode(java.nio.ByteBuffer)
+   */
+  public MessageEncoder encoder(Map<String, ?> arguments) {
+    return new MessageEncoder(this, slotValues(arguments), utf8Literals());
+  }
+
+  /**
+   * Returns an encoder that writes the given values formatted with this
+   * message as UTF-8 into byte buffers.
+   *
+   * @param values the values by slot, may be {@code null}
+   * @return the encoder, positioned at the start of the message
+   * @see #encoder(Map)
+   */
+  public MessageEncoder encoder(Object[] values) {
+    return new MessageEncoder(this, ownValues(values), utf8Literals());
+  }
+
+  /**
+   * Formats the given arguments and appends the result encoded as UTF-8 to
+   * the given sink, growing it as needed.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param sink      where the bytes are appended
+   * @return the sink passed in as {@code sink}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code sink} is {@code null}
+   * @see #encoder(Map)
+   */
+  public ByteSink encode(Map<String, ?> arguments, ByteSink sink) {
+    sink.append(encoder(arguments));
+    return sink;
+  }
+
+  /**
+   * Returns a message that formats the given arguments with this message
+   * when its text is first needed, for example by a logger that writes
+   * the statement.
+   *
+   * @param arguments the arguments by name, may be {@code null}; the map is
+   *                  read when the message is formatted
+   * @return the deferred message
+   */
+  public DeferredMessage defer(Map<String, ?> arguments) {
+    return new DeferredMessage(this, arguments, null);
+  }
+
+  /**
+   * Returns a message that formats the given values with this message
+   * when its text is first needed.
+   *
+   * @param values the values by slot, may be {@code null}; the array is
+   *               read when the message is formatted
+   * @return the deferred message
+   * @see #defer(Map)
+   */
+  public DeferredMessage defer(Object... values) {
+    return new DeferredMessage(this, null, values);
+  }
+
+  /**
+   * Formats the given arguments for the context of the given escaper, such
+   * as an HTML document or a JSON string. The literal text of the pattern
+   * is escaped once and reused; the formatted value of every argument is
+   * escaped while it is appended, so the result needs no further escaping.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param escaper   escapes the text for its context
+   * @return the formatted and escaped string
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code escaper} is {@code null}
+   * @see Escaper#HTML
+   * @see Escaper#JSON
+   * @see Escaper#XML_ATTRIBUTE
+   */
+  public String format(Map<String, ?> arguments, Escaper escaper) {
+    return format(arguments, escaper, new StringBuilder(estimatedLength + 16)).toString();
+  }
+
+  /**
+   * Formats the given arguments for the context of the given escaper and
+   * appends the result to the provided <code>StringBuilder</code>.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param escaper   escapes the text for its context
+   * @param result    where text is appended
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code escaper} or {@code result} is {@code null}
+   * @see #format(Map, Escaper)
+   */
+  public StringBuilder format(Map<String, ?> arguments, Escaper escaper, StringBuilder result) {
+    try {
+      return formatTo(arguments, escaper, result);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Formats the given arguments for the context of the given escaper and
+   * appends the result to the provided <code>Appendable</code>.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param escaper   escapes the text for its context
+   * @param result    where text is appended
+   * @param <A>       the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code escaper} or {@code result} is {@code null}
+   * @see #format(Map, Escaper)
+   */
+  public <A extends Appendable> A formatTo(Map<String, ?> arguments, Escaper escaper, A result) throws IOException {
+    appendTo(slotValues(arguments), Objects.requireNonNull(escaper), result);
+    return result;
+  }
+
+  /**
+   * Formats the arguments held by the given holder for the context of the
+   * given escaper.
+   *
+   * @param arguments the arguments, created by {@link #newArguments()} of this message
+   * @param escaper   escapes the text for its context
+   * @return the formatted and escaped string
+   * @throws IllegalArgumentException if the holder belongs to another message, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   * @throws NullPointerException     if {@code escaper} is {@code null}
+   * @see #format(Map, Escaper)
+   */
+  public String format(MessageArguments arguments, Escaper escaper) {
+    StringBuilder result = new StringBuilder(estimatedLength + 16);
+    try {
+      appendTo(ownValues(arguments.valuesFor(this)), Objects.requireNonNull(escaper), result);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new AssertionError(e);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Formats every argument set of the given iterator and writes the output
+   * to the provided <code>Writer</code>, followed by the terminator after
+   * each row. The rows are formatted into one internal buffer that is
+   * written in chunks of a fixed size, so memory use does not depend on the
+   * number of rows and no string is created per row. The writer is neither
+   * flushed nor closed.
+   *
+   * @param rows       the argument sets by name; a {@code null} element has
+   *                   no available arguments
+   * @param terminator the text written after each row, for example a line
+   *                   separator, may be empty
+   * @param out        where the output is written
+   * @return the number of rows written
+   * @throws IOException              if the writer fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code rows}, {@code terminator} or
+   *                                  {@code out} is {@code null}
+   */
+  public long formatAll(Iterator<? extends Map<String, ?>> rows, String terminator, Writer out) throws IOException {
+    StringBuilder buffer = new StringBuilder(CHUNK_SIZE + estimatedLength + terminator.length());
+    char[] chunk = new char[CHUNK_SIZE];
+    Object[] values = new Object[slotNames.length];
+    long count = 0;
+    while (rows.hasNext()) {
+      Map<String, ?> arguments = rows.next();
+      formatSlots(arguments == null ? NO_VALUES : slotValues(arguments, values), buffer, null);
+      buffer.append(terminator);
+      count++;
+      if (buffer.length() >= CHUNK_SIZE) {
+        write(buffer, chunk, out);
+      }
+    }
+    write(buffer, chunk, out);
+    return count;
+  }
+
+  /**
+   * Formats every argument set of the given stream and writes the output
+   * to the provided <code>Writer</code>, followed by the terminator after
+   * each row.
+   *
+   * @param rows       the argument sets by name
+   * @param terminator the text written after each row, may be empty
+   * @param out        where the output is written
+   * @return the number of rows written
+   * @throws IOException              if the writer fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code rows}, {@code terminator} or
+   *                                  {@code out} is {@code null}
+   * @see #formatAll(Iterator, String, Writer)
+   */
+  public long formatAll(Stream<? extends Map<String, ?>> rows, String terminator, Writer out) throws IOException {
+    return formatAll(rows.iterator(), terminator, out);
+  }
+
+  /**
+   * Formats every argument set of the given iterator and writes the output
+   * encoded in the given charset to the provided <code>OutputStream</code>,
+   * followed by the terminator after each row. The stream is flushed but
+   * not closed.
+   *
+   * @param rows       the argument sets by name
+   * @param terminator the text written after each row, may be empty
+   * @param out        where the output is written
+   * @param charset    the charset of the output
+   * @return the number of rows written
+   * @throws IOException              if the stream fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if any parameter is {@code null}
+   * @see #formatAll(Iterator, String, Writer)
+   */
+  public long formatAll(
+      Iterator<? extends Map<String, ?>> rows, String terminator, OutputStream out, Charset charset
+  ) throws IOException {
+    Writer writer = new OutputStreamWriter(out, charset);
+    long count = formatAll(rows, terminator, writer);
+    writer.flush();
+    return count;
+  }
+
+  /**
+   * Formats every argument set of the given stream and writes the output
+   * encoded in the given charset to the provided <code>OutputStream</code>,
+   * followed by the terminator after each row. The stream is flushed but
+   * not closed.
+   *
+   * @param rows       the argument sets by name
+   * @param terminator the text written after each row, may be empty
+   * @param out        where the output is written
+   * @param charset    the charset of the output
+   * @return the number of rows written
+   * @throws IOException              if the stream fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if any parameter is {@code null}
+   * @see #formatAll(Iterator, String, Writer)
+   */
+  public long formatAll(
+      Stream<? extends Map<String, ?>> rows, String terminator, OutputStream out, Charset charset
+  ) throws IOException {
+    return formatAll(rows.iterator(), terminator, out, charset);
+  }
+
+  /**
+   * Formats the given argument sets in parallel on the common
+   * <code>ForkJoinPool</code>.
+   *
+   * @param rows the argument sets by name; a {@code null} element has no
+   *             available arguments
+   * @return the formatted strings, in the order of {@code rows}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code rows} is {@code null}
+   * @see #formatParallel(List, ForkJoinPool)
+   */
+  public List<String> formatParallel(List<? extends Map<String, ?>> rows) {
+    return formatParallel(rows, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Formats the given argument sets in parallel on the given
+   * <code>ForkJoinPool</code>. The list is split into ranges, a few per
+   * worker; each worker formats its ranges with its own copies of the
+   * subformats, reusing one buffer per range, and writes the strings into
+   * their positions of the result.
+   *
+   * @param rows the argument sets by name; a {@code null} element has no
+   *             available arguments
+   * @param pool the pool to format on
+   * @return the formatted strings, in the order of {@code rows}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code rows} or {@code pool} is {@code null}
+   */
+  public List<String> formatParallel(List<? extends Map<String, ?>> rows, ForkJoinPool pool) {
+    String[] results = new String[rows.size()];
+    if (results.length > 0) {
+      pool.invoke(new BatchTask(this, randomAccess(rows), results, 0, results.length,
+          BatchTask.threshold(results.length, pool.getParallelism())));
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Formats the given argument sets in parallel on the given executor. The
+   * list is split into {@code parallelism} ranges of about the same size,
+   * each formatted by one task.
+   *
+   * @param rows        the argument sets by name; a {@code null} element has
+   *                    no available arguments
+   * @param executor    the executor to run the tasks on
+   * @param parallelism the number of tasks
+   * @return the formatted strings, in the order of {@code rows}
+   * @throws IllegalArgumentException if {@code parallelism} is not positive, or
+   *                                  if an argument is not of the type expected by
+   *                                  the format element(s) that use it.
+   * @throws NullPointerException     if {@code rows} or {@code executor} is {@code null}
+   */
+  public List<String> formatParallel(List<? extends Map<String, ?>> rows, Executor executor, int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    List<? extends Map<String, ?>> list = randomAccess(rows);
+    String[] results = new String[list.size()];
+    int tasks = Math.min(parallelism, results.length);
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+    for (int task = 0; task < tasks; task++) {
+      int from = (int) ((long) results.length * task / tasks);
+      int to = (int) ((long) results.length * (task + 1) / tasks);
+      futures[task] = CompletableFuture.runAsync(() -> formatRange(list, results, from, to), executor);
+    }
+    try {
+      CompletableFuture.allOf(futures).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Returns the given list, or a copy of it if it is not
+   * <code>RandomAccess</code>, so that the ranges of the parallel formats
+   * get their rows by index in constant time.
+   */
+  private static <T> List<T> randomAccess(List<T> rows) {
+    return rows instanceof RandomAccess ? rows : new ArrayList<>(rows);
+  }
+
+  /**
+   * Formats a range of argument sets into the same range of the results,
+   * reusing one buffer and one slot array. The list must be
+   * <code>RandomAccess</code>.
+   */
+  void formatRange(List<? extends Map<String, ?>> rows, String[] results, int from, int to) {
+    StringBuilder buffer = new StringBuilder(estimatedLength);
+    Object[] values = new Object[slotNames.length];
+    for (int i = from; i < to; i++) {
+      Map<String, ?> arguments = rows.get(i);
+      buffer.setLength(0);
+      formatSlots(arguments == null ? NO_VALUES : slotValues(arguments, values), buffer, null);
+      results[i] = buffer.toString();
+    }
+  }
+
+  /**
+   * Parses the given text with this message and stores the arguments in
+   * the given holder, which is cleared first. The parse starts at the
+   * index of {@code pos}; on success the index is moved past the last
+   * character used. On failure the index is left unchanged, the error
+   * index is set where the text stopped matching and {@code false} is
+   * returned.
+   * <p>
+   * Literal text must match exactly. An argument with a subformat is
+   * parsed by the subformat. Any other argument takes the text up to the
+   * next occurrence of the following literal, or the rest of the text if
+   * no literal follows; text that reads <code>"{" + argumentName + "}"</code>
+   * leaves the argument unset. If an argument occurs more than once, the
+   * later value wins.
+   * <p>
+   * The literals and their search tables are prepared once per message,
+   * so repeated parsing only allocates the parsed values.
+   *
+   * @param source the text to parse
+   * @param pos    the parse position
+   * @param result the holder receiving the parsed arguments
+   * @return whether the text matched
+   * @throws IllegalArgumentException if {@code result} belongs to another message
+   * @throws NullPointerException     if any parameter is {@code null}
+   */
+  public boolean parse(CharSequence source, ParsePosition pos, MessageArguments result) {
+    Object[] values = result.valuesFor(this);
+    Arrays.fill(values, MISSING);
+    MessageListener listener = Instrumentation.listener;
+    if (listener == null) {
+      return parseSlots(source, pos, values);
+    }
+    long start = System.nanoTime();
+    boolean success = parseSlots(source, pos, values);
+    listener.parsed(getPattern(), System.nanoTime() - start, success);
+    return success;
+  }
+
+  /**
+   * The parse loop, storing the arguments into {@code values} by slot.
+   */
+  private boolean parseSlots(CharSequence source, ParsePosition pos, Object[] values) {
+    LiteralMatcher[] literals = literals();
+    Format[] formats = formatsForThread();
+    // subformats parse only strings: the text from the first subformat on,
+    // starting at index base of the source
+    String text = source instanceof String ? (String) source : null;
+    int base = 0;
+    int start = pos.getIndex();
+    int offset = start;
+    for (int i = 0; i < offsets.length; i++) {
+      if (!literals[i].matchesAt(source, offset)) {
+        return failed(pos, start, offset);
+      }
+      offset += literals[i].length();
+      Format format = i < formats.length ? formats[i] : null;
+      if (format == null) {
+        LiteralMatcher next = literals[i + 1];
+        // an empty literal takes the rest of the text
+        int end = next.length() == 0 ? source.length() : next.indexIn(source, offset);
+        if (end < 0) {
+          return failed(pos, start, offset);
+        }
+        if (!isPlaceholder(source, offset, end, argumentNames[i])) {
+          values[slots[i]] = source.subSequence(offset, end).toString();
+        }
+        offset = end;
+      } else {
+        if (text == null) {
+          text = source.subSequence(offset, source.length()).toString();
+          base = offset;
+        }
+        pos.setIndex(offset - base);
+        Object value = format.parseObject(text, pos);
+        if (pos.getIndex() == offset - base) {
+          return failed(pos, start, offset);
+        }
+        values[slots[i]] = value;
+        offset = pos.getIndex() + base;
+      }
+    }
+    if (!literals[offsets.length].matchesAt(source, offset)) {
+      return failed(pos, start, offset);
+    }
+    pos.setIndex(offset + literals[offsets.length].length());
+    return true;
+  }
+
+  private static boolean failed(ParsePosition pos, int start, int errorIndex) {
+    pos.setIndex(start);
+    pos.setErrorIndex(errorIndex);
+    return false;
+  }
+
+  private static boolean isPlaceholder(CharSequence source, int start, int end, String argumentName) {
+    if (end - start != argumentName.length() + 2
+        || source.charAt(start) != '{' || source.charAt(end - 1) != '}') {
+      return false;
+    }
+    for (int i = 0; i < argumentName.length(); i++) {
+      if (source.charAt(start + 1 + i) != argumentName.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the literal segments escaped by the given escaper, keeping the
+   * segments of the last {@value #MAX_ESCAPERS} escapers used.
+   */
+  private String[] escapedLiterals(Escaper escaper) {
+    EscapedLiterals first = this.escaped;
+    for (EscapedLiterals escaped = first; escaped != null; escaped = escaped.next) {
+      if (escaped.escaper == escaper) {
+        return escaped.segments;
+      }
+    }
+    String[] segments = new String[offsets.length + 1];
+    int lastOffset = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      segments[i] = escaper.escape(pattern.substring(lastOffset, offsets[i]));
+      lastOffset = offsets[i];
+    }
+    segments[offsets.length] = escaper.escape(pattern.substring(lastOffset));
+    this.escaped = new EscapedLiterals(escaper, segments, first == null ? null : first.take(MAX_ESCAPERS - 1));
+    return segments;
+  }
+
+  /**
+   * Returns the literal segments encoded as UTF-8.
+   */
+  private byte[][] utf8Literals() {
+    byte[][] utf8Literals = this.utf8Literals;
+    if (utf8Literals == null) {
+      utf8Literals = new byte[offsets.length + 1][];
+      int lastOffset = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        utf8Literals[i] = pattern.substring(lastOffset, offsets[i]).getBytes(StandardCharsets.UTF_8);
+        lastOffset = offsets[i];
+      }
+      utf8Literals[offsets.length] = pattern.substring(lastOffset).getBytes(StandardCharsets.UTF_8);
+      this.utf8Literals = utf8Literals;
+    }
+    return utf8Literals;
+  }
+
+  /**
+   * Returns the literal segments of the pattern prepared for parsing: the
+   * text before each argument and the text after the last one.
+   */
+  private LiteralMatcher[] literals() {
+    LiteralMatcher[] literals = this.literals;
+    if (literals == null) {
+      literals = new LiteralMatcher[offsets.length + 1];
+      int lastOffset = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        literals[i] = new LiteralMatcher(pattern.substring(lastOffset, offsets[i]));
+        lastOffset = offsets[i];
+      }
+      literals[offsets.length] = new LiteralMatcher(pattern.substring(lastOffset));
+      this.literals = literals;
+    }
+    return literals;
+  }
+
+  /**
+   * Writes the content of the buffer through the chunk array and empties it.
+   */
+  private static void write(StringBuilder buffer, char[] chunk, Writer out) throws IOException {
+    int length = buffer.length();
+    for (int start = 0; start < length; start += chunk.length) {
+      int end = Math.min(length, start + chunk.length);
+      buffer.getChars(start, end, chunk, 0);
+      out.write(chunk, 0, end - start);
+    }
+    buffer.setLength(0);
+  }
+
+  private StringBuilder formatSlots(Object[] values, StringBuilder result, FieldPosition pos) {
+    MessageListener listener = Instrumentation.listener;
+    if (listener == null && !Instrumentation.recording) {
+      return appendSlots(values, result, pos);
+    }
+    Object event = Instrumentation.recording ? FlightRecording.beginFormat() : null;
+    long startNanos = listener == null ? 0 : System.nanoTime();
+    int start = result.length();
+    appendSlots(values, result, pos);
+    if (listener != null) {
+      listener.formatted(this, System.nanoTime() - startNanos, result.length() - start);
+    }
+    if (event != null) {
+      FlightRecording.endFormat(event, this, result.length() - start);
+    }
+    return result;
+  }
+
+  private AttributedCharacterIterator attributed(Object[] values) {
+    StringBuilder result = new StringBuilder(estimatedLength);
+    FieldRecorder fields = new FieldRecorder();
+    try {
+      subformat(values, null, result, 0, null, formatsForThread(), fields, null);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new AssertionError(e);
+    }
+    return fields.toIterator(result.toString());
+  }
+
+  private void appendTo(Object[] values, Escaper escaper, Appendable result) throws IOException {
+    MessageListener listener = Instrumentation.listener;
+    if (listener == null && !Instrumentation.recording) {
+      subformat(values, null, result, 0, null, formatsForThread(), null, escaper);
+      return;
+    }
+    Object event = Instrumentation.recording ? FlightRecording.beginFormat() : null;
+    long start = listener == null ? 0 : System.nanoTime();
+    int length = subformat(values, null, result, 0, null, formatsForThread(), null, escaper);
+    if (listener != null) {
+      listener.formatted(this, System.nanoTime() - start, length);
+    }
+    if (event != null) {
+      FlightRecording.endFormat(event, this, length);
+    }
+  }
+
+  private StringBuilder appendSlots(Object[] values, StringBuilder result, FieldPosition pos) {
+    if (specialized != null && pos == null) {
+      try {
+        specialized.invokeExact(result, values, formatsForThread());
+        return result;
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        // the steps only append to a StringBuilder, which never throws
+        throw new AssertionError(e);
+      }
+    }
+    try {
+      subformat(values, result, result.length(), pos, formatsForThread());
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new AssertionError(e);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the given values, or a copy of them if they contain a
+   * <code>Supplier</code>. Formatting stores the value of a supplier in its
+   * slot, so that it is computed once per call, and must not change the
+   * array of the caller.
+   */
+  private static Object[] ownValues(Object[] values) {
+    if (values == null) {
+      return NO_VALUES;
+    }
+    for (Object value : values) {
+      if (value instanceof Supplier) {
+        return values.clone();
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Returns the content of the given output, moving the estimated length
+   * towards its length. The estimate is only written when it changes, so
+   * threads formatting outputs of a stable size do not contend on it.
+   */
+  private String observed(StringBuilder result) {
+    observe(result.length());
+    return result.toString();
+  }
+
+  /**
+   * Moves the estimated length towards the length of an output.
+   */
+  void observe(int outputLength) {
+    int length = Math.min(outputLength, maxEstimatedLength);
+    int estimate = estimatedLength;
+    if (length > estimate) {
+      estimatedLength = estimate + ((length - estimate + 3) >> 2);
+    } else if (length < estimate - (estimate >> 2)) {
+      estimatedLength = estimate - ((estimate - length) >> 3);
+    }
+  }
+
+  /**
+   * Returns the values of the given arguments in slot order, with
+   * {@link #MISSING} for the names the map does not contain.
+   */
+  Object[] slotValues(Map<String, ?> arguments) {
+    if (arguments == null) {
+      return NO_VALUES;
+    }
+    return slotValues(arguments, new Object[slotNames.length]);
+  }
+
+  /**
+   * Stores the values of the given arguments in slot order into the given
+   * array, which is at least as long as the number of slots.
+   */
+  private Object[] slotValues(Map<String, ?> arguments, Object[] values) {
+    for (int slot = 0; slot < slotNames.length; slot++) {
+      Object value = arguments.get(slotNames[slot]);
+      if (value == null && !arguments.containsKey(slotNames[slot])) {
+        value = MISSING;
+      }
+      values[slot] = value;
+    }
+    return values;
+  }
+
+  /**
+   * The formatting loop shared by all output types.
+   *
+   * @param start the number of characters in {@code result} before this call,
+   *              used to report positions in {@code fp}
+   * @return the number of characters in {@code result} after this call
+   */
+  int subformat(
+      Object[] values, Appendable result, int start,
+      FieldPosition fp, Format[] formats
+  ) throws IOException {
+    return subformat(values, null, result, start, fp, formats, null, null);
+  }
+
+  /**
+   * The formatting loop, taking the values of an enclosing message.
+   *
+   * @param slotMap maps the slots of this message to the slots of
+   *                {@code values}, -1 for unavailable arguments, or
+   *                {@code null} if {@code values} are given in slot order
+   *                of this message
+   * @param fields  receives the attributed runs of the output, in which
+   *                case {@code result} is a <code>StringBuilder</code>,
+   *                or {@code null}
+   * @param escaper escapes the literal text and the formatted values, or
+   *                {@code null}
+   */
+  private int subformat(
+      Object[] values, int[] slotMap, Appendable result, int start,
+      FieldPosition fp, Format[] formats, FieldRecorder fields, Escaper escaper
+  ) throws IOException {
+    String[] segments = escaper == null ? null : escapedLiterals(escaper);
+    int length = start;
+    int lastOffset = 0;
+    for (int i = 0; i < offsets.length; ++i) {
+      if (segments == null) {
+        result.append(pattern, lastOffset, offsets[i]);
+        length += offsets[i] - lastOffset;
+      } else {
+        result.append(segments[i]);
+        length += segments[i].length();
+      }
+      lastOffset = offsets[i];
+      int slot = slotMap == null ? slots[i] : slotMap[slots[i]];
+      Object obj = slot >= 0 && slot < values.length ? values[slot] : MISSING;
+      if (obj instanceof Supplier) {
+        obj = ((Supplier<?>) obj).get();
+        values[slot] = obj;
+      } else if (obj == MISSING) {
+        String argumentName = argumentNames[i];
+        if (escaper == null) {
+          result.append('{').append(argumentName).append('}');
+          length += argumentName.length() + 2;
+        } else {
+          length += escaper.escape('{' + argumentName + '}', 0, argumentName.length() + 2, result);
+        }
+        continue;
+      }
+      int argumentStart = length;
+      length = element(i, obj, values, slotMap, result, length, formats, fields, escaper);
+      if (fields != null) {
+        fields.add(NamedArgsMessageFormat.Field.ARGUMENT, argumentNames[i], argumentStart, length);
+      }
+      if (i == 0 && fp != null && NamedArgsMessageFormat.Field.ARGUMENT.equals(
+          fp.getFieldAttribute())) {
+        fp.setBeginIndex(argumentStart);
+        fp.setEndIndex(length);
+      }
+    }
+    if (segments == null) {
+      result.append(pattern, lastOffset, pattern.length());
+      return length + pattern.length() - lastOffset;
+    }
+    String tail = segments[offsets.length];
+    result.append(tail);
+    return length + tail.length();
+  }
+
+  /**
+   * Formats the available value of one format element.
+   *
+   * @param length the number of characters in {@code result} before this call
+   * @return the number of characters in {@code result} after this call
+   */
+  private int element(
+      int i, Object obj, Object[] values, int[] slotMap, Appendable result, int length,
+      Format[] formats, FieldRecorder fields, Escaper escaper
+  ) throws IOException {
+    Format subFormatter = formats.length == 0 ? null : formats[i];
+    String arg;
+    if (obj == null) {
+      arg = "null";
+    } else if (subFormatter != null) {
+      Choice choice = choices[i];
+      if (choice != null && obj instanceof Number) {
+        double number = ((Number) obj).doubleValue();
+        Branch nested;
+        if (copyFormats) {
+          int branch = Choice.select(number, choice.limits);
+          arg = branch < 0 ? "" : choice.formats[branch];
+          nested = branch < 0 ? null : choice.nested(branch, this, slotMap);
+        } else {
+          // shared formats may have been changed since the message was compiled
+          arg = Choice.select(number, (ChoiceFormat) subFormatter);
+          nested = choice.nested(arg, this, slotMap);
+        }
+        if (nested == null) {
+          // plain text, already in arg
+        } else if (nested == Branch.TOO_DEEP) {
+          // prevent loop!!!
+          arg = "\uFFFD";
+        } else {
+          CompiledMessage message = nested.message;
+          return message.subformat(values, nested.slotMap, result, length, null, message.formatsForThread(), fields, escaper);
+        }
+      } else if (obj instanceof TemporalAccessor && subFormatter instanceof DateFormat) {
+        TemporalFormat temporal = copyFormats ? temporalFormats[i] : sharedTemporalFormat(i, subFormatter);
+        arg = temporal.format((TemporalAccessor) obj, subFormatter);
+      } else if (fields != null) {
+        return fields.append(subFormatter.formatToCharacterIterator(obj), (StringBuilder) result, length);
+      } else {
+        int written = escaper == null ? appendInteger(integerWriters[i], obj, result) : -1;
+        if (written >= 0) {
+          return length + written;
+        }
+        arg = subFormatter.format(obj);
+      }
+    } else if (fields != null && (obj instanceof Number || obj instanceof Date)) {
+      Format format = obj instanceof Number ? DefaultFormats.number(locale) : DefaultFormats.dateTime(locale);
+      return fields.append(format.formatToCharacterIterator(obj), (StringBuilder) result, length);
+    } else {
+      int written = obj instanceof Number && escaper == null
+          ? appendInteger(DefaultFormats.integer(locale), obj, result) : -1;
+      if (written >= 0) {
+        return length + written;
+      }
+      arg = formatDefault(obj, locale);
+    }
+    if (escaper != null) {
+      return length + escaper.escape(arg, 0, arg.length(), result);
+    }
+    result.append(arg);
+    return length + arg.length();
+  }
+
+  /**
+   * Returns the temporal format of a shared subformat, created again if
+   * the owner of the subformat has changed it since it was last used.
+   */
+  private TemporalFormat sharedTemporalFormat(int i, Format subFormatter) {
+    TemporalFormat temporal = temporalFormats[i];
+    if (temporal == null || !temporal.isCurrent(subFormatter)) {
+      // immutable, so a race only creates it twice
+      temporal = TemporalFormat.of(subFormatter, locale);
+      temporalFormats[i] = temporal;
+    }
+    return temporal;
+  }
+
+  /**
+   * Formats the value of a format element of the top level message, for
+   * the elements the {@linkplain #specialize() specialized} formatter does
+   * not handle itself.
+   */
+  void appendElement(int i, Object[] values, StringBuilder result, Format[] formats) throws IOException {
+    int slot = slots[i];
+    Object obj = slot < values.length ? values[slot] : MISSING;
+    if (obj instanceof Supplier) {
+      obj = ((Supplier<?>) obj).get();
+      values[slot] = obj;
+      element(i, obj, values, null, result, result.length(), formats, null, null);
+    } else if (obj == MISSING) {
+      result.append('{').append(argumentNames[i]).append('}');
+    } else {
+      element(i, obj, values, null, result, result.length(), formats, null, null);
+    }
+  }
+
+  /**
+   * Appends an integral value with the given writer, if there is one and
+   * the output is a <code>StringBuilder</code>.
+   *
+   * @return the number of characters appended, or -1 if nothing was appended
+   */
+  private static int appendInteger(IntegerWriter writer, Object obj, Appendable result) {
+    if (writer == null || !(result instanceof StringBuilder)) {
+      return -1;
+    }
+    return writer.append(obj, (StringBuilder) result);
+  }
+
+  /**
+   * Formats a non-null value of an element without a subformat.
+   */
+  static String formatDefault(Object obj, Locale locale) {
+    String arg;
+    if (obj instanceof Number) {
+      IntegerWriter writer = DefaultFormats.integer(locale);
+      arg = writer == null ? null : writer.format(obj);
+      if (arg == null) {
+        arg = DefaultFormats.number(locale).format(obj);
+      }
+    } else if (obj instanceof Date) {
+      arg = DefaultFormats.dateTime(locale).format(obj);
+    } else if (obj instanceof TemporalAccessor
+        && (arg = TemporalFormat.formatDefault((TemporalAccessor) obj, locale)) != null) {
+      // formatted like a Date, with an immutable DateTimeFormatter
+    } else if (obj instanceof String) {
+      arg = (String) obj;
+    } else {
+      arg = obj.toString();
+      if (arg == null) arg = "null";
+    }
+    return arg;
+  }
+
+  /**
+   * Generates the formatter of a specialized message, one step per literal
+   * segment and format element.
+   */
+  private MethodHandle specializedFormatter() {
+    List<MethodHandle> steps = new ArrayList<>();
+    int lastOffset = 0;
+    for (int i = 0; i < offsets.length; ++i) {
+      if (offsets[i] > lastOffset) {
+        steps.add(SpecializedFormatter.literal(pattern.substring(lastOffset, offsets[i])));
+      }
+      lastOffset = offsets[i];
+      Format format = formats.length == 0 ? null : formats[i];
+      if (format == null) {
+        steps.add(SpecializedFormatter.defaultElement(slots[i], argumentNames[i], locale));
+      } else if (choices[i] == null && !(format instanceof DateFormat)) {
+        steps.add(SpecializedFormatter.formattedElement(slots[i], argumentNames[i], i, integerWriters[i]));
+      } else {
+        steps.add(SpecializedFormatter.interpretedElement(this, i));
+      }
+    }
+    if (lastOffset < pattern.length()) {
+      steps.add(SpecializedFormatter.literal(pattern.substring(lastOffset)));
+    }
+    return SpecializedFormatter.sequence(steps);
+  }
+
+  /**
+   * Returns a string describing this message, for debugging.
+   */
+  @Override
+  public String toString() {
+    return "CompiledMessage[locale=" + locale + ", pattern=" + pattern
+        + ", arguments=" + Arrays.toString(slotNames) + "]";
+  }
+
+  // ===========================privates============================
+
+  private static final Format[] NO_FORMATS = new Format[0];
+
+  private static final Object[] NO_VALUES = new Object[0];
+
+  /**
+   * Marks a slot whose argument is unavailable.
+   */
+  static final Object MISSING = new Object();
+
+  /**
+   * The maximum depth of choice branches nested in choice branches. Deeper
+   * branches are formatted as <code>'\uFFFD'</code>.
+   */
+  static final int MAX_NESTING_DEPTH = 8;
+
+  /**
+   * The length assumed for each formatted argument before any output is seen.
+   */
+  private static final int ESTIMATED_ARGUMENT_LENGTH = 8;
+
+  /**
+   * The limit of the estimated output length, as a multiple of the initial
+   * estimate.
+   */
+  private static final int MAX_ESTIMATE_FACTOR = 8;
+
+  /**
+   * The number of escapers whose escaped literal segments a message keeps.
+   */
+  private static final int MAX_ESCAPERS = 4;
+
+  /**
+   * The number of characters written at once by the batch format methods.
+   */
+  private static final int CHUNK_SIZE = 8192;
+
+  /**
+   * The locale to use for formatting numbers and dates.
+   */
+  private final Locale locale;
+
+  /**
+   * The pattern with all of the {} expressions taken out.
+   */
+  private final String pattern;
+
+  /**
+   * The positions in <code>pattern</code> where each argument is inserted.
+   */
+  private final int[] offsets;
+
+  /**
+   * The argument names corresponding to each offset.
+   */
+  private final String[] argumentNames;
+
+  /**
+   * The subformats, one for each offset.
+   */
+  private final Format[] formats;
+
+  /**
+   * The distinct argument names, in order of their first appearance,
+   * followed by the names only used in choice branches.
+   */
+  private final String[] slotNames;
+
+  /**
+   * The slot of each argument name.
+   */
+  private final Map<String, Integer> slotsByName;
+
+  /**
+   * The slot corresponding to each offset.
+   */
+  private final int[] slots;
+
+  /**
+   * The formats for <code>java.time</code> values, one for each offset,
+   * {@code null} where the subformat is not a <code>DateFormat</code>. Set
+   * when the formats are copied; shared formats can be changed by their
+   * owner, so their temporal formats are created on first use and again
+   * when {@link TemporalFormat#isCurrent(Format)} tells they are stale.
+   */
+  private final TemporalFormat[] temporalFormats;
+
+  /**
+   * The compiled branches of choice subformats, one for each offset,
+   * {@code null} where the subformat is not a <code>ChoiceFormat</code>.
+   */
+  private final Choice[] choices;
+
+  /**
+   * The writers for integral values of number subformats, one for each
+   * offset, {@code null} where the subformat has none. Only messages that
+   * own copies of their subformats have writers, since a writer does not
+   * follow changes made to the subformat after compilation.
+   */
+  private final IntegerWriter[] integerWriters;
+
+  /**
+   * Whether this message formats with per-thread copies of its subformats.
+   */
+  private final boolean copyFormats;
+
+  /**
+   * The nesting depth of this message in choice branches, 0 for a top
+   * level message.
+   */
+  private final int depth;
+
+  /**
+   * Per-thread copies of <code>formats</code>, or {@code null} if they
+   * are used directly.
+   */
+  private final ThreadLocal<Format[]> threadFormats;
+
+  /**
+   * The generated formatter of type
+   * <code>(StringBuilder, Object[], Format[])void</code>, or {@code null}
+   * if this message is not specialized.
+   */
+  private final MethodHandle specialized;
+
+  /**
+   * The running estimate of the output length, updated without
+   * synchronization; a lost update only makes the estimate less accurate.
+   */
+  private int estimatedLength;
+
+  /**
+   * The limit of {@link #estimatedLength}.
+   */
+  private final int maxEstimatedLength;
+
+  /**
+   * The pattern returned by {@link #getPattern()}, created on first use;
+   * racing threads create equal strings.
+   */
+  private String source;
+
+  /**
+   * The literal segments prepared for parsing, created on first use so
+   * that messages that are only formatted do not keep search tables.
+   * Racing threads create equal arrays.
+   */
+  private volatile LiteralMatcher[] literals;
+
+  /**
+   * The literal segments escaped for the escapers used last, most recent
+   * first, created on first use with each escaper. Racing threads create
+   * equal segments; a lost update only escapes the segments again.
+   */
+  private volatile EscapedLiterals escaped;
+
+  /**
+   * The literal segments encoded as UTF-8, created on first use so that
+   * messages that are never encoded do not keep them. Racing threads
+   * create equal arrays.
+   */
+  private volatile byte[][] utf8Literals;
+
+  /**
+   * Creates a compiled message. If {@code copyFormats} is {@code true},
+   * the given formats are cloned and every thread formats with its own
+   * copies. Otherwise the formats are used as they are, which is only safe
+   * while the message is confined to one thread.
+   */
+  CompiledMessage(
+      Locale locale, String pattern, int[] offsets, String[] argumentNames,
+      Format[] formats, boolean copyFormats, int depth
+  ) {
+    this.locale = locale;
+    this.copyFormats = copyFormats;
+    this.depth = depth;
+    this.pattern = pattern;
+    this.offsets = offsets.clone();
+    this.argumentNames = argumentNames.clone();
+    this.slots = new int[argumentNames.length];
+    Map<String, Integer> slotsByName = new HashMap<>();
+    for (int i = 0; i < argumentNames.length; i++) {
+      Integer slot = slotsByName.get(argumentNames[i]);
+      if (slot == null) {
+        slot = slotsByName.size();
+        slotsByName.put(argumentNames[i], slot);
+      }
+      slots[i] = slot;
+    }
+    if (!hasAny(formats)) {
+      this.formats = NO_FORMATS;
+      this.threadFormats = null;
+    } else if (copyFormats) {
+      this.formats = copyOf(formats);
+      this.threadFormats = new ThreadFormats(this.formats);
+    } else {
+      this.formats = formats.clone();
+      this.threadFormats = null;
+    }
+    this.temporalFormats = new TemporalFormat[this.formats.length];
+    this.choices = new Choice[this.formats.length];
+    this.integerWriters = new IntegerWriter[this.formats.length];
+    for (int i = 0; i < this.formats.length; i++) {
+      if (copyFormats) {
+        temporalFormats[i] = TemporalFormat.of(this.formats[i], locale);
+        integerWriters[i] = IntegerWriter.of(this.formats[i]);
+      }
+      if (this.formats[i] instanceof ChoiceFormat) {
+        choices[i] = Choice.of((ChoiceFormat) this.formats[i]);
+        if (choices[i] != null && depth < MAX_NESTING_DEPTH) {
+          choices[i].compileBranches(locale, copyFormats, depth + 1, slotsByName);
+        }
+      }
+    }
+    this.slotsByName = slotsByName;
+    this.slotNames = new String[slotsByName.size()];
+    for (Map.Entry<String, Integer> entry : slotsByName.entrySet()) {
+      slotNames[entry.getValue()] = entry.getKey();
+    }
+    this.specialized = null;
+    this.estimatedLength = pattern.length() + ESTIMATED_ARGUMENT_LENGTH * offsets.length;
+    this.maxEstimatedLength = MAX_ESTIMATE_FACTOR * estimatedLength;
+  }
+
+  /**
+   * Creates a copy of the given message that formats with the given
+   * generated formatter. The copy shares the subformats of the original.
+   */
+  private CompiledMessage(CompiledMessage message, MethodHandle specialized) {
+    this.locale = message.locale;
+    this.copyFormats = message.copyFormats;
+    this.depth = message.depth;
+    this.pattern = message.pattern;
+    this.offsets = message.offsets;
+    this.argumentNames = message.argumentNames;
+    this.slots = message.slots;
+    this.slotsByName = message.slotsByName;
+    this.slotNames = message.slotNames;
+    this.formats = message.formats;
+    this.threadFormats = message.threadFormats;
+    this.temporalFormats = message.temporalFormats;
+    this.choices = message.choices;
+    this.integerWriters = message.integerWriters;
+    this.specialized = specialized;
+    this.estimatedLength = message.estimatedLength;
+    this.maxEstimatedLength = message.maxEstimatedLength;
+    this.source = message.source;
+    this.literals = message.literals;
+    this.escaped = message.escaped;
+    this.utf8Literals = message.utf8Literals;
+  }
+
+  /**
+   * Returns the subformats to be used by the current thread.
+   */
+  Format[] formatsForThread() {
+    return threadFormats == null ? formats : threadFormats.get();
+  }
+
+  private static boolean hasAny(Format[] formats) {
+    for (Format format : formats) {
+      if (format != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Format[] copyOf(Format[] formats) {
+    Format[] copy = new Format[formats.length];
+    for (int i = 0; i < formats.length; i++) {
+      if (formats[i] != null) {
+        copy[i] = (Format) formats[i].clone();
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Hands out a private copy of the prototype formats to every thread.
+   */
+  private static final class ThreadFormats extends ThreadLocal<Format[]> {
+    private final Format[] prototypes;
+
+    ThreadFormats(Format[] prototypes) {
+      this.prototypes = prototypes;
+    }
+
+    @Override
+    protected Format[] initialValue() {
+      return copyOf(prototypes);
+    }
+  }
+
+  /**
+   * The literal segments of a message escaped by one escaper, linked to the
+   * segments of the escapers used before it. The chain is immutable.
+   */
+  private static final class EscapedLiterals {
+    private final Escaper escaper;
+    private final String[] segments;
+    private final EscapedLiterals next;
+
+    EscapedLiterals(Escaper escaper, String[] segments, EscapedLiterals next) {
+      this.escaper = escaper;
+      this.segments = segments;
+      this.next = next;
+    }
+
+    /**
+     * Returns a chain of at most the given number of the first entries of
+     * this chain.
+     */
+    EscapedLiterals take(int count) {
+      if (count == 0) {
+        return null;
+      }
+      EscapedLiterals rest = next == null ? null : next.take(count - 1);
+      return rest == next ? this : new EscapedLiterals(escaper, segments, rest);
+    }
+  }
+
+  /**
+   * The branches of a choice subformat. Branches that contain a pattern
+   * are compiled together with the message, so that their argument names
+   * get slots in it, and are bound to the slots of the values on first use
+   * instead of being parsed on every call.
+   */
+  private static final class Choice {
+    /**
+     * The number of branch texts of a shared choice format kept compiled.
+     */
+    private static final int MAX_SHARED_BRANCHES = 64;
+
+    private final double[] limits;
+    private final String[] formats;
+    private final CompiledMessage[] messages;
+    private final Branch[] branches;
+
+    /**
+     * The branches of a shared choice format by branch text, as its owner
+     * may change the branches after the message was compiled. Argument
+     * names that only occur in such changed branches have no slot and
+     * are formatted as missing.
+     */
+    private final ConcurrentHashMap<String, Branch> sharedBranches = new ConcurrentHashMap<>();
+
+    private Choice(double[] limits, String[] formats) {
+      this.limits = limits;
+      this.formats = formats;
+      this.messages = new CompiledMessage[formats.length];
+      this.branches = new Branch[formats.length];
+    }
+
+    static Choice of(ChoiceFormat format) {
+      double[] limits = format.getLimits();
+      Object[] formats = format.getFormats();
+      if (limits.length != formats.length) {
+        return null;
+      }
+      String[] strings = new String[formats.length];
+      for (int i = 0; i < formats.length; i++) {
+        strings[i] = String.valueOf(formats[i]);
+      }
+      return new Choice(limits, strings);
+    }
+
+    /**
+     * Compiles the branches that contain a pattern and gives every argument
+     * name they use, including the names of their own branches, a slot in
+     * {@code slotsByName}. A branch that is not a valid pattern is left to
+     * fail when it is selected, as it does in
+     * <code>java.text.MessageFormat</code>.
+     */
+    void compileBranches(Locale locale, boolean copyFormats, int depth, Map<String, Integer> slotsByName) {
+      for (int branch = 0; branch < formats.length; branch++) {
+        if (formats[branch].indexOf('{') < 0) {
+          continue;
+        }
+        CompiledMessage message;
+        try {
+          message = Branch.compile(formats[branch], locale, copyFormats, depth);
+        } catch (IllegalArgumentException e) {
+          continue;
+        }
+        messages[branch] = message;
+        for (String name : message.slotNames) {
+          if (!slotsByName.containsKey(name)) {
+            slotsByName.put(name, slotsByName.size());
+          }
+        }
+      }
+    }
+
+    /**
+     * Selects the branch for the given number, exactly like
+     * <code>ChoiceFormat.format(double)</code>.
+     *
+     * @return the index of the branch, -1 if there are no limits
+     */
+    static int select(double number, double[] limits) {
+      if (limits.length == 0) {
+        return -1;
+      }
+      int i;
+      for (i = 0; i < limits.length; ++i) {
+        if (!(number >= limits[i])) {
+          // same as number < limits[i], except catches NaN
+          break;
+        }
+      }
+      --i;
+      return i < 0 ? 0 : i;
+    }
+
+    /**
+     * Returns the text of the branch of a shared choice format for the
+     * given number, reading its current limits and branches.
+     */
+    static String select(double number, ChoiceFormat format) {
+      int branch = select(number, format.getLimits());
+      return branch < 0 ? "" : String.valueOf(format.getFormats()[branch]);
+    }
+
+    /**
+     * Returns the compiled branch of the given text of a shared choice
+     * format, {@code null} if the text is plain. Branches compiled with the
+     * message are reused while the text is unchanged.
+     *
+     * @param owner   the message this choice belongs to
+     * @param slotMap the slot map used to format {@code owner}
+     */
+    Branch nested(String text, CompiledMessage owner, int[] slotMap) {
+      if (text.indexOf('{') < 0) {
+        return null;
+      }
+      Branch nested = sharedBranches.get(text);
+      if (nested == null) {
+        if (owner.depth >= MAX_NESTING_DEPTH) {
+          nested = Branch.TOO_DEEP;
+        } else {
+          CompiledMessage message = null;
+          for (int branch = 0; branch < formats.length && message == null; branch++) {
+            if (text.equals(formats[branch])) {
+              message = messages[branch];
+            }
+          }
+          if (message == null) {
+            // reports the error of compiling an invalid pattern
+            message = Branch.compile(text, owner.locale, owner.copyFormats, owner.depth + 1);
+          }
+          nested = Branch.bind(message, owner, slotMap);
+        }
+        if (sharedBranches.size() < MAX_SHARED_BRANCHES) {
+          sharedBranches.put(text, nested);
+        }
+      }
+      return nested;
+    }
+
+    /**
+     * Returns the compiled branch, {@code null} if the branch is plain text.
+     *
+     * @param owner   the message this choice belongs to
+     * @param slotMap the slot map used to format {@code owner}
+     */
+    Branch nested(int branch, CompiledMessage owner, int[] slotMap) {
+      if (formats[branch].indexOf('{') < 0) {
+        return null;
+      }
+      // racy, but branches are immutable and compiling twice is harmless
+      Branch nested = branches[branch];
+      if (nested == null) {
+        if (owner.depth >= MAX_NESTING_DEPTH) {
+          nested = Branch.TOO_DEEP;
+        } else {
+          CompiledMessage message = messages[branch];
+          if (message == null) {
+            // not a valid pattern: report the error of compiling it
+            message = Branch.compile(formats[branch], owner.locale, owner.copyFormats, owner.depth + 1);
+          }
+          nested = Branch.bind(message, owner, slotMap);
+        }
+        branches[branch] = nested;
+      }
+      return nested;
+    }
+  }
+
+  /**
+   * A compiled choice branch and the slots of the values it is formatted with.
+   */
+  private static final class Branch {
+    static final Branch TOO_DEEP = new Branch(null, null);
+
+    private final CompiledMessage message;
+    private final int[] slotMap;
+
+    private Branch(CompiledMessage message, int[] slotMap) {
+      this.message = message;
+      this.slotMap = slotMap;
+    }
+
+    static CompiledMessage compile(String pattern, Locale locale, boolean copyFormats, int depth) {
+      Object event = Instrumentation.recording ? FlightRecording.beginChoiceCompile() : null;
+      CompiledMessage message = new NamedArgsMessageFormat(pattern, locale).compile(copyFormats, depth);
+      if (event != null) {
+        FlightRecording.endChoiceCompile(event, message, pattern, depth);
+      }
+      return message;
+    }
+
+    /**
+     * Maps the slots of a compiled branch to the slots of the values its
+     * owner is formatted with. Every name of the branch has a slot in its
+     * owner, see {@link Choice#compileBranches}.
+     */
+    static Branch bind(CompiledMessage message, CompiledMessage owner, int[] ownerSlotMap) {
+      int[] slotMap = new int[message.slotNames.length];
+      for (int slot = 0; slot < slotMap.length; slot++) {
+        int ownerSlot = owner.slotOf(message.slotNames[slot]);
+        slotMap[slot] = ownerSlot < 0 || ownerSlotMap == null ? ownerSlot : ownerSlotMap[ownerSlot];
+      }
+      return new Branch(message, slotMap);
+    }
+  }
+}
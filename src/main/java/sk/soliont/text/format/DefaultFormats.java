@@ -0,0 +1,153 @@
+package sk.soliont.text.format;
+
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The formats used for <code>Number</code> and <code>Date</code> arguments
+ * of format elements without a format type, and for <code>java.time</code>
+ * arguments whose default format has no <code>DateTimeFormatter</code>
+ * equivalent, resolved once per locale.
+ * <p>
+ * <code>NumberFormat</code> and <code>DateFormat</code> instances are not
+ * thread-safe, so each thread keeps its own instances. They are never
+ * handed out to callers and never modified, so formatting with them gives
+ * the same output as a freshly created instance. The date formats are
+ * recreated when the ID of the default time zone changes.
+ */
+final class DefaultFormats {
+
+  private static final ThreadLocal<DefaultFormats> CURRENT = new ThreadLocal<DefaultFormats>() {
+    @Override
+    protected DefaultFormats initialValue() {
+      return new DefaultFormats();
+    }
+  };
+
+  /**
+   * Returns the equivalent of <code>NumberFormat.getInstance(locale)</code>
+   * for the current thread.
+   */
+  static NumberFormat number(Locale locale) {
+    Entry entry = CURRENT.get().entry(locale);
+    if (entry.number == null) {
+      entry.number = NumberFormat.getInstance(locale);
+    }
+    return entry.number;
+  }
+
+  /**
+   * Returns the writer reproducing {@link #number(Locale)} for integral
+   * values, or {@code null} if the number format of the locale has none.
+   */
+  static IntegerWriter integer(Locale locale) {
+    Entry entry = CURRENT.get().entry(locale);
+    if (!entry.integerResolved) {
+      if (entry.number == null) {
+        entry.number = NumberFormat.getInstance(locale);
+      }
+      entry.integer = IntegerWriter.of(entry.number);
+      entry.integerResolved = true;
+    }
+    return entry.integer;
+  }
+
+  /**
+   * Returns the equivalent of
+   * <code>DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale)</code>
+   * for the current thread.
+   */
+  static DateFormat dateTime(Locale locale) {
+    Entry entry = dateEntry(locale);
+    if (entry.dateTime == null) {
+      entry.dateTime = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale);
+    }
+    return entry.dateTime;
+  }
+
+  /**
+   * Returns the equivalent of
+   * <code>DateFormat.getDateInstance(DateFormat.SHORT, locale)</code>
+   * for the current thread.
+   */
+  static DateFormat date(Locale locale) {
+    Entry entry = dateEntry(locale);
+    if (entry.date == null) {
+      entry.date = DateFormat.getDateInstance(DateFormat.SHORT, locale);
+    }
+    return entry.date;
+  }
+
+  /**
+   * Returns the equivalent of
+   * <code>DateFormat.getTimeInstance(DateFormat.SHORT, locale)</code>
+   * for the current thread.
+   */
+  static DateFormat time(Locale locale) {
+    Entry entry = dateEntry(locale);
+    if (entry.time == null) {
+      entry.time = DateFormat.getTimeInstance(DateFormat.SHORT, locale);
+    }
+    return entry.time;
+  }
+
+  /**
+   * Returns the entry of the locale, without its date formats if the
+   * default zone changed since they were created.
+   */
+  private static Entry dateEntry(Locale locale) {
+    Entry entry = CURRENT.get().entry(locale);
+    // comparing zone IDs is cheaper than comparing TimeZone rules
+    ZoneId zone = ZoneId.systemDefault();
+    if (!zone.equals(entry.zone)) {
+      entry.dateTime = null;
+      entry.date = null;
+      entry.time = null;
+      entry.zone = zone;
+    }
+    return entry;
+  }
+
+  private final Map<Locale, Entry> entries = new HashMap<>();
+  private Entry last;
+
+  private DefaultFormats() {
+  }
+
+  private Entry entry(Locale locale) {
+    Entry entry = last;
+    if (entry != null && entry.locale.equals(locale)) {
+      return entry;
+    }
+    entry = entries.get(locale);
+    if (entry == null) {
+      entry = new Entry(locale);
+      entries.put(locale, entry);
+    }
+    last = entry;
+    return entry;
+  }
+
+  private static final class Entry {
+    private final Locale locale;
+    private NumberFormat number;
+    private DateFormat dateTime;
+    private DateFormat date;
+    private DateFormat time;
+    private IntegerWriter integer;
+    private boolean integerResolved;
+
+    /**
+     * The default zone when the date formats were created.
+     */
+    private ZoneId zone;
+
+    Entry(Locale locale) {
+      this.locale = locale;
+    }
+  }
+}
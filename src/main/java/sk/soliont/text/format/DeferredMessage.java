@@ -0,0 +1,115 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A compiled message together with its arguments, formatted only when its
+ * text is needed. It is meant to be handed to a logger: creating it costs
+ * one small object, and a statement whose level is disabled never formats
+ * it.
+ * <p>
+ * {@link #toString()} formats the message on first call and returns the
+ * same string afterwards. The {@code formatTo} methods append the cached
+ * string if there is one, and otherwise format straight into the output
+ * without keeping a string.
+ * <p>
+ * The arguments are held as given and read when the message is formatted,
+ * so a map or array changed in between is formatted with its new content.
+ * Argument values may be <code>Supplier</code>s, see {@link CompiledMessage}.
+ * Instances are thread-safe if their arguments are not changed; racing
+ * threads format equal strings.
+ *
+ * @see CompiledMessage#defer(Map)
+ * @see CompiledMessage#defer(Object[])
+ */
+public final class DeferredMessage {
+
+  private final CompiledMessage message;
+  private final Map<String, ?> arguments;
+  private final Object[] values;
+
+  /**
+   * The formatted text, created on first call of {@link #toString()}.
+   */
+  private String text;
+
+  DeferredMessage(CompiledMessage message, Map<String, ?> arguments, Object[] values) {
+    this.message = message;
+    this.arguments = arguments;
+    this.values = values;
+  }
+
+  /**
+   * Gets the compiled message this message is formatted with.
+   *
+   * @return the compiled message
+   */
+  public CompiledMessage getMessage() {
+    return message;
+  }
+
+  /**
+   * Tells whether the text of this message has been formatted and kept.
+   *
+   * @return {@code true} if {@link #toString()} has been called
+   */
+  public boolean isFormatted() {
+    return text != null;
+  }
+
+  /**
+   * Appends the text of this message to the provided
+   * <code>StringBuilder</code>.
+   *
+   * @param result where text is appended
+   * @return the string builder passed in as {@code result}
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public StringBuilder formatTo(StringBuilder result) {
+    String text = this.text;
+    if (text != null) {
+      return result.append(text);
+    }
+    return arguments != null ? message.format(arguments, result) : message.format(values, result);
+  }
+
+  /**
+   * Appends the text of this message to the provided
+   * <code>Appendable</code>.
+   *
+   * @param result where text is appended
+   * @param <A>    the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public <A extends Appendable> A formatTo(A result) throws IOException {
+    String text = this.text;
+    if (text != null) {
+      result.append(text);
+      return result;
+    }
+    return arguments != null ? message.formatTo(arguments, result) : message.formatTo(values, result);
+  }
+
+  /**
+   * Returns the text of this message, formatting it on first call.
+   *
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   */
+  @Override
+  public String toString() {
+    String text = this.text;
+    if (text == null) {
+      text = arguments != null ? message.format(arguments) : message.format(values);
+      this.text = text;
+    }
+    return text;
+  }
+}
@@ -0,0 +1,72 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+
+/**
+ * Escapes text for the context a message is written into, such as an HTML
+ * document or a JSON string.
+ * <p>
+ * A {@link CompiledMessage} formatting with an escaper escapes the literal
+ * text of its pattern once, on first use with that escaper, and escapes the
+ * formatted value of every argument while it is appended, so the message
+ * never has to be escaped again as a whole.
+ * <p>
+ * Implementations must be thread-safe and must always escape the same text
+ * the same way.
+ *
+ * @see CompiledMessage#format(java.util.Map, Escaper)
+ */
+public interface Escaper {
+
+  /**
+   * Escapes text for HTML element content and quoted attribute values:
+   * <code>&amp;</code>, <code>&lt;</code>, <code>&gt;</code>,
+   * <code>"</code> and <code>'</code> are replaced by character
+   * references.
+   */
+  Escaper HTML = TableEscaper.html();
+
+  /**
+   * Escapes text for the inside of a JSON string: <code>"</code>,
+   * <code>\</code> and the control characters are replaced by escape
+   * sequences. The quotes around the string are not added.
+   */
+  Escaper JSON = TableEscaper.json();
+
+  /**
+   * Escapes text for a quoted XML attribute value: besides the characters
+   * escaped by {@link #HTML}, tab, line feed and carriage return are
+   * replaced by character references, so attribute value normalization
+   * keeps them.
+   */
+  Escaper XML_ATTRIBUTE = TableEscaper.xmlAttribute();
+
+  /**
+   * Appends a range of the given text, escaped.
+   *
+   * @param text  the text to escape
+   * @param start the index of the first character to escape
+   * @param end   the index after the last character to escape
+   * @param out   where the escaped text is appended
+   * @return the number of characters appended
+   * @throws IOException if the appendable fails
+   */
+  int escape(CharSequence text, int start, int end, Appendable out) throws IOException;
+
+  /**
+   * Returns the given text, escaped.
+   *
+   * @param text the text to escape
+   * @return the escaped text
+   */
+  default String escape(CharSequence text) {
+    StringBuilder result = new StringBuilder(text.length() + 16);
+    try {
+      escape(text, 0, text.length(), result);
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new AssertionError(e);
+    }
+    return result.toString();
+  }
+}
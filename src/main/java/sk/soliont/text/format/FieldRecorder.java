@@ -0,0 +1,93 @@
+package sk.soliont.text.format;
+
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Collects the attributed runs of a formatted message while it is being
+ * formatted: the span of every argument and the fields reported by the
+ * subformats. The runs are kept in parallel arrays of offsets, keys and
+ * values and turned into one <code>AttributedString</code> at the end.
+ * <p>
+ * Runs are applied in the order they were recorded, so a run recorded
+ * later wins where it overlaps an earlier run with the same key. Nested
+ * messages record their runs before the enclosing argument, as
+ * <code>java.text.MessageFormat</code> does.
+ */
+final class FieldRecorder {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private int[] starts = new int[INITIAL_CAPACITY];
+  private int[] ends = new int[INITIAL_CAPACITY];
+  private AttributedCharacterIterator.Attribute[] keys = new AttributedCharacterIterator.Attribute[INITIAL_CAPACITY];
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Records a run of the output.
+   */
+  void add(AttributedCharacterIterator.Attribute key, Object value, int start, int end) {
+    if (start >= end) {
+      return;
+    }
+    if (size == starts.length) {
+      int capacity = size * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    starts[size] = start;
+    ends[size] = end;
+    keys[size] = key;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Appends the text of the given iterator and records each of its
+   * attributes once per run of equal values.
+   *
+   * @param length the number of characters in {@code result} before this call
+   * @return the number of characters in {@code result} after this call
+   */
+  int append(AttributedCharacterIterator iterator, StringBuilder result, int length) {
+    int begin = iterator.getBeginIndex();
+    int end = iterator.getEndIndex();
+    for (char ch = iterator.first(); ch != AttributedCharacterIterator.DONE; ch = iterator.next()) {
+      result.append(ch);
+    }
+    for (int index = begin; index < end; ) {
+      iterator.setIndex(index);
+      for (Map.Entry<AttributedCharacterIterator.Attribute, Object> entry : iterator.getAttributes().entrySet()) {
+        AttributedCharacterIterator.Attribute key = entry.getKey();
+        if (iterator.getRunStart(key) == index) {
+          add(key, entry.getValue(), length + index - begin, length + iterator.getRunLimit(key) - begin);
+        }
+      }
+      index = iterator.getRunLimit();
+    }
+    return length + end - begin;
+  }
+
+  /**
+   * Returns the number of recorded runs.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the given text with the recorded runs.
+   */
+  AttributedCharacterIterator toIterator(String text) {
+    AttributedString attributed = new AttributedString(text);
+    for (int i = 0; i < size; i++) {
+      attributed.addAttribute(keys[i], values[i], starts[i], ends[i]);
+    }
+    return attributed.getIterator();
+  }
+}
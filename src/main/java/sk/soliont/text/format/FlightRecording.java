@@ -0,0 +1,103 @@
+package sk.soliont.text.format;
+
+/**
+ * The JDK Flight Recorder events of the library. All events are disabled
+ * by default and are enabled in the recording settings, for example
+ * <pre>
+ *   -XX:StartFlightRecording:settings=profile,+sk.soliont.text.format.SlowFormat#enabled=true
+ * </pre>
+ * The threshold of the slow format event is the usual
+ * <code>#threshold</code> setting of the event, 1 ms unless configured.
+ * <p>
+ * The library is compiled for Java 8, which has no <code>jdk.jfr</code>
+ * API. The events are implemented by
+ * <code>sk.soliont.text.format.JfrFlightRecording</code>, which is compiled
+ * for Java 11 from <code>src/main/java11</code> and loaded by name when the
+ * Flight Recorder is available. The static methods are only called while
+ * {@link Instrumentation#recording} is set, which only that implementation
+ * does. The events are passed around as <code>Object</code>s so that
+ * callers do not load the event classes.
+ */
+abstract class FlightRecording {
+
+  private static final String IMPLEMENTATION = "sk.soliont.text.format.JfrFlightRecording";
+
+  /**
+   * The implementation, set before the first recording is reported.
+   */
+  private static FlightRecording events;
+
+  /**
+   * Loads the implementation and starts following the state of
+   * recordings. Does nothing if the implementation can not be loaded, for
+   * example on a Java 8 runtime.
+   */
+  static void install() {
+    FlightRecording implementation;
+    try {
+      implementation = (FlightRecording) Class.forName(IMPLEMENTATION, true, FlightRecording.class.getClassLoader())
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return;
+    }
+    events = implementation;
+    implementation.start();
+  }
+
+  /**
+   * Starts timing a pattern compilation.
+   *
+   * @return the event, or {@code null} if it is disabled
+   */
+  static Object beginCompile() {
+    return events.compileStarted();
+  }
+
+  static void endCompile(Object started, NamedArgsMessageFormat format, String pattern, int placeholders) {
+    events.compileEnded(started, format, pattern, placeholders);
+  }
+
+  /**
+   * Starts timing a format call.
+   *
+   * @return the event, or {@code null} if it is disabled
+   */
+  static Object beginFormat() {
+    return events.formatStarted();
+  }
+
+  static void endFormat(Object started, CompiledMessage message, int length) {
+    events.formatEnded(started, message, length);
+  }
+
+  /**
+   * Starts timing the compilation of a choice branch.
+   *
+   * @return the event, or {@code null} if it is disabled
+   */
+  static Object beginChoiceCompile() {
+    return events.choiceCompileStarted();
+  }
+
+  static void endChoiceCompile(Object started, CompiledMessage branch, String pattern, int depth) {
+    events.choiceCompileEnded(started, branch, pattern, depth);
+  }
+
+  /**
+   * Starts following the state of recordings, setting
+   * {@link Instrumentation#recording} while any recording runs.
+   */
+  abstract void start();
+
+  abstract Object compileStarted();
+
+  abstract void compileEnded(Object started, NamedArgsMessageFormat format, String pattern, int placeholders);
+
+  abstract Object formatStarted();
+
+  abstract void formatEnded(Object started, CompiledMessage message, int length);
+
+  abstract Object choiceCompileStarted();
+
+  abstract void choiceCompileEnded(Object started, CompiledMessage branch, String pattern, int depth);
+}
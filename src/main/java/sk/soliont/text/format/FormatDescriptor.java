@@ -0,0 +1,56 @@
+package sk.soliont.text.format;
+
+import java.text.Format;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The format type and format style of a format element, as written in the
+ * pattern, from which its subformat can be created again for any locale.
+ * <p>
+ * Instances are immutable.
+ */
+final class FormatDescriptor {
+
+  private final String type;
+  private final String style;
+
+  FormatDescriptor(String type, String style) {
+    this.type = type;
+    this.style = style;
+  }
+
+  String getType() {
+    return type;
+  }
+
+  String getStyle() {
+    return style;
+  }
+
+  /**
+   * Creates a new subformat for the given locale.
+   *
+   * @throws IllegalArgumentException if the type is unknown or the style is invalid
+   */
+  Format newFormat(Locale locale) {
+    return NamedArgsMessageFormat.createFormat(type, style, locale);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof FormatDescriptor)) {
+      return false;
+    }
+    FormatDescriptor other = (FormatDescriptor) obj;
+    return type.equals(other.type) && style.equals(other.style);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, style);
+  }
+}
@@ -0,0 +1,69 @@
+package sk.soliont.text.format;
+
+/**
+ * Installs the {@link MessageListener} of the library.
+ * <p>
+ * On runtimes with the JDK Flight Recorder, the library also emits
+ * Flight Recorder events for pattern compilation, slow format calls and
+ * choice branch compilation. They are disabled by default and are enabled
+ * in the recording settings under the names
+ * <code>sk.soliont.text.format.PatternCompilation</code>,
+ * <code>sk.soliont.text.format.SlowFormat</code> and
+ * <code>sk.soliont.text.format.ChoiceCompilation</code>.
+ * <p>
+ * Without a listener and a running recording, the instrumented methods
+ * only check two fields and take no timings.
+ */
+public final class Instrumentation {
+
+  /**
+   * The installed listener, {@code null} if instrumentation is off.
+   */
+  static volatile MessageListener listener;
+
+  /**
+   * Whether a Flight Recorder recording is running.
+   */
+  static volatile boolean recording;
+
+  static {
+    if (isFlightRecorderAvailable()) {
+      try {
+        FlightRecording.install();
+      } catch (SecurityException e) {
+        // not permitted to follow recordings, no events
+      }
+    }
+  }
+
+  /**
+   * Installs the listener that receives the timings of all messages,
+   * replacing the current one.
+   *
+   * @param listener the listener, or {@code null} to turn instrumentation off
+   */
+  public static void setListener(MessageListener listener) {
+    Instrumentation.listener = listener;
+  }
+
+  /**
+   * Gets the installed listener.
+   *
+   * @return the listener, or {@code null} if instrumentation is off
+   */
+  public static MessageListener getListener() {
+    return listener;
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.FlightRecorder", false, Instrumentation.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private Instrumentation() {
+  }
+}
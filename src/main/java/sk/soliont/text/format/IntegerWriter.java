@@ -0,0 +1,153 @@
+package sk.soliont.text.format;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.Format;
+
+/**
+ * Writes integral values the way a given <code>DecimalFormat</code> does,
+ * appending the digits straight into the output instead of going through
+ * <code>NumberFormat.format</code>.
+ * <p>
+ * A writer is only created for formats whose output for integral values
+ * is fully described by the affixes, the zero digit, the grouping
+ * separator and the grouping size: no multiplier, no exponent, no
+ * currency, no fraction digits or decimal separator shown for integers,
+ * and at most one minimum integer digit. The writer is checked against
+ * the format for a set of probe values when it is created.
+ * <p>
+ * It handles <code>Integer</code>, <code>Long</code>, <code>Short</code>
+ * and <code>Byte</code> values, and <code>Double</code> and
+ * <code>Float</code> values that are integral and exactly representable as
+ * a <code>long</code>. Other values are left to the format.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class IntegerWriter {
+
+  /**
+   * The magnitude below which every integral double is formatted without
+   * rounding by <code>DecimalFormat</code>.
+   */
+  private static final double MAX_EXACT_DOUBLE = 1L << 53;
+
+  private static final long[] PROBES = {
+      0, 1, -1, 7, -42, 999, 1000, -1000, 12345, 1234567, -987654321,
+      Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE
+  };
+
+  private final String positivePrefix;
+  private final String positiveSuffix;
+  private final String negativePrefix;
+  private final String negativeSuffix;
+  private final char zeroDigit;
+  private final char groupingSeparator;
+  private final int groupingSize;
+
+  private IntegerWriter(DecimalFormat format) {
+    DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+    this.positivePrefix = format.getPositivePrefix();
+    this.positiveSuffix = format.getPositiveSuffix();
+    this.negativePrefix = format.getNegativePrefix();
+    this.negativeSuffix = format.getNegativeSuffix();
+    this.zeroDigit = symbols.getZeroDigit();
+    this.groupingSeparator = symbols.getGroupingSeparator();
+    this.groupingSize = format.isGroupingUsed() ? Math.max(0, format.getGroupingSize()) : 0;
+  }
+
+  /**
+   * Returns a writer for the given format, or {@code null} if its output
+   * for integral values cannot be reproduced exactly.
+   */
+  static IntegerWriter of(Format format) {
+    if (!(format instanceof DecimalFormat)) {
+      return null;
+    }
+    DecimalFormat decimalFormat = (DecimalFormat) format;
+    String pattern = decimalFormat.toPattern();
+    if (decimalFormat.getMultiplier() != 1
+        || decimalFormat.isDecimalSeparatorAlwaysShown()
+        || decimalFormat.getMinimumFractionDigits() > 0
+        || decimalFormat.getMinimumIntegerDigits() > 1
+        || decimalFormat.getMaximumIntegerDigits() < 19
+        || pattern.indexOf('E') >= 0
+        || pattern.indexOf('\u00A4') >= 0) {
+      return null;
+    }
+    IntegerWriter writer = new IntegerWriter(decimalFormat);
+    for (long probe : PROBES) {
+      if (!decimalFormat.format(probe).equals(writer.format(probe))) {
+        return null;
+      }
+    }
+    return writer;
+  }
+
+  /**
+   * Appends the given value if this writer handles it.
+   *
+   * @return the number of characters appended, or -1 if the value is not handled
+   */
+  int append(Object value, StringBuilder result) {
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return append(((Number) value).longValue(), result);
+    }
+    if (value instanceof Double || value instanceof Float) {
+      double d = ((Number) value).doubleValue();
+      if (d == Math.rint(d) && Math.abs(d) < MAX_EXACT_DOUBLE
+          && (d != 0 || Double.doubleToRawLongBits(d) == 0)) {
+        // integral, and not negative zero, which DecimalFormat writes as "-0"
+        return append((long) d, result);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the given value as formatted by the format, or {@code null} if
+   * this writer does not handle it.
+   */
+  String format(Object value) {
+    StringBuilder result = new StringBuilder(24);
+    return append(value, result) < 0 ? null : result.toString();
+  }
+
+  String format(long value) {
+    StringBuilder result = new StringBuilder(24);
+    append(value, result);
+    return result.toString();
+  }
+
+  /**
+   * Appends the given value, writing the digits backwards into space
+   * reserved in the builder.
+   *
+   * @return the number of characters appended
+   */
+  int append(long value, StringBuilder result) {
+    int start = result.length();
+    boolean negative = value < 0;
+    result.append(negative ? negativePrefix : positivePrefix);
+    // work with the negative magnitude, which also holds Long.MIN_VALUE
+    long remaining = negative ? value : -value;
+    int digits = 1;
+    for (long v = remaining / 10; v != 0; v /= 10) {
+      digits++;
+    }
+    int separators = groupingSize > 0 ? (digits - 1) / groupingSize : 0;
+    int end = result.length() + digits + separators;
+    result.setLength(end);
+    int position = end;
+    int count = 0;
+    do {
+      if (separators > 0 && count > 0 && count % groupingSize == 0) {
+        result.setCharAt(--position, groupingSeparator);
+      }
+      result.setCharAt(--position, (char) (zeroDigit - (int) (remaining % 10)));
+      remaining /= 10;
+      count++;
+    } while (remaining != 0);
+    result.append(negative ? negativeSuffix : positiveSuffix);
+    return result.length() - start;
+  }
+}
@@ -0,0 +1,101 @@
+package sk.soliont.text.format;
+
+import java.util.Arrays;
+
+/**
+ * A literal segment of a pattern, prepared for matching and searching in
+ * parsed text.
+ * <p>
+ * Literals of at least {@link #MIN_TABLE_LENGTH} characters are searched
+ * with the Boyer-Moore-Horspool algorithm. Its shift table is indexed by
+ * the low byte of a character; characters sharing a low byte share the
+ * smallest shift of them, which keeps the search correct for any text.
+ * <p>
+ * Instances are immutable.
+ */
+final class LiteralMatcher {
+
+  /**
+   * The shortest literal searched with a shift table; shorter literals
+   * are searched character by character.
+   */
+  static final int MIN_TABLE_LENGTH = 4;
+
+  private static final int TABLE_SIZE = 256;
+
+  private final String literal;
+  private final int[] shifts;
+
+  LiteralMatcher(String literal) {
+    this.literal = literal;
+    int length = literal.length();
+    if (length >= MIN_TABLE_LENGTH) {
+      shifts = new int[TABLE_SIZE];
+      Arrays.fill(shifts, length);
+      for (int i = 0; i < length - 1; i++) {
+        shifts[literal.charAt(i) & (TABLE_SIZE - 1)] = length - 1 - i;
+      }
+    } else {
+      shifts = null;
+    }
+  }
+
+  /**
+   * Returns the number of characters of the literal.
+   */
+  int length() {
+    return literal.length();
+  }
+
+  /**
+   * Tells whether the literal occurs in the text at the given index.
+   */
+  boolean matchesAt(CharSequence text, int index) {
+    int length = literal.length();
+    if (index < 0 || index > text.length() - length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (text.charAt(index + i) != literal.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the index of the first occurrence of the literal in the text
+   * at or after the given index, or -1 if there is none.
+   */
+  int indexIn(CharSequence text, int from) {
+    int length = literal.length();
+    if (length == 0) {
+      return from <= text.length() ? from : -1;
+    }
+    int last = length - 1;
+    char lastChar = literal.charAt(last);
+    int end = text.length();
+    if (shifts == null) {
+      char first = literal.charAt(0);
+      for (int i = from; i <= end - length; i++) {
+        if (text.charAt(i) == first && matchesAt(text, i)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    for (int i = from + last; i < end; ) {
+      char ch = text.charAt(i);
+      if (ch == lastChar && matchesAt(text, i - last)) {
+        return i - last;
+      }
+      i += shifts[ch & (TABLE_SIZE - 1)];
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return literal;
+  }
+}
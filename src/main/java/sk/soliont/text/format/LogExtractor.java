@@ -0,0 +1,437 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParsePosition;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Extracts the arguments of a {@link CompiledMessage} from the lines of a
+ * text file, such as a log written with the message.
+ * <p>
+ * The file is memory-mapped in regions that end at a line break, decoded
+ * into a reused character buffer and parsed line by line with
+ * {@link CompiledMessage#parse(CharSequence, ParsePosition, MessageArguments)}
+ * directly on that buffer. Only the parsed values are created per line,
+ * except for messages with subformats: <code>Format</code> parses only
+ * strings, so the rest of the line from the first argument with a
+ * subformat on is copied into one string. A line matches if the message
+ * parses it completely; a line break is
+ * <code>"\n"</code> or <code>"\r\n"</code>. Lines that do not match are
+ * skipped.
+ * <p>
+ * The parallel methods split the file into ranges at line breaks and scan
+ * the ranges on a <code>ForkJoinPool</code>, a few ranges per worker.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class LogExtractor {
+
+  /**
+   * The largest region of the file mapped at once.
+   */
+  static final int MAPPING_SIZE = 1 << 26;
+
+  /**
+   * The initial capacity of the decoded character buffer; it grows for
+   * longer lines.
+   */
+  private static final int WINDOW_SIZE = 1 << 16;
+
+  /**
+   * The smallest range scanned by one parallel task.
+   */
+  private static final long MIN_RANGE_SIZE = 1 << 20;
+
+  private static final int RANGES_PER_WORKER = 4;
+
+  private final CompiledMessage message;
+  private final Charset charset;
+
+  private LogExtractor(CompiledMessage message, Charset charset) {
+    this.message = message;
+    this.charset = charset;
+  }
+
+  /**
+   * Creates an extractor for UTF-8 files.
+   *
+   * @param message the message the lines were formatted with
+   * @return the extractor
+   * @throws NullPointerException if {@code message} is {@code null}
+   */
+  public static LogExtractor of(CompiledMessage message) {
+    return of(message, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Creates an extractor for files in the given charset. The charset must
+   * encode the line feed as the single byte <code>0x0A</code>, as UTF-8,
+   * ASCII and the ISO-8859 charsets do, so that the file can be split
+   * into lines before decoding.
+   *
+   * @param message the message the lines were formatted with
+   * @param charset the charset of the files
+   * @return the extractor
+   * @throws IllegalArgumentException if the charset does not encode the line feed as one byte
+   * @throws NullPointerException     if {@code message} or {@code charset} is {@code null}
+   */
+  public static LogExtractor of(CompiledMessage message, Charset charset) {
+    if (message == null) {
+      throw new NullPointerException("message");
+    }
+    byte[] lineFeed = "\n".getBytes(charset);
+    if (lineFeed.length != 1 || lineFeed[0] != '\n') {
+      throw new IllegalArgumentException("Lines cannot be split before decoding " + charset);
+    }
+    return new LogExtractor(message, charset);
+  }
+
+  /**
+   * Gets the message used to parse the lines.
+   *
+   * @return the message
+   */
+  public CompiledMessage getMessage() {
+    return message;
+  }
+
+  /**
+   * Gets the charset of the files.
+   *
+   * @return the charset
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Parses the lines of the given file in order and passes the arguments
+   * of every matching line to the given action. The holder passed to the
+   * action is reused for the next line; copy the values the action keeps.
+   *
+   * @param file   the file to read
+   * @param action receives the arguments of each matching line
+   * @return the number of matching lines
+   * @throws IOException          if the file cannot be read
+   * @throws NullPointerException if any parameter is {@code null}
+   */
+  public long forEach(Path file, Consumer<? super MessageArguments> action) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new Scanner(action).scan(channel, 0, channel.size());
+    }
+  }
+
+  /**
+   * Parses the lines of the given file in parallel on the given pool and
+   * passes the arguments of every matching line to the given action. The
+   * action is called from several threads at once and in no particular
+   * order; every thread reuses its own holder.
+   *
+   * @param file   the file to read
+   * @param action receives the arguments of each matching line
+   * @param pool   the pool to scan on
+   * @return the number of matching lines
+   * @throws IOException          if the file cannot be read
+   * @throws NullPointerException if any parameter is {@code null}
+   */
+  public long forEach(Path file, Consumer<? super MessageArguments> action, ForkJoinPool pool) throws IOException {
+    long matched = 0;
+    for (Long count : inParallel(file, pool, (channel, start, end) -> new Scanner(action).scan(channel, start, end))) {
+      matched += count;
+    }
+    return matched;
+  }
+
+  /**
+   * Parses the lines of the given file and maps the arguments of every
+   * matching line to a record.
+   *
+   * @param file   the file to read
+   * @param mapper creates the record of a matching line from its arguments
+   * @param <R>    the type of the records
+   * @return the records, in the order of the lines
+   * @throws IOException          if the file cannot be read
+   * @throws NullPointerException if any parameter is {@code null}
+   */
+  public <R> List<R> extract(Path file, Function<? super MessageArguments, ? extends R> mapper) throws IOException {
+    List<R> records = new ArrayList<>();
+    forEach(file, arguments -> records.add(mapper.apply(arguments)));
+    return records;
+  }
+
+  /**
+   * Parses the lines of the given file in parallel on the given pool and
+   * maps the arguments of every matching line to a record. The mapper is
+   * called from several threads at once.
+   *
+   * @param file   the file to read
+   * @param mapper creates the record of a matching line from its arguments
+   * @param pool   the pool to scan on
+   * @param <R>    the type of the records
+   * @return the records, in the order of the lines
+   * @throws IOException          if the file cannot be read
+   * @throws NullPointerException if any parameter is {@code null}
+   */
+  public <R> List<R> extract(
+      Path file, Function<? super MessageArguments, ? extends R> mapper, ForkJoinPool pool
+  ) throws IOException {
+    List<List<R>> ranges = inParallel(file, pool, (channel, start, end) -> {
+      List<R> records = new ArrayList<>();
+      new Scanner(arguments -> records.add(mapper.apply(arguments))).scan(channel, start, end);
+      return records;
+    });
+    int size = 0;
+    for (List<R> range : ranges) {
+      size += range.size();
+    }
+    List<R> records = new ArrayList<>(size);
+    for (List<R> range : ranges) {
+      records.addAll(range);
+    }
+    return records;
+  }
+
+  /**
+   * Splits the file into ranges of whole lines and applies the task to
+   * each range on the pool.
+   *
+   * @return the results of the task, in the order of the ranges
+   */
+  private <T> List<T> inParallel(Path file, ForkJoinPool pool, RangeTask<T> task) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long[] bounds = split(channel, pool.getParallelism() * RANGES_PER_WORKER);
+      List<ForkJoinTask<T>> tasks = new ArrayList<>(bounds.length - 1);
+      for (int i = 0; i < bounds.length - 1; i++) {
+        long start = bounds[i];
+        long end = bounds[i + 1];
+        tasks.add(pool.submit(() -> task.apply(channel, start, end)));
+      }
+      List<T> results = new ArrayList<>(tasks.size());
+      for (ForkJoinTask<T> forked : tasks) {
+        try {
+          results.add(forked.get());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while extracting " + file, e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IOException(cause);
+        }
+      }
+      return results;
+    }
+  }
+
+  /**
+   * Returns the bounds of at most {@code count} ranges covering the file,
+   * each starting at the beginning of a line.
+   */
+  static long[] split(FileChannel channel, int count) throws IOException {
+    long size = channel.size();
+    int ranges = (int) Math.max(1, Math.min(count, size / MIN_RANGE_SIZE));
+    long[] bounds = new long[ranges + 1];
+    bounds[ranges] = size;
+    for (int i = 1; i < ranges; i++) {
+      bounds[i] = Math.max(bounds[i - 1], lineStart(channel, size / ranges * i));
+    }
+    return bounds;
+  }
+
+  /**
+   * Returns the start of the first line that starts at or after the given
+   * position, or the size of the file if there is none.
+   */
+  private static long lineStart(FileChannel channel, long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    long offset = position - 1;
+    while (true) {
+      buffer.clear();
+      int read = channel.read(buffer, offset);
+      if (read <= 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += read;
+    }
+  }
+
+  /**
+   * The work on one range of a file.
+   */
+  private interface RangeTask<T> {
+    T apply(FileChannel channel, long start, long end) throws IOException;
+  }
+
+  /**
+   * Scans ranges of a file with its own decoder, buffer and holder.
+   */
+  private final class Scanner {
+    private final Consumer<? super MessageArguments> action;
+    private final CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final MessageArguments arguments = message.newArguments();
+    private final ParsePosition pos = new ParsePosition(0);
+    private final Line line = new Line();
+    private CharBuffer chars = CharBuffer.allocate(WINDOW_SIZE);
+    private long matched;
+
+    Scanner(Consumer<? super MessageArguments> action) {
+      this.action = action;
+    }
+
+    long scan(FileChannel channel, long start, long end) throws IOException {
+      long position = start;
+      while (position < end) {
+        long size = Math.min(end - position, MAPPING_SIZE);
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        if (position + size < end) {
+          int lastLineFeed = lastLineFeed(bytes, (int) size);
+          if (lastLineFeed < 0) {
+            throw new IOException("Line at " + position + " is longer than " + MAPPING_SIZE + " bytes");
+          }
+          bytes.limit(lastLineFeed + 1);
+        }
+        position += bytes.limit();
+        decode(bytes);
+      }
+      drain(true);
+      return matched;
+    }
+
+    private void decode(ByteBuffer bytes) {
+      // every region ends at a line break, so it holds whole characters
+      decoder.reset();
+      CoderResult result = decoder.decode(bytes, chars, true);
+      while (result.isOverflow()) {
+        drain(false);
+        result = decoder.decode(bytes, chars, true);
+      }
+      while (decoder.flush(chars).isOverflow()) {
+        drain(false);
+      }
+    }
+
+    /**
+     * Parses the complete lines in the buffer and keeps the incomplete
+     * last line, or parses it too at the end of the range.
+     */
+    private void drain(boolean last) {
+      chars.flip();
+      char[] array = chars.array();
+      int limit = chars.limit();
+      int lineStart = 0;
+      for (int i = 0; i < limit; i++) {
+        if (array[i] == '\n') {
+          accept(array, lineStart, i);
+          lineStart = i + 1;
+        }
+      }
+      if (last && lineStart < limit) {
+        accept(array, lineStart, limit);
+        lineStart = limit;
+      }
+      chars.position(lineStart);
+      chars.compact();
+      if (!chars.hasRemaining()) {
+        // a line longer than the buffer
+        CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+        chars.flip();
+        chars = larger.put(chars);
+      }
+    }
+
+    private void accept(char[] array, int start, int end) {
+      if (end > start && array[end - 1] == '\r') {
+        end--;
+      }
+      line.set(array, start, end - start);
+      pos.setIndex(0);
+      pos.setErrorIndex(-1);
+      if (message.parse(line, pos, arguments) && pos.getIndex() == line.length()) {
+        matched++;
+        action.accept(arguments);
+      }
+    }
+  }
+
+  private static int lastLineFeed(ByteBuffer bytes, int limit) {
+    for (int i = limit - 1; i >= 0; i--) {
+      if (bytes.get(i) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * A line in the decoded buffer, valid until the buffer is refilled.
+   */
+  private static final class Line implements CharSequence {
+    private char[] chars;
+    private int offset;
+    private int length;
+
+    void set(char[] chars, int offset, int length) {
+      this.chars = chars;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+      }
+      return chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      if (start < 0 || end > length || start > end) {
+        throw new IndexOutOfBoundsException("Range: " + start + ".." + end + ", length: " + length);
+      }
+      return new String(chars, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, offset, length);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package sk.soliont.text.format;
+
+import java.util.Arrays;
+
+/**
+ * A reusable holder for the arguments of one {@link CompiledMessage},
+ * stored by slot instead of by name.
+ * <p>
+ * A holder is created with {@link CompiledMessage#newArguments()} and can
+ * only be used with the message that created it. Argument names are
+ * resolved to slots when the message is compiled, so setting a value by
+ * slot needs no lookup at all. A slot that has not been set since the last
+ * {@link #clear()} is unavailable and formatted as
+ * <code>"{" + argumentName + "}"</code>.
+ * <p>
+ * Holders are not thread-safe; reuse one per thread.
+ */
+public final class MessageArguments {
+
+  private final CompiledMessage message;
+  private final Object[] values;
+
+  MessageArguments(CompiledMessage message) {
+    this.message = message;
+    this.values = new Object[message.getArgumentNames().size()];
+    Arrays.fill(values, CompiledMessage.MISSING);
+  }
+
+  /**
+   * Gets the message these arguments belong to.
+   *
+   * @return the message that created this holder
+   */
+  public CompiledMessage getMessage() {
+    return message;
+  }
+
+  /**
+   * Sets the value of the argument in the given slot.
+   *
+   * @param slot  the slot, as returned by {@link CompiledMessage#slotOf(String)}
+   * @param value the value, may be {@code null}
+   * @return this holder
+   * @throws IndexOutOfBoundsException if the message has no such slot
+   */
+  public MessageArguments set(int slot, Object value) {
+    values[slot] = value;
+    return this;
+  }
+
+  /**
+   * Sets the value of the named argument. Names the message does not use
+   * are ignored.
+   *
+   * @param argumentName the argument name
+   * @param value        the value, may be {@code null}
+   * @return this holder
+   */
+  public MessageArguments set(String argumentName, Object value) {
+    int slot = message.slotOf(argumentName);
+    if (slot >= 0) {
+      values[slot] = value;
+    }
+    return this;
+  }
+
+  /**
+   * Gets the value of the argument in the given slot.
+   *
+   * @param slot the slot
+   * @return the value, or {@code null} if it is not set
+   * @throws IndexOutOfBoundsException if the message has no such slot
+   */
+  public Object get(int slot) {
+    Object value = values[slot];
+    return value == CompiledMessage.MISSING ? null : value;
+  }
+
+  /**
+   * Tells whether the argument in the given slot is set.
+   *
+   * @param slot the slot
+   * @return {@code true} if a value, possibly {@code null}, was set
+   * @throws IndexOutOfBoundsException if the message has no such slot
+   */
+  public boolean isSet(int slot) {
+    return values[slot] != CompiledMessage.MISSING;
+  }
+
+  /**
+   * Makes all arguments unavailable again.
+   *
+   * @return this holder
+   */
+  public MessageArguments clear() {
+    Arrays.fill(values, CompiledMessage.MISSING);
+    return this;
+  }
+
+  /**
+   * Returns the values by slot, checking that they belong to the given message.
+   */
+  Object[] valuesFor(CompiledMessage message) {
+    if (message != this.message) {
+      throw new IllegalArgumentException("Arguments belong to another message");
+    }
+    return values;
+  }
+}
@@ -0,0 +1,863 @@
+package sk.soliont.text.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A catalog of message patterns read from <code>.properties</code> files,
+ * compiled on first use.
+ * <p>
+ * The files of a catalog live in one directory and are named like the
+ * files of a <code>PropertyResourceBundle</code>: <code>messages.properties</code>
+ * for the root locale, <code>messages_de.properties</code>,
+ * <code>messages_de_AT.properties</code> and so on. They are read as UTF-8,
+ * each file at most once, when a locale that uses it is first requested.
+ * <p>
+ * A key is looked up along the candidate locales of
+ * <code>ResourceBundle.Control</code>, from the requested locale to the
+ * root locale, so <code>de_AT</code> falls back to <code>de</code> and then to
+ * the root file. As in <code>ResourceBundle.getBundle</code>, a locale
+ * other than the root locale that has no file of its own apart from the
+ * root file falls back to the candidates of the default locale first, as
+ * of the first request for that locale: <code>fr</code> uses
+ * <code>de_AT</code>, <code>de</code> and then the root file while the
+ * default locale is <code>de_AT</code>.
+ * The pattern that is found is compiled for the requested
+ * locale into a {@link CompiledMessage} and kept, so each key is parsed
+ * once per locale. Lookups of compiled messages do not lock.
+ * <p>
+ * For a fast start, a catalog can be converted at build time with
+ * {@link #writeBinary(Path)} into a binary file of already tokenized
+ * patterns, and opened from that file with {@link #open(Path)}. The binary
+ * file is memory-mapped and its messages are created without parsing
+ * their patterns; the lookup rules are the same.
+ * <p>
+ * A catalog can be reloaded while it is in use, from its files with
+ * {@link #reload()}, automatically when they change with
+ * {@link #watch(Consumer, Consumer)}, or from a new set of patterns with
+ * {@link #reload(Map)}. A reload reads all files of the new version aside,
+ * compiles again only the messages whose pattern changed, carries the
+ * others over, and then publishes the new version at once: lookups never
+ * wait for a reload, never read a file of a reloaded version and never
+ * see a mix of two versions. Only the first version reads its files on
+ * demand.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class MessageCatalog {
+
+  private static final ResourceBundle.Control CONTROL =
+      ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+
+  /**
+   * Creates a catalog of the properties files with the given base name in
+   * the given directory. No file is read until a message is requested.
+   *
+   * @param directory the directory of the properties files
+   * @param baseName  the base name of the files, without locale suffix and extension
+   * @return the catalog
+   * @throws NullPointerException if {@code directory} or {@code baseName} is {@code null}
+   */
+  public static MessageCatalog of(Path directory, String baseName) {
+    if (directory == null || baseName == null) {
+      throw new NullPointerException();
+    }
+    return new MessageCatalog(directory, null, baseName, new PropertiesSource(directory, baseName));
+  }
+
+  /**
+   * Creates a catalog of the given patterns, by locale and key.
+   *
+   * @param baseName the base name of the catalog, used for locale fallback and in messages
+   * @param patterns the patterns by locale and key
+   * @return the catalog
+   * @throws NullPointerException if {@code baseName} or {@code patterns} is {@code null}
+   */
+  public static MessageCatalog of(String baseName, Map<Locale, ? extends Map<String, String>> patterns) {
+    if (baseName == null) {
+      throw new NullPointerException();
+    }
+    return new MessageCatalog(null, null, baseName, new PatternSource(patterns));
+  }
+
+  /**
+   * Opens a binary catalog written by {@link #writeBinary(Path)}. Only the
+   * header of the file is read; the messages of a locale are read from the
+   * memory-mapped file when they are first requested.
+   *
+   * @param file the binary catalog file
+   * @return the catalog
+   * @throws IOException          if the file can not be read or is not a binary catalog
+   * @throws NullPointerException if {@code file} is {@code null}
+   */
+  public static MessageCatalog open(Path file) throws IOException {
+    BinaryCatalog binary = BinaryCatalog.open(file);
+    return new MessageCatalog(null, file, binary.getBaseName(), binary);
+  }
+
+  /**
+   * How long a watcher waits for further changes before it reloads.
+   */
+  private static final long QUIET_PERIOD_MILLIS = 100;
+
+  private final Path directory;
+  private final Path file;
+  private final String baseName;
+
+  /**
+   * The source of the files of this catalog, reopened by {@link #reload()}.
+   */
+  private final Source origin;
+
+  /**
+   * Serializes reloads; lookups never take it.
+   */
+  private final Object reloadLock = new Object();
+
+  /**
+   * The published version.
+   */
+  private volatile Snapshot snapshot;
+
+  private MessageCatalog(Path directory, Path file, String baseName, Source source) {
+    this.directory = directory;
+    this.file = file;
+    this.baseName = baseName;
+    this.origin = source;
+    this.snapshot = new Snapshot(source, 0, false);
+  }
+
+  /**
+   * Gets the directory the properties files are read from.
+   *
+   * @return the directory of this catalog, or {@code null} if it was opened
+   *         from a binary file
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Gets the base name of the properties files.
+   *
+   * @return the base name of this catalog
+   */
+  public String getBaseName() {
+    return baseName;
+  }
+
+  /**
+   * Returns the compiled message for the given key and locale.
+   *
+   * @param key    the message key
+   * @param locale the requested locale, also used for formatting
+   * @return the compiled message
+   * @throws MissingResourceException if no file on the fallback chain has the key
+   * @throws IllegalArgumentException if the pattern is invalid
+   * @throws UncheckedIOException     if a properties file can not be read
+   * @throws NullPointerException     if {@code key} or {@code locale} is {@code null}
+   */
+  public CompiledMessage getMessage(String key, Locale locale) {
+    return snapshot.messages(locale).get(key);
+  }
+
+  /**
+   * Tells whether a file on the fallback chain of the given locale has the key.
+   *
+   * @param key    the message key
+   * @param locale the requested locale
+   * @return {@code true} if the key can be looked up for the locale
+   * @throws UncheckedIOException if a properties file can not be read
+   * @throws NullPointerException if {@code key} or {@code locale} is {@code null}
+   */
+  public boolean containsKey(String key, Locale locale) {
+    return snapshot.messages(locale).bundleOf(key) != null;
+  }
+
+  /**
+   * Formats the message for the given key and locale.
+   *
+   * @param key       the message key
+   * @param locale    the requested locale
+   * @param arguments the arguments by name, may be {@code null}
+   * @return the formatted string
+   * @throws MissingResourceException if no file on the fallback chain has the key
+   * @throws IllegalArgumentException if the pattern is invalid, or if an argument
+   *                                  is not of the type expected by the format
+   *                                  element(s) that use it.
+   * @throws UncheckedIOException     if a properties file can not be read
+   * @throws NullPointerException     if {@code key} or {@code locale} is {@code null}
+   */
+  public String format(String key, Locale locale, Map<String, ?> arguments) {
+    return getMessage(key, locale).format(arguments);
+  }
+
+  /**
+   * Writes all messages of this catalog, for every locale it has a file
+   * for, as tokenized templates to a binary catalog file that can be
+   * opened with {@link #open(Path)}.
+   *
+   * @param file the file to write, replaced if it exists
+   * @throws IOException              if a file can not be read or written
+   * @throws IllegalArgumentException if a pattern is invalid
+   * @throws NullPointerException     if {@code file} is {@code null}
+   */
+  public void writeBinary(Path file) throws IOException {
+    Snapshot current = snapshot;
+    Map<Locale, Bundle> all = new LinkedHashMap<>();
+    for (Locale locale : current.source.locales()) {
+      all.put(locale, current.bundle(locale));
+    }
+    BinaryCatalog.write(file, baseName, all);
+  }
+
+  /**
+   * Gets the version of the catalog currently in use. The version of a new
+   * catalog is 0 and every reload increments it.
+   *
+   * @return the current version
+   */
+  public long getVersion() {
+    return snapshot.version;
+  }
+
+  /**
+   * Reads the files of this catalog again and publishes them as a new
+   * version. All files are read before the new version is published; the
+   * messages that were compiled and whose pattern changed are compiled
+   * again, the other messages are carried over. A binary catalog is mapped again, so it should be
+   * replaced by moving a new file in its place rather than rewriting it.
+   * <p>
+   * A catalog created from patterns publishes the patterns it was created
+   * with again.
+   *
+   * @return the outcome of the reload
+   * @throws IOException if a file can not be read; the current version stays in use
+   */
+  public ReloadResult reload() throws IOException {
+    return publish(origin.reopen());
+  }
+
+  /**
+   * Publishes the given patterns as a new version of this catalog,
+   * replacing the files or patterns it was created from until the next
+   * {@link #reload()}.
+   *
+   * @param patterns the patterns by locale and key
+   * @return the outcome of the reload
+   * @throws NullPointerException if {@code patterns} is {@code null}
+   */
+  public ReloadResult reload(Map<Locale, ? extends Map<String, String>> patterns) {
+    try {
+      return publish(new PatternSource(patterns));
+    } catch (IOException e) {
+      // patterns are not read from files
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reloads the files of this catalog on the given executor.
+   *
+   * @param executor the executor to reload on
+   * @return the future outcome of the reload
+   * @see #reload()
+   */
+  public CompletableFuture<ReloadResult> reloadAsync(Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return reload();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Watches the files of this catalog and reloads it whenever they change.
+   * Changes are collected until the files have been quiet for a short
+   * while, then the catalog is reloaded on a daemon thread and the outcome
+   * is passed to {@code onReload}. A failed reload keeps the current
+   * version in use and passes the exception to {@code onFailure}; a reload
+   * that fails with an <code>Error</code> passes it to the uncaught
+   * exception handler of the watching thread instead. An exception thrown
+   * by either callback is passed to that handler as well. In all cases
+   * watching goes on.
+   * <p>
+   * The files that the current version has not read yet are read before
+   * watching starts, so that every reload can tell which keys changed.
+   *
+   * @param onReload  receives the outcome of every reload
+   * @param onFailure receives the exception of every failed reload
+   * @return a handle that stops watching when closed
+   * @throws IOException           if the directory can not be watched or a file can not be read
+   * @throws IllegalStateException if this catalog was created from patterns
+   * @throws NullPointerException  if {@code onReload} or {@code onFailure} is {@code null}
+   */
+  public Closeable watch(Consumer<? super ReloadResult> onReload, Consumer<? super Exception> onFailure) throws IOException {
+    Objects.requireNonNull(onReload);
+    Objects.requireNonNull(onFailure);
+    Path watched = directory != null ? directory : file == null ? null : file.toAbsolutePath().getParent();
+    if (watched == null) {
+      throw new IllegalStateException("Catalog has no files to watch");
+    }
+    synchronized (reloadLock) {
+      snapshot.readAll();
+    }
+    WatchService service = watched.getFileSystem().newWatchService();
+    try {
+      watched.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    } catch (IOException | RuntimeException e) {
+      service.close();
+      throw e;
+    }
+    Thread thread = new Thread(() -> {
+      try {
+        while (true) {
+          boolean changed = isOwnFileChanged(service.take());
+          WatchKey more;
+          while ((more = service.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            changed |= isOwnFileChanged(more);
+          }
+          if (changed) {
+            ReloadResult result;
+            try {
+              result = reload();
+            } catch (IOException | RuntimeException e) {
+              notify(onFailure, e);
+              continue;
+            } catch (Error e) {
+              // e.g. a pattern nested too deeply, the files may be fixed later
+              uncaught(e);
+              continue;
+            }
+            notify(onReload, result);
+          }
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        // stopped
+      }
+    }, "MessageCatalog watcher " + baseName);
+    thread.setDaemon(true);
+    thread.start();
+    return service::close;
+  }
+
+  /**
+   * Passes a value to a callback of {@link #watch(Consumer, Consumer)}. An
+   * exception of the callback goes to the uncaught exception handler of
+   * the thread, which keeps watching.
+   */
+  private static <T> void notify(Consumer<? super T> callback, T value) {
+    try {
+      callback.accept(value);
+    } catch (RuntimeException | Error e) {
+      uncaught(e);
+    }
+  }
+
+  /**
+   * Passes an exception to the uncaught exception handler of the current
+   * thread without ending the thread.
+   */
+  private static void uncaught(Throwable e) {
+    Thread thread = Thread.currentThread();
+    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+  }
+
+  private boolean isOwnFileChanged(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      Object context = event.context();
+      if (!(context instanceof Path)) {
+        // overflow, events were lost
+        changed = true;
+        continue;
+      }
+      String name = context.toString();
+      changed |= file != null
+          ? name.equals(file.getFileName().toString())
+          : PropertiesSource.localeOf(baseName, name) != null;
+    }
+    key.reset();
+    return changed;
+  }
+
+  /**
+   * Builds the next version from the given source and publishes it.
+   */
+  private ReloadResult publish(Source source) throws IOException {
+    synchronized (reloadLock) {
+      long start = System.nanoTime();
+      Snapshot current = snapshot;
+      Snapshot next = new Snapshot(source, current.version + 1, true);
+      try {
+        for (Locale locale : source.locales()) {
+          Bundle bundle = source.bundle(locale);
+          if (bundle != null) {
+            next.bundles.put(locale, bundle);
+          }
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      Set<Locale> locales = new HashSet<>(next.bundles.keySet());
+      locales.addAll(current.bundles.keySet());
+      if (!current.complete) {
+        locales.addAll(current.source.locales());
+      }
+      Set<String> changedKeys = new HashSet<>();
+      try {
+        for (Locale locale : locales) {
+          // read from the previous source if the current version never needed it
+          Bundle before = current.bundle(locale);
+          Bundle after = next.bundle(locale);
+          Set<String> keys = new HashSet<>(before.keys());
+          keys.addAll(after.keys());
+          for (String key : keys) {
+            if (!Objects.equals(before.source(key), after.source(key))) {
+              changedKeys.add(key);
+            }
+          }
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      int recompiled = 0;
+      for (Messages before : current.messages.values()) {
+        Messages after = next.messages(before.locale);
+        for (Map.Entry<String, CompiledMessage> entry : before.compiled.entrySet()) {
+          String key = entry.getKey();
+          Bundle bundle = after.bundleOf(key);
+          if (bundle == null) {
+            continue;
+          }
+          Bundle previous = before.bundleOf(key);
+          if (previous != null && Objects.equals(previous.source(key), bundle.source(key))) {
+            after.compiled.put(key, entry.getValue());
+          } else {
+            try {
+              after.compiled.put(key, bundle.compile(key, before.locale));
+              recompiled++;
+            } catch (IllegalArgumentException e) {
+              // left uncompiled, the lookup reports the invalid pattern
+            }
+          }
+        }
+      }
+      snapshot = next;
+      return new ReloadResult(next.version, changedKeys.size(), recompiled,
+          Duration.ofNanos(System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Returns a string describing this catalog, for debugging.
+   */
+  @Override
+  public String toString() {
+    return "MessageCatalog[directory=" + directory + ", baseName=" + baseName + "]";
+  }
+
+  /**
+   * One version of the catalog: a source, the bundles read from it and the
+   * messages compiled from them. The messages are compiled on demand, also
+   * after the version is published. The bundles of a complete version are
+   * all read before it is published; the first version reads them on
+   * demand.
+   */
+  private final class Snapshot {
+    private final Source source;
+    private final long version;
+
+    /**
+     * Whether {@link #bundles} holds every bundle of the source, so that a
+     * locale missing from it has no bundle.
+     */
+    private volatile boolean complete;
+
+    /**
+     * The bundle of each locale, an empty bundle where the source has none.
+     */
+    private final ConcurrentHashMap<Locale, Bundle> bundles = new ConcurrentHashMap<>();
+
+    /**
+     * The compiled messages of each requested locale.
+     */
+    private final ConcurrentHashMap<Locale, Messages> messages = new ConcurrentHashMap<>();
+
+    Snapshot(Source source, long version, boolean complete) {
+      this.source = source;
+      this.version = version;
+      this.complete = complete;
+    }
+
+    /**
+     * Reads every bundle of the source that has not been read yet, making
+     * this version complete.
+     */
+    void readAll() throws IOException {
+      if (complete) {
+        return;
+      }
+      try {
+        for (Locale locale : source.locales()) {
+          bundle(locale);
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      complete = true;
+    }
+
+    Messages messages(Locale locale) {
+      Messages result = messages.get(locale);
+      if (result == null) {
+        List<Bundle> chain = new ArrayList<>();
+        addCandidates(locale, chain);
+        Locale fallback = CONTROL.getFallbackLocale(baseName, locale);
+        if (chain.isEmpty() && fallback != null && !locale.equals(Locale.ROOT)) {
+          addCandidates(fallback, chain);
+        }
+        Bundle root = bundle(Locale.ROOT);
+        if (!root.keys().isEmpty()) {
+          chain.add(root);
+        }
+        result = new Messages(locale, chain);
+        Messages existing = messages.putIfAbsent(locale, result);
+        if (existing != null) {
+          result = existing;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Adds the non-empty bundles of the candidate locales of the given
+     * locale, except the root locale, to the chain.
+     */
+    private void addCandidates(Locale locale, List<Bundle> chain) {
+      for (Locale candidate : CONTROL.getCandidateLocales(baseName, locale)) {
+        if (!candidate.equals(Locale.ROOT)) {
+          Bundle bundle = bundle(candidate);
+          if (!bundle.keys().isEmpty()) {
+            chain.add(bundle);
+          }
+        }
+      }
+    }
+
+    Bundle bundle(Locale locale) {
+      Bundle result = bundles.get(locale);
+      if (result == null && complete) {
+        return PropertiesBundle.EMPTY;
+      }
+      if (result == null) {
+        result = bundles.computeIfAbsent(locale, candidate -> {
+          Bundle bundle = source.bundle(candidate);
+          return bundle == null ? PropertiesBundle.EMPTY : bundle;
+        });
+      }
+      return result;
+    }
+  }
+
+  /**
+   * The compiled messages of one requested locale and the bundles of its
+   * fallback chain, most specific first.
+   */
+  private final class Messages {
+    private final Locale locale;
+    private final List<Bundle> chain;
+    private final ConcurrentHashMap<String, CompiledMessage> compiled = new ConcurrentHashMap<>();
+
+    Messages(Locale locale, List<Bundle> chain) {
+      this.locale = locale;
+      this.chain = chain;
+    }
+
+    CompiledMessage get(String key) {
+      CompiledMessage message = compiled.get(key);
+      if (message == null) {
+        Bundle bundle = bundleOf(key);
+        if (bundle == null) {
+          throw new MissingResourceException("Can't find message for key " + key + " in "
+              + baseName + ", locale " + locale, baseName + "_" + locale, key);
+        }
+        message = bundle.compile(key, locale);
+        CompiledMessage existing = compiled.putIfAbsent(key, message);
+        if (existing != null) {
+          message = existing;
+        }
+      }
+      return message;
+    }
+
+    /**
+     * Returns the most specific bundle that has the key.
+     */
+    Bundle bundleOf(String key) {
+      for (Bundle bundle : chain) {
+        if (bundle.containsKey(key)) {
+          return bundle;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Where the patterns of a catalog come from.
+   */
+  interface Source {
+    /**
+     * Returns a source that reads the current content of the underlying
+     * files, possibly this source.
+     */
+    Source reopen() throws IOException;
+
+    /**
+     * Returns the locales the source has a bundle for.
+     */
+    List<Locale> locales() throws IOException;
+
+    /**
+     * Returns the bundle of exactly the given locale, {@code null} if there
+     * is none.
+     *
+     * @throws UncheckedIOException if the bundle can not be read
+     */
+    Bundle bundle(Locale locale);
+  }
+
+  /**
+   * The messages of one locale of a source.
+   */
+  interface Bundle {
+    Set<String> keys();
+
+    boolean containsKey(String key);
+
+    /**
+     * Returns what the message of the key is compiled from, compared to
+     * find changed keys, or {@code null} if the bundle has no such key.
+     */
+    Object source(String key);
+
+    /**
+     * Compiles the message of the key for the given locale.
+     */
+    CompiledMessage compile(String key, Locale locale);
+
+    /**
+     * Returns the tokenized template of the key.
+     */
+    MessageTemplate template(String key);
+  }
+
+  /**
+   * Reads bundles from the properties files of a directory.
+   */
+  static final class PropertiesSource implements Source {
+    private final Path directory;
+    private final String baseName;
+
+    PropertiesSource(Path directory, String baseName) {
+      this.directory = directory;
+      this.baseName = baseName;
+    }
+
+    /**
+     * Returns this source, which reads the files on every call.
+     */
+    @Override
+    public Source reopen() {
+      return this;
+    }
+
+    @Override
+    public List<Locale> locales() throws IOException {
+      List<Locale> locales = new ArrayList<>();
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, baseName + "*.properties")) {
+        for (Path file : files) {
+          Locale locale = localeOf(baseName, file.getFileName().toString());
+          if (locale != null) {
+            locales.add(locale);
+          }
+        }
+      }
+      locales.sort(Comparator.comparing(Locale::toString));
+      return locales;
+    }
+
+    /**
+     * Returns the locale of a properties file name of the given base name,
+     * or {@code null} if the name belongs to another base name, such as
+     * <code>messages_extra.properties</code> for <code>messages</code>: a
+     * language has two or three letters.
+     */
+    static Locale localeOf(String baseName, String fileName) {
+      if (!fileName.endsWith(".properties")) {
+        return null;
+      }
+      String stem = fileName.substring(0, fileName.length() - ".properties".length());
+      Locale locale;
+      if (stem.equals(baseName)) {
+        locale = Locale.ROOT;
+      } else if (stem.startsWith(baseName + "_")) {
+        String[] parts = stem.substring(baseName.length() + 1).split("_", -1);
+        if (!parts[0].isEmpty() && (parts[0].length() > 3 || !isLetters(parts[0]))) {
+          return null;
+        }
+        boolean script = parts.length > 1 && parts[1].length() == 4;
+        switch (parts.length) {
+          case 1:
+            locale = new Locale(parts[0]);
+            break;
+          case 2:
+            locale = script ? BinaryCatalog.locale(parts[0], parts[1], "", "") : new Locale(parts[0], parts[1]);
+            break;
+          case 3:
+            locale = script ? BinaryCatalog.locale(parts[0], parts[1], parts[2], "")
+                : new Locale(parts[0], parts[1], parts[2]);
+            break;
+          case 4:
+            locale = BinaryCatalog.locale(parts[0], parts[1], parts[2], parts[3]);
+            break;
+          default:
+            return null;
+        }
+      } else {
+        return null;
+      }
+      return CONTROL.toBundleName(baseName, locale).equals(stem) ? locale : null;
+    }
+
+    private static boolean isLetters(String text) {
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Bundle bundle(Locale locale) {
+      Path file = directory.resolve(CONTROL.toBundleName(baseName, locale) + ".properties");
+      Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      } catch (NoSuchFileException e) {
+        return null;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot read " + file, e);
+      }
+      Map<String, String> patterns = new HashMap<>();
+      for (String name : properties.stringPropertyNames()) {
+        patterns.put(name, properties.getProperty(name));
+      }
+      return new PropertiesBundle(patterns);
+    }
+  }
+
+  /**
+   * The raw patterns of one properties file.
+   */
+  private static final class PropertiesBundle implements Bundle {
+    static final PropertiesBundle EMPTY = new PropertiesBundle(Collections.<String, String>emptyMap());
+
+    private final Map<String, String> patterns;
+
+    PropertiesBundle(Map<String, String> patterns) {
+      this.patterns = patterns;
+    }
+
+    @Override
+    public Set<String> keys() {
+      return Collections.unmodifiableSet(patterns.keySet());
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+      return patterns.containsKey(key);
+    }
+
+    @Override
+    public Object source(String key) {
+      return patterns.get(key);
+    }
+
+    @Override
+    public CompiledMessage compile(String key, Locale locale) {
+      return CompiledMessage.compile(patterns.get(key), locale);
+    }
+
+    @Override
+    public MessageTemplate template(String key) {
+      return MessageTemplate.parse(patterns.get(key));
+    }
+  }
+
+  /**
+   * Serves the patterns of a map, copied when the source is created.
+   */
+  private static final class PatternSource implements Source {
+    private final Map<Locale, PropertiesBundle> bundles = new LinkedHashMap<>();
+
+    PatternSource(Map<Locale, ? extends Map<String, String>> patterns) {
+      for (Map.Entry<Locale, ? extends Map<String, String>> entry : patterns.entrySet()) {
+        bundles.put(entry.getKey(), new PropertiesBundle(new HashMap<>(entry.getValue())));
+      }
+    }
+
+    @Override
+    public Source reopen() {
+      return this;
+    }
+
+    @Override
+    public List<Locale> locales() {
+      return new ArrayList<>(bundles.keySet());
+    }
+
+    @Override
+    public Bundle bundle(Locale locale) {
+      return bundles.get(locale);
+    }
+  }
+}
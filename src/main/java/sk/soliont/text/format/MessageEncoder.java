@@ -0,0 +1,189 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CoderResult;
+import java.text.Format;
+
+/**
+ * Writes one formatted message as UTF-8 straight into byte buffers,
+ * without creating the message string and encoding it afterwards.
+ * <p>
+ * The literal segments of the message are encoded once per compiled
+ * message and copied as bytes; only the formatted value of each argument
+ * is encoded per call. An argument is formatted once, when encoding
+ * reaches it, and is not formatted again when the encoding is resumed.
+ * <p>
+ * Like <code>CharsetEncoder.encode</code>, {@link #encode(ByteBuffer)}
+ * writes as much as fits and reports <code>CoderResult.OVERFLOW</code>
+ * when the buffer is full. The caller then drains or replaces the buffer
+ * and calls it again to continue where it stopped; characters are never
+ * split between two calls. Unpaired surrogates are encoded as
+ * <code>'?'</code>, as <code>String.getBytes</code> does.
+ * <p>
+ * An encoder is not thread-safe, but it may be resumed on another thread.
+ *
+ * @see CompiledMessage#encoder(java.util.Map)
+ */
+public final class MessageEncoder {
+
+  private final CompiledMessage message;
+  private final Object[] values;
+  private final byte[][] literals;
+
+  /**
+   * The formatted value of the current argument.
+   */
+  private final StringBuilder argument = new StringBuilder();
+
+  /**
+   * The current segment: literal {@code i} is segment {@code 2 * i},
+   * argument {@code i} is segment {@code 2 * i + 1}.
+   */
+  private int segment;
+
+  /**
+   * The number of bytes of the current literal, or characters of the
+   * current argument, already written.
+   */
+  private int offset;
+
+  /**
+   * Whether the current argument has been formatted.
+   */
+  private boolean formatted;
+
+  MessageEncoder(CompiledMessage message, Object[] values, byte[][] literals) {
+    this.message = message;
+    this.values = values;
+    this.literals = literals;
+  }
+
+  /**
+   * Writes as much of the rest of the message as fits into the given
+   * buffer, starting at its position. A character takes up to four bytes,
+   * so a call with less than four bytes remaining may write nothing.
+   *
+   * @param out the buffer to write to
+   * @return <code>CoderResult.UNDERFLOW</code> if the whole message has
+   * been written, or <code>CoderResult.OVERFLOW</code> if the buffer is
+   * full and this method must be called again with more space
+   * @throws IllegalArgumentException if an argument is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+   */
+  public CoderResult encode(ByteBuffer out) {
+    int last = 2 * (literals.length - 1);
+    Format[] formats = null;
+    for (; segment <= last; segment++, offset = 0) {
+      if ((segment & 1) == 0) {
+        byte[] bytes = literals[segment >> 1];
+        int count = Math.min(out.remaining(), bytes.length - offset);
+        if (offset + count < bytes.length) {
+          // stop before the character whose continuation bytes do not fit
+          while (count > 0 && (bytes[offset + count] & 0xC0) == 0x80) {
+            count--;
+          }
+        }
+        out.put(bytes, offset, count);
+        offset += count;
+        if (offset < bytes.length) {
+          return CoderResult.OVERFLOW;
+        }
+      } else {
+        if (!formatted) {
+          if (formats == null) {
+            formats = message.formatsForThread();
+          }
+          argument.setLength(0);
+          try {
+            message.appendElement(segment >> 1, values, argument, formats);
+          } catch (IOException e) {
+            // StringBuilder never throws
+            throw new AssertionError(e);
+          }
+          formatted = true;
+        }
+        offset = encode(argument, offset, out);
+        if (offset < argument.length()) {
+          return CoderResult.OVERFLOW;
+        }
+        formatted = false;
+      }
+    }
+    return CoderResult.UNDERFLOW;
+  }
+
+  /**
+   * Tells whether the whole message has been written.
+   *
+   * @return {@code true} if {@link #encode(ByteBuffer)} has returned
+   * <code>CoderResult.UNDERFLOW</code>
+   */
+  public boolean isDone() {
+    return segment > 2 * (literals.length - 1);
+  }
+
+  /**
+   * Encodes characters of the given text as UTF-8 until the text ends or
+   * the next character does not fit.
+   *
+   * @return the index of the first character not written
+   */
+  static int encode(CharSequence text, int from, ByteBuffer out) {
+    int length = text.length();
+    int i = from;
+    if (out.hasArray()) {
+      // heap buffers: write ASCII runs straight into the array
+      byte[] array = out.array();
+      int position = out.arrayOffset() + out.position();
+      int limit = out.arrayOffset() + out.limit();
+      while (i < length && position < limit) {
+        char c = text.charAt(i);
+        if (c >= 0x80) {
+          break;
+        }
+        array[position++] = (byte) c;
+        i++;
+      }
+      out.position(position - out.arrayOffset());
+    }
+    for (; i < length; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        if (!out.hasRemaining()) {
+          return i;
+        }
+        out.put((byte) c);
+      } else if (c < 0x800) {
+        if (out.remaining() < 2) {
+          return i;
+        }
+        out.put((byte) (0xC0 | c >> 6));
+        out.put((byte) (0x80 | c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+        if (out.remaining() < 4) {
+          return i;
+        }
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        out.put((byte) (0xF0 | codePoint >> 18));
+        out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+        out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        out.put((byte) (0x80 | codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        if (!out.hasRemaining()) {
+          return i;
+        }
+        out.put((byte) '?');
+      } else {
+        if (out.remaining() < 3) {
+          return i;
+        }
+        out.put((byte) (0xE0 | c >> 12));
+        out.put((byte) (0x80 | c >> 6 & 0x3F));
+        out.put((byte) (0x80 | c & 0x3F));
+      }
+    }
+    return i;
+  }
+}
@@ -0,0 +1,56 @@
+package sk.soliont.text.format;
+
+import java.util.Locale;
+
+/**
+ * Receives timings and sizes of formatting, parsing and pattern
+ * compilation, for collecting metrics. A listener is installed for the
+ * whole library with {@link Instrumentation#setListener(MessageListener)};
+ * {@link MessageMetrics} is a ready-made implementation.
+ * <p>
+ * Listeners are called synchronously on the formatting thread, possibly by
+ * many threads at once, so they must be thread-safe and fast. All methods
+ * do nothing by default.
+ */
+public interface MessageListener {
+
+  /**
+   * Called after a message was formatted.
+   *
+   * @param message the formatted message
+   * @param nanos   the time formatting took, in nanoseconds
+   * @param length  the number of characters written
+   */
+  default void formatted(CompiledMessage message, long nanos, int length) {
+  }
+
+  /**
+   * Called after a string was parsed.
+   *
+   * @param pattern the pattern of the message that parsed, as returned by
+   *                {@link CompiledMessage#getPattern()}
+   * @param nanos   the time parsing took, in nanoseconds
+   * @param success whether the string matched the pattern
+   */
+  default void parsed(String pattern, long nanos, boolean success) {
+  }
+
+  /**
+   * Called after a pattern was compiled.
+   *
+   * @param pattern the compiled pattern, as returned by
+   *                {@link CompiledMessage#getPattern()}
+   * @param locale  the locale of the subformats
+   * @param nanos   the time compilation took, in nanoseconds
+   */
+  default void compiled(String pattern, Locale locale, long nanos) {
+  }
+
+  /**
+   * Called after a lookup in the pattern cache of the static format method.
+   *
+   * @param hit whether the pattern was found in the cache
+   */
+  default void cacheLookup(boolean hit) {
+  }
+}
@@ -0,0 +1,281 @@
+package sk.soliont.text.format;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link MessageListener} that records call counts and latency
+ * histograms of formatting, parsing and compilation per template, output
+ * sizes per template, and the hit rate of the pattern cache. The figures can be read directly or through JMX:
+ * <pre>
+ *   MessageMetrics metrics = new MessageMetrics();
+ *   Instrumentation.setListener(metrics);
+ *   metrics.registerMBean();
+ * </pre>
+ * Counters are <code>LongAdder</code>s, so recording from many threads does
+ * not contend. The number of templates recorded separately is limited;
+ * further templates are recorded together under {@link #OTHER_TEMPLATES}.
+ */
+public final class MessageMetrics implements MessageListener, MessageMetricsMXBean {
+
+  /**
+   * The name the metrics are registered under by {@link #registerMBean()}.
+   */
+  public static final String OBJECT_NAME = "sk.soliont.text.format:type=MessageMetrics";
+
+  /**
+   * The number of templates recorded separately unless specified.
+   */
+  public static final int DEFAULT_MAXIMUM_TEMPLATES = 1000;
+
+  /**
+   * The pattern reported for the templates over the limit.
+   */
+  public static final String OTHER_TEMPLATES = "(other)";
+
+  /**
+   * The number of histogram buckets; the last one takes all longer calls.
+   */
+  static final int BUCKETS = 40;
+
+  private final int maximumTemplates;
+  private final ConcurrentHashMap<String, Recorder> templates = new ConcurrentHashMap<>();
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder cacheMisses = new LongAdder();
+
+  /**
+   * Creates metrics that record up to {@link #DEFAULT_MAXIMUM_TEMPLATES}
+   * templates separately.
+   */
+  public MessageMetrics() {
+    this(DEFAULT_MAXIMUM_TEMPLATES);
+  }
+
+  /**
+   * Creates metrics that record up to the given number of templates separately.
+   *
+   * @param maximumTemplates the number of templates recorded separately
+   * @throws IllegalArgumentException if {@code maximumTemplates} is negative
+   */
+  public MessageMetrics(int maximumTemplates) {
+    if (maximumTemplates < 0) {
+      throw new IllegalArgumentException("Negative maximum templates: " + maximumTemplates);
+    }
+    this.maximumTemplates = maximumTemplates;
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server under
+   * {@link #OBJECT_NAME}.
+   *
+   * @return the name of the registered MBean
+   * @throws JMException if the name is already registered
+   */
+  public ObjectName registerMBean() throws JMException {
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    return name;
+  }
+
+  /**
+   * Unregisters these metrics from the platform MBean server.
+   *
+   * @throws JMException if the metrics are not registered
+   */
+  public void unregisterMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.unregisterMBean(new ObjectName(OBJECT_NAME));
+  }
+
+  @Override
+  public void formatted(CompiledMessage message, long nanos, int length) {
+    recorder(message.getPattern()).format(nanos, length);
+  }
+
+  @Override
+  public void parsed(String pattern, long nanos, boolean success) {
+    recorder(pattern).parse(nanos, success);
+  }
+
+  @Override
+  public void compiled(String pattern, Locale locale, long nanos) {
+    recorder(pattern).compile.record(nanos);
+  }
+
+  /**
+   * Returns the recorder of a pattern, or the shared one of the templates
+   * over the limit.
+   */
+  private Recorder recorder(String pattern) {
+    Recorder recorder = templates.get(pattern);
+    if (recorder == null) {
+      if (templates.size() >= maximumTemplates) {
+        pattern = OTHER_TEMPLATES;
+      }
+      recorder = templates.computeIfAbsent(pattern, key -> new Recorder());
+    }
+    return recorder;
+  }
+
+  @Override
+  public void cacheLookup(boolean hit) {
+    (hit ? cacheHits : cacheMisses).increment();
+  }
+
+  @Override
+  public long getFormatCount() {
+    long count = 0;
+    for (Recorder recorder : templates.values()) {
+      count += recorder.format.count.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public long getParseCount() {
+    long count = 0;
+    for (Recorder recorder : templates.values()) {
+      count += recorder.parse.count.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public long getParseFailureCount() {
+    long count = 0;
+    for (Recorder recorder : templates.values()) {
+      count += recorder.parseFailures.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public long getCompileCount() {
+    long count = 0;
+    for (Recorder recorder : templates.values()) {
+      count += recorder.compile.count.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public long getAverageCompileNanos() {
+    long count = 0;
+    long nanos = 0;
+    for (Recorder recorder : templates.values()) {
+      count += recorder.compile.count.sum();
+      nanos += recorder.compile.totalNanos.sum();
+    }
+    return count == 0 ? 0 : nanos / count;
+  }
+
+  @Override
+  public double getCacheHitRate() {
+    long hits = cacheHits.sum();
+    long lookups = hits + cacheMisses.sum();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public List<TemplateStatistics> getTemplateStatistics() {
+    List<TemplateStatistics> statistics = new ArrayList<>();
+    templates.forEach((pattern, recorder) -> statistics.add(recorder.snapshot(pattern)));
+    statistics.sort(Comparator.comparingLong(TemplateStatistics::getFormatCount).reversed());
+    return statistics;
+  }
+
+  /**
+   * Returns the statistics of the given pattern.
+   *
+   * @param pattern the pattern, as returned by {@link CompiledMessage#getPattern()}
+   * @return the statistics, or {@code null} if the pattern was not recorded separately
+   */
+  public TemplateStatistics getTemplateStatistics(String pattern) {
+    Recorder recorder = templates.get(pattern);
+    return recorder == null ? null : recorder.snapshot(pattern);
+  }
+
+  @Override
+  public void reset() {
+    templates.clear();
+    cacheHits.reset();
+    cacheMisses.reset();
+  }
+
+  /**
+   * Returns the histogram bucket of a duration.
+   */
+  static int bucket(long nanos) {
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+  }
+
+  /**
+   * The count, total time and latency histogram of one kind of call.
+   */
+  private static final class Timer {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    Timer() {
+      for (int i = 0; i < BUCKETS; i++) {
+        histogram[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      histogram[bucket(nanos)].increment();
+    }
+
+    long[] buckets() {
+      long[] buckets = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = histogram[i].sum();
+      }
+      return buckets;
+    }
+  }
+
+  /**
+   * The counters of one template.
+   */
+  private static final class Recorder {
+    private final Timer format = new Timer();
+    private final Timer parse = new Timer();
+    private final Timer compile = new Timer();
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder totalLength = new LongAdder();
+    private final LongAccumulator maxLength = new LongAccumulator(Math::max, 0);
+
+    void format(long nanos, int length) {
+      format.record(nanos);
+      totalLength.add(length);
+      maxLength.accumulate(length);
+    }
+
+    void parse(long nanos, boolean success) {
+      parse.record(nanos);
+      if (!success) {
+        parseFailures.increment();
+      }
+    }
+
+    TemplateStatistics snapshot(String pattern) {
+      return new TemplateStatistics(pattern, format.count.sum(), format.totalNanos.sum(), totalLength.sum(),
+          maxLength.get(), format.buckets(), parse.count.sum(), parseFailures.sum(), parse.totalNanos.sum(),
+          parse.buckets(), compile.count.sum(), compile.totalNanos.sum(), compile.buckets());
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package sk.soliont.text.format;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link MessageMetrics}.
+ */
+public interface MessageMetricsMXBean {
+
+  /**
+   * Returns the number of formatted messages.
+   *
+   * @return the format count
+   */
+  long getFormatCount();
+
+  /**
+   * Returns the number of parsed strings.
+   *
+   * @return the parse count
+   */
+  long getParseCount();
+
+  /**
+   * Returns the number of strings that did not match the pattern.
+   *
+   * @return the parse failure count
+   */
+  long getParseFailureCount();
+
+  /**
+   * Returns the number of compiled patterns.
+   *
+   * @return the compile count
+   */
+  long getCompileCount();
+
+  /**
+   * Returns the average time of compiling a pattern.
+   *
+   * @return the average compile time in nanoseconds, 0 if nothing was compiled
+   */
+  long getAverageCompileNanos();
+
+  /**
+   * Returns the share of pattern cache lookups that found the pattern.
+   *
+   * @return the hit rate between 0 and 1, 0 if there were no lookups
+   */
+  double getCacheHitRate();
+
+  /**
+   * Returns the statistics of the recorded templates, most formatted first.
+   *
+   * @return the statistics by template
+   */
+  List<TemplateStatistics> getTemplateStatistics();
+
+  /**
+   * Discards everything recorded so far.
+   */
+  void reset();
+}
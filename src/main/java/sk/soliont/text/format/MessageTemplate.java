@@ -0,0 +1,157 @@
+package sk.soliont.text.format;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.Format;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A tokenized message pattern: the literal text, the offsets and argument
+ * names of the format elements and the descriptors of their subformats.
+ * A template is independent of the locale; compiling it for a locale only
+ * creates the subformats, the pattern is not parsed again.
+ * <p>
+ * Templates are stored in binary catalogs as:
+ * <pre>
+ *   string  literal text
+ *   int     number of elements
+ *   per element:
+ *     int     offset
+ *     string  argument name
+ *     byte    1 if a descriptor follows, otherwise 0
+ *     string  format type     (if a descriptor follows)
+ *     string  format style    (if a descriptor follows)
+ * </pre>
+ * where a string is its length in bytes followed by its UTF-8 bytes.
+ * <p>
+ * Instances are immutable.
+ */
+final class MessageTemplate {
+
+  /**
+   * Tokenizes the given pattern.
+   *
+   * @throws IllegalArgumentException if the pattern is invalid
+   */
+  static MessageTemplate parse(String pattern) {
+    return new NamedArgsMessageFormat(pattern, Locale.ROOT).toTemplate();
+  }
+
+  private final String pattern;
+  private final int[] offsets;
+  private final String[] argumentNames;
+  private final FormatDescriptor[] descriptors;
+
+  MessageTemplate(String pattern, int[] offsets, String[] argumentNames, FormatDescriptor[] descriptors) {
+    this.pattern = pattern;
+    this.offsets = offsets;
+    this.argumentNames = argumentNames;
+    this.descriptors = descriptors;
+  }
+
+  /**
+   * Creates a compiled message for the given locale.
+   *
+   * @throws IllegalArgumentException if a format style is invalid
+   */
+  CompiledMessage compile(Locale locale) {
+    Format[] formats = new Format[descriptors.length];
+    for (int i = 0; i < descriptors.length; i++) {
+      if (descriptors[i] != null) {
+        formats[i] = descriptors[i].newFormat(locale);
+      }
+    }
+    return new CompiledMessage(locale, pattern, offsets, argumentNames, formats, true, 0);
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    writeString(out, pattern);
+    out.writeInt(offsets.length);
+    for (int i = 0; i < offsets.length; i++) {
+      out.writeInt(offsets[i]);
+      writeString(out, argumentNames[i]);
+      if (descriptors[i] == null) {
+        out.writeByte(0);
+      } else {
+        out.writeByte(1);
+        writeString(out, descriptors[i].getType());
+        writeString(out, descriptors[i].getStyle());
+      }
+    }
+  }
+
+  /**
+   * Reads a template at the current position of the buffer.
+   *
+   * @throws IllegalArgumentException if the template is corrupt
+   */
+  static MessageTemplate readFrom(ByteBuffer buffer) {
+    String pattern = readString(buffer);
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining()) {
+      throw new IllegalArgumentException("Corrupt template");
+    }
+    int[] offsets = new int[count];
+    String[] argumentNames = new String[count];
+    FormatDescriptor[] descriptors = new FormatDescriptor[count];
+    int lastOffset = 0;
+    for (int i = 0; i < count; i++) {
+      offsets[i] = buffer.getInt();
+      if (offsets[i] < lastOffset || offsets[i] > pattern.length()) {
+        throw new IllegalArgumentException("Corrupt template");
+      }
+      lastOffset = offsets[i];
+      argumentNames[i] = readString(buffer);
+      if (buffer.get() != 0) {
+        descriptors[i] = new FormatDescriptor(readString(buffer), readString(buffer));
+      }
+    }
+    return new MessageTemplate(pattern, offsets, argumentNames, descriptors);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof MessageTemplate)) {
+      return false;
+    }
+    MessageTemplate other = (MessageTemplate) obj;
+    return pattern.equals(other.pattern)
+        && Arrays.equals(offsets, other.offsets)
+        && Arrays.equals(argumentNames, other.argumentNames)
+        && Arrays.equals(descriptors, other.descriptors);
+  }
+
+  @Override
+  public int hashCode() {
+    return pattern.hashCode() * 31 + Arrays.hashCode(argumentNames);
+  }
+
+  static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalArgumentException("Corrupt string");
+    }
+    String value;
+    if (buffer.hasArray()) {
+      value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+    } else {
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+}
@@ -55,6 +55,7 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -123,7 +124,12 @@ public class NamedArgsMessageFormat extends Format {
    * @param locale the locale to be used when creating or comparing subformats
    */
   public void setLocale(Locale locale) {
+    if (!Objects.equals(this.locale, locale) && descriptors != null) {
+      // existing subformats keep the old locale
+      descriptors.clear();
+    }
     this.locale = locale;
+    compiled = null;
   }
 
   /**
@@ -148,8 +154,29 @@ public class NamedArgsMessageFormat extends Format {
    * @throws NullPointerException     if {@code pattern} is
    *                                  {@code null}
    */
-  @SuppressWarnings("fallthrough") // fallthrough in switch is expected, suppress it
   public void applyPattern(String pattern) {
+    MessageListener listener = Instrumentation.listener;
+    if (listener == null && !Instrumentation.recording) {
+      tokenize(pattern);
+      return;
+    }
+    Object event = Instrumentation.recording ? FlightRecording.beginCompile() : null;
+    long start = listener == null ? 0 : System.nanoTime();
+    tokenize(pattern);
+    if (listener != null) {
+      // the pattern that the other calls of the message are recorded under
+      listener.compiled(toPattern(), locale, System.nanoTime() - start);
+    }
+    if (event != null) {
+      FlightRecording.endCompile(event, this, pattern, maxOffset + 1);
+    }
+  }
+
+  /**
+   * Parses the given pattern into the state of this format.
+   */
+  @SuppressWarnings("fallthrough") // fallthrough in switch is expected, suppress it
+  private void tokenize(String pattern) {
     StringBuilder[] segments = new StringBuilder[4];
     // Allocate only segments[SEG_RAW] here. The rest are
     // allocated on demand.
@@ -160,6 +187,8 @@ public class NamedArgsMessageFormat extends Format {
     boolean inQuote = false;
     int braceStack = 0;
     maxOffset = -1;
+    compiled = null;
+    descriptors = new HashMap<>();
     for (int i = 0; i < pattern.length(); ++i) {
       char ch = pattern.charAt(i);
       if (part == SEG_RAW) {
@@ -263,55 +292,62 @@ public class NamedArgsMessageFormat extends Format {
       copyAndFixQuotes(pattern, lastOffset, offsets[i], result);
       lastOffset = offsets[i];
       result.append('{').append(argumentNames[i]);
-      Format fmt = formats.get(argumentNames[i]);
-      if (fmt == null) {
-        // do nothing, string format
-      } else if (fmt instanceof NumberFormat) {
-        if (fmt.equals(NumberFormat.getInstance(locale))) {
-          result.append(",number");
-        } else if (fmt.equals(NumberFormat.getCurrencyInstance(locale))) {
-          result.append(",number,currency");
-        } else if (fmt.equals(NumberFormat.getPercentInstance(locale))) {
-          result.append(",number,percent");
-        } else if (fmt.equals(NumberFormat.getIntegerInstance(locale))) {
-          result.append(",number,integer");
-        } else {
-          if (fmt instanceof DecimalFormat) {
-            result.append(",number,").append(((DecimalFormat) fmt).toPattern());
-          } else if (fmt instanceof ChoiceFormat) {
-            result.append(",choice,").append(((ChoiceFormat) fmt).toPattern());
-          }
+      appendFormatStyle(formats.get(argumentNames[i]), locale, result);
+      result.append('}');
+    }
+    copyAndFixQuotes(pattern, lastOffset, pattern.length(), result);
+    return result.toString();
+  }
+
+  /**
+   * Appends the type and style of the given subformat in pattern syntax,
+   * nothing for a string format or a format that has no pattern syntax.
+   */
+  static void appendFormatStyle(Format fmt, Locale locale, StringBuilder result) {
+    if (fmt == null) {
+      // do nothing, string format
+    } else if (fmt instanceof NumberFormat) {
+      if (fmt.equals(NumberFormat.getInstance(locale))) {
+        result.append(",number");
+      } else if (fmt.equals(NumberFormat.getCurrencyInstance(locale))) {
+        result.append(",number,currency");
+      } else if (fmt.equals(NumberFormat.getPercentInstance(locale))) {
+        result.append(",number,percent");
+      } else if (fmt.equals(NumberFormat.getIntegerInstance(locale))) {
+        result.append(",number,integer");
+      } else {
+        if (fmt instanceof DecimalFormat) {
+          result.append(",number,").append(((DecimalFormat) fmt).toPattern());
+        } else if (fmt instanceof ChoiceFormat) {
+          result.append(",choice,").append(((ChoiceFormat) fmt).toPattern());
         }
-      } else if (fmt instanceof DateFormat) {
-        int index;
-        for (index = MODIFIER_DEFAULT; index < DATE_TIME_MODIFIERS.length; index++) {
-          DateFormat df = DateFormat.getDateInstance(DATE_TIME_MODIFIERS[index],
-              locale);
-          if (fmt.equals(df)) {
-            result.append(",date");
-            break;
-          }
-          df = DateFormat.getTimeInstance(DATE_TIME_MODIFIERS[index],
-              locale);
-          if (fmt.equals(df)) {
-            result.append(",time");
-            break;
-          }
+      }
+    } else if (fmt instanceof DateFormat) {
+      int index;
+      for (index = MODIFIER_DEFAULT; index < DATE_TIME_MODIFIERS.length; index++) {
+        DateFormat df = DateFormat.getDateInstance(DATE_TIME_MODIFIERS[index],
+            locale);
+        if (fmt.equals(df)) {
+          result.append(",date");
+          break;
         }
-        if (index >= DATE_TIME_MODIFIERS.length) {
-          if (fmt instanceof SimpleDateFormat) {
-            result.append(",date,").append(((SimpleDateFormat) fmt).toPattern());
-          } else {
-            // UNKNOWN
-          }
-        } else if (index != MODIFIER_DEFAULT) {
-          result.append(',').append(DATE_TIME_MODIFIER_KEYWORDS[index]);
+        df = DateFormat.getTimeInstance(DATE_TIME_MODIFIERS[index],
+            locale);
+        if (fmt.equals(df)) {
+          result.append(",time");
+          break;
         }
       }
-      result.append('}');
+      if (index >= DATE_TIME_MODIFIERS.length) {
+        if (fmt instanceof SimpleDateFormat) {
+          result.append(",date,").append(((SimpleDateFormat) fmt).toPattern());
+        } else {
+          // UNKNOWN
+        }
+      } else if (index != MODIFIER_DEFAULT) {
+        result.append(',').append(DATE_TIME_MODIFIER_KEYWORDS[index]);
+      }
     }
-    copyAndFixQuotes(pattern, lastOffset, pattern.length(), result);
-    return result.toString();
   }
 
 
@@ -332,6 +368,8 @@ public class NamedArgsMessageFormat extends Format {
    */
   public void setFormats(Map<String, Format> newFormats) {
     formats = new LinkedHashMap<>(newFormats);
+    descriptors = new HashMap<>();
+    compiled = null;
   }
 
   /**
@@ -354,6 +392,10 @@ public class NamedArgsMessageFormat extends Format {
    */
   public void setFormatByArgumentName(String argumentName, Format newFormat) {
     formats.put(argumentName, newFormat);
+    if (descriptors != null) {
+      descriptors.remove(argumentName);
+    }
+    compiled = null;
   }
 
   /**
@@ -375,6 +417,17 @@ public class NamedArgsMessageFormat extends Format {
     return new LinkedHashMap<>(formats);
   }
 
+  /**
+   * Creates an immutable, thread-safe snapshot of this message format.
+   * The snapshot uses copies of the current subformats, so later changes
+   * to this format or its subformats do not affect it.
+   *
+   * @return the compiled message
+   */
+  public CompiledMessage toCompiledMessage() {
+    return compile(true, 0);
+  }
+
   /**
    * Formats an array of objects and appends the <code>NamedArgsMessageFormat</code>'s
    * pattern, with format elements replaced by the formatted objects, to the
@@ -410,17 +463,27 @@ public class NamedArgsMessageFormat extends Format {
    *           (new NamedArgsMessageFormat(subformat.format(argument), getLocale())).format(argument) :
    *           subformat.format(argument)</code>
    *    <tr>
+   *       <th scope="row" style="text-weight-normal"><code>instanceof DateFormat</code>
+   *       <th scope="row" style="text-weight-normal"><code>instanceof TemporalAccessor</code>
+   *       <td><code>DateTimeFormatter.ofPattern(subformat.toPattern(), getLocale()).format(argument)</code>,
+   *           or <code>subformat.format(argument)</code> after converting it
+   *           to a <code>Date</code> when the pattern has no exact equivalent
+   *    <tr>
    *       <th scope="row" style="text-weight-normal"><code>!= null</code>
    *       <th scope="row" style="text-weight-normal"><i>any</i>
    *       <td><code>subformat.format(argument)</code>
    *    <tr>
-   *       <th scope="row" style="text-weight-normal" rowspan=4><code>null</code>
+   *       <th scope="row" style="text-weight-normal" rowspan=5><code>null</code>
    *       <th scope="row" style="text-weight-normal"><code>instanceof Number</code>
    *       <td><code>NumberFormat.getInstance(getLocale()).format(argument)</code>
    *    <tr>
    *       <th scope="row" style="text-weight-normal"><code>instanceof Date</code>
    *       <td><code>DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, getLocale()).format(argument)</code>
    *    <tr>
+   *       <th scope="row" style="text-weight-normal"><code>instanceof TemporalAccessor</code>
+   *       <td><code>DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT, FormatStyle.SHORT).withLocale(getLocale()).format(argument)</code>,
+   *           using only the date or time style for values that have only a date or a time
+   *    <tr>
    *       <th scope="row" style="text-weight-normal"><code>instanceof String</code>
    *       <td><code>argument</code>
    *    <tr>
@@ -448,7 +511,64 @@ public class NamedArgsMessageFormat extends Format {
       Map<String, Object> arguments, StringBuffer result,
       FieldPosition pos
   ) {
-    return subformat(arguments, result, pos, null);
+    return subformat(arguments, result, pos);
+  }
+
+  /**
+   * Formats the given arguments and appends the result to the provided
+   * <code>StringBuilder</code>. This is the unsynchronized equivalent of
+   * {@link #format(Map, StringBuffer, FieldPosition)}.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param result    where text is appended.
+   * @param pos       keeps track on the position of the first replaced argument
+   *                  in the output string, may be {@code null}
+   * @return the string builder passed in as {@code result}, with formatted
+   * text appended
+   * @throws IllegalArgumentException if an argument in the
+   *                                  <code>arguments</code> map is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public final StringBuilder format(
+      Map<String, ?> arguments, StringBuilder result,
+      FieldPosition pos
+  ) {
+    return compiled().format(arguments, result, pos);
+  }
+
+  /**
+   * Formats the given arguments and appends the result to the provided
+   * <code>Appendable</code>, for example a <code>Writer</code>, without
+   * creating an intermediate string of the whole message.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @param result    where text is appended.
+   * @param <A>       the type of the appendable
+   * @return the appendable passed in as {@code result}
+   * @throws IOException              if the appendable fails
+   * @throws IllegalArgumentException if an argument in the
+   *                                  <code>arguments</code> map is not of the type
+   *                                  expected by the format element(s) that use it.
+   * @throws NullPointerException     if {@code result} is {@code null}
+   */
+  public final <A extends Appendable> A formatTo(Map<String, ?> arguments, A result) throws IOException {
+    return compiled().formatTo(arguments, result);
+  }
+
+  /**
+   * Formats the given arguments to a string. This is equivalent to
+   * {@link Format#format(Object)}, without the synchronized
+   * <code>StringBuffer</code>.
+   *
+   * @param arguments the arguments by name, may be {@code null}
+   * @return the formatted string
+   * @throws IllegalArgumentException if an argument in the
+   *                                  <code>arguments</code> map is not of the type
+   *                                  expected by the format element(s) that use it.
+   */
+  public final String format(Map<String, ?> arguments) {
+    return compiled().format(arguments);
   }
 
   /**
@@ -457,6 +577,9 @@ public class NamedArgsMessageFormat extends Format {
    * <blockquote>
    * <code>(new {@link #NamedArgsMessageFormat(String) NamedArgsMessageFormat}(pattern)).{@link #format(Map, StringBuffer, FieldPosition)} format}(arguments, new StringBuffer(), null).toString()</code>
    * </blockquote>
+   * The compiled pattern is kept in the {@link #getPatternCache() pattern cache},
+   * keyed by the pattern and the default {@link Locale.Category#FORMAT FORMAT}
+   * locale, so repeated calls with the same pattern do not parse it again.
    *
    * @param pattern   the pattern string
    * @param arguments object(s) to format
@@ -468,8 +591,18 @@ public class NamedArgsMessageFormat extends Format {
    * @throws NullPointerException     if {@code pattern} is {@code null}
    */
   public static String format(String pattern, Map<String, Object> arguments) {
-    NamedArgsMessageFormat temp = new NamedArgsMessageFormat(pattern);
-    return temp.format(arguments);
+    return PATTERN_CACHE.get(pattern, Locale.getDefault(Locale.Category.FORMAT)).format(arguments);
+  }
+
+  /**
+   * Returns the cache of compiled patterns used by the static
+   * {@link #format(String, Map)} method. It can be used to read the cache
+   * statistics, to change its size or to turn it off.
+   *
+   * @return the shared pattern cache
+   */
+  public static PatternCache getPatternCache() {
+    return PATTERN_CACHE;
   }
 
 
@@ -495,7 +628,48 @@ public class NamedArgsMessageFormat extends Format {
   public final StringBuffer format(Object arguments, StringBuffer result,
                                    FieldPosition pos)
   {
-    return subformat((Map<String, Object>) arguments, result, pos, null);
+    return subformat((Map<String, Object>) arguments, result, pos);
+  }
+
+  /**
+   * Formats a map of arguments, producing an
+   * <code>AttributedCharacterIterator</code>. You can use the returned
+   * <code>AttributedCharacterIterator</code> to build the resulting
+   * String, as well as to determine information about the resulting
+   * String.
+   * <p>
+   * The text of the returned <code>AttributedCharacterIterator</code> is
+   * the same that would be returned by
+   * <blockquote>
+   *     <code>{@link #format(Map, StringBuffer, FieldPosition) format}(arguments, new StringBuffer(), null).toString()</code>
+   * </blockquote>
+   * <p>
+   * In addition, the <code>AttributedCharacterIterator</code> contains at
+   * least attributes indicating where text was generated from an
+   * argument. The key of such an attribute is
+   * <code>Field.ARGUMENT</code> and its value is the name of the argument.
+   * The attributed character iterators returned by the subformats, and by
+   * the default number and date formats of the locale, are merged in, so
+   * the runs of <code>NumberFormat.Field</code> and
+   * <code>DateFormat.Field</code> are available as well.
+   *
+   * @param arguments a map of arguments by name to format
+   * @return AttributedCharacterIterator describing the formatted value.
+   * @exception NullPointerException if <code>arguments</code> is null.
+   * @exception IllegalArgumentException if <code>arguments</code> is not a
+   *            <code>Map</code>, or if an argument is not of the type
+   *            expected by the format element(s) that use it.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public AttributedCharacterIterator formatToCharacterIterator(Object arguments) {
+    if (arguments == null) {
+      throw new NullPointerException("formatToCharacterIterator must be passed non-null object");
+    }
+    if (!(arguments instanceof Map)) {
+      throw new IllegalArgumentException("Cannot format given Object as a Map");
+    }
+    return compiled().formatToCharacterIterator((Map<String, ?>) arguments);
   }
 
   /**
@@ -535,66 +709,17 @@ public class NamedArgsMessageFormat extends Format {
     if (source == null) {
       return Collections.emptyMap();
     }
-
+    CompiledMessage message = compiled();
+    MessageArguments arguments = message.newArguments();
+    if (!message.parse(source, pos, arguments)) {
+      return null;
+    }
     Map<String, Object> resultMap = new LinkedHashMap<>();
-
-    int patternOffset = 0;
-    int sourceOffset = pos.getIndex();
-    ParsePosition tempStatus = new ParsePosition(0);
-    String argumentName = "";
-    for (int i = 0; i <= maxOffset; ++i) {
-      // match up to format
-      int len = offsets[i] - patternOffset;
-      if (len == 0 || pattern.regionMatches(patternOffset,
-          source, sourceOffset, len)) {
-        sourceOffset += len;
-        patternOffset += len;
-      } else {
-        pos.setErrorIndex(sourceOffset);
-        return null; // leave index as is to signal error
+    List<String> names = message.getArgumentNames();
+    for (int slot = 0; slot < names.size(); slot++) {
+      if (arguments.isSet(slot)) {
+        resultMap.put(names.get(slot), arguments.get(slot));
       }
-
-      // now use format
-      if (!formats.containsKey(argumentName)) {   // string format
-        // if at end, use longest possible match
-        // otherwise uses first match to intervening string
-        // does NOT recursively try all possibilities
-        int tempLength = (i != maxOffset) ? offsets[i + 1] : pattern.length();
-
-        int next;
-        if (patternOffset >= tempLength) {
-          next = source.length();
-        } else {
-          next = source.indexOf(pattern.substring(patternOffset, tempLength),
-              sourceOffset);
-        }
-
-        if (next < 0) {
-          pos.setErrorIndex(sourceOffset);
-          return null; // leave index as is to signal error
-        } else {
-          String strValue = source.substring(sourceOffset, next);
-          if (!strValue.equals("{" + argumentNames[i] + "}"))
-            resultMap.put(argumentNames[i], source.substring(sourceOffset, next));
-          sourceOffset = next;
-        }
-      } else {
-        tempStatus.setIndex(sourceOffset);
-        resultMap.put(argumentNames[i], formats.get(argumentName).parseObject(source, new ParsePosition(tempStatus.getIndex())));
-        if (tempStatus.getIndex() == sourceOffset) {
-          pos.setErrorIndex(sourceOffset);
-          return null; // leave index as is to signal error
-        }
-        sourceOffset = tempStatus.getIndex(); // update
-      }
-    }
-    int len = pattern.length() - patternOffset;
-    if (len == 0 || pattern.regionMatches(patternOffset,
-        source, sourceOffset, len)) {
-      pos.setIndex(sourceOffset + len);
-    } else {
-      pos.setErrorIndex(sourceOffset);
-      return null; // leave index as is to signal error
     }
     return resultMap;
   }
@@ -660,11 +785,17 @@ public class NamedArgsMessageFormat extends Format {
     // clone arrays. Can't do with utility because of bug in Cloneable
     other.formats = (LinkedHashMap<String, Format>) formats.clone(); // shallow clone
     for (Map.Entry<String, Format> stringFormatEntry : formats.entrySet()) {
-      other.formats.put(stringFormatEntry.getKey(), (Format) stringFormatEntry.getValue().clone());
+      if (stringFormatEntry.getValue() != null) {
+        other.formats.put(stringFormatEntry.getKey(), (Format) stringFormatEntry.getValue().clone());
+      }
+    }
+    if (descriptors != null) {
+      other.descriptors = new HashMap<>(descriptors);
     }
     // for primitives or immutables, shallow clone is enough
     other.offsets = offsets.clone();
     other.argumentNames = argumentNames.clone();
+    other.compiled = null;
 
     return other;
   }
@@ -738,9 +869,8 @@ public class NamedArgsMessageFormat extends Format {
     /**
      * Constant identifying a portion of a message that was generated
      * from an argument passed into <code>formatToCharacterIterator</code>.
-     * The value associated with the key will be an <code>Integer</code>
-     * indicating the index in the <code>arguments</code> array of the
-     * argument from which the text was generated.
+     * The value associated with the key will be the <code>String</code>
+     * name of the argument from which the text was generated.
      */
     public static final Field ARGUMENT =
         new Field("message argument field");
@@ -763,6 +893,11 @@ public class NamedArgsMessageFormat extends Format {
    */
   private String pattern = "";
 
+  /**
+   * The cache of compiled patterns used by the static format method.
+   */
+  private static final PatternCache PATTERN_CACHE = new PatternCache(PatternCache.DEFAULT_MAXIMUM_SIZE);
+
   /**
    * The initially expected number of subformats in the format
    */
@@ -803,12 +938,26 @@ public class NamedArgsMessageFormat extends Format {
   private int maxOffset = -1;
 
   /**
-   * Internal routine used by format. If {@code characterIterators} is
-   * {@code non-null}, AttributedCharacterIterator will be created from the
-   * subformats as necessary. If {@code characterIterators} is {@code null}
-   * and {@code fp} is {@code non-null} and identifies
+   * The format type and style each subformat was created from, by argument
+   * name. Subformats set through the API have no descriptor.
+   */
+  private transient HashMap<String, FormatDescriptor> descriptors = new HashMap<>();
+
+  /**
+   * The current state in compiled form, created on demand and dropped
+   * whenever the state changes. It uses the subformats of this format
+   * directly, and reads the branches of choice subformats on every call.
+   */
+  private transient CompiledMessage compiled;
+
+  /**
+   * Internal routine used by format. If {@code fp} is {@code non-null} and identifies
    * {@code Field.ARGUMENT} as the field attribute, the location of
    * the first replaced argument will be set in it.
+   * <p>
+   * The message is formatted into an unsynchronized builder, which moves
+   * the estimated length of the message, and appended to {@code result} at
+   * once, after making room for it.
    *
    * @throws IllegalArgumentException if an argument in the
    *                                  <code>arguments</code> array is not of the type
@@ -816,73 +965,78 @@ public class NamedArgsMessageFormat extends Format {
    */
   private StringBuffer subformat(
       Map<String, Object> arguments, StringBuffer result,
-      FieldPosition fp, List<AttributedCharacterIterator> characterIterators
+      FieldPosition fp
   ) {
-    // note: this implementation assumes a fast substring & index.
-    // if this is not true, would be better to append chars one by one.
-    int lastOffset = 0;
-    int last;
-    for (int i = 0; i <= maxOffset; ++i) {
-      result.append(pattern, lastOffset, offsets[i]);
-      lastOffset = offsets[i];
-      String argumentName = argumentNames[i];
-      if (arguments == null || !arguments.containsKey(argumentName)) {
-        result.append('{').append(argumentName).append('}');
-        continue;
-      }
-      // int argRecursion = ((recursionProtection >> (argumentNumber*2)) & 0x3);
-      if (false) { // if (argRecursion == 3){
-        // prevent loop!!!
-        result.append('\uFFFD');
-      } else {
-        Object obj = arguments.get(argumentName);
-        String arg = null;
-        Format subFormatter = null;
-        if (obj == null) {
-          arg = "null";
-        } else if (formats.get(argumentName) != null) {
-          subFormatter = formats.get(argumentName);
-          if (subFormatter instanceof ChoiceFormat) {
-            arg = subFormatter.format(obj);
-            if (arg.indexOf('{') >= 0) {
-              subFormatter = new NamedArgsMessageFormat(arg, locale);
-              obj = arguments;
-              arg = null;
-            }
-          }
-        } else if (obj instanceof Number) {
-          // format number if can
-          subFormatter = NumberFormat.getInstance(locale);
-        } else if (obj instanceof Date) {
-          // format a Date if can
-          subFormatter = DateFormat.getDateTimeInstance(
-              DateFormat.SHORT, DateFormat.SHORT, locale);//fix
-        } else if (obj instanceof String) {
-          arg = (String) obj;
+    CompiledMessage message = compiled();
+    StringBuilder builder = new StringBuilder(message.getEstimatedLength());
+    MessageListener listener = Instrumentation.listener;
+    Object event = Instrumentation.recording ? FlightRecording.beginFormat() : null;
+    long start = listener == null ? 0 : System.nanoTime();
+    try {
+      message.subformat(message.slotValues(arguments), builder, result.length(), fp, message.formatsForThread());
+    } catch (IOException e) {
+      // StringBuilder never throws
+      throw new AssertionError(e);
+    }
+    if (listener != null) {
+      listener.formatted(message, System.nanoTime() - start, builder.length());
+    }
+    if (event != null) {
+      FlightRecording.endFormat(event, message, builder.length());
+    }
+    message.observe(builder.length());
+    result.ensureCapacity(result.length() + builder.length());
+    return result.append(builder);
+  }
 
-        } else {
-          arg = obj.toString();
-          if (arg == null) arg = "null";
-        }
+  /**
+   * Returns the current state in compiled form, sharing the subformats.
+   */
+  CompiledMessage compiled() {
+    if (compiled == null) {
+      compiled = compile(false, 0);
+    }
+    return compiled;
+  }
 
-        // At this point we are in two states, either subFormatter
-        // is non-null indicating we should format obj using it,
-        // or arg is non-null and we should use it as the value.
+  /**
+   * Creates a compiled message from the current state.
+   *
+   * @param copyFormats whether the compiled message uses per-thread copies of the subformats
+   * @param depth       the nesting depth of the message in choice branches
+   */
+  CompiledMessage compile(boolean copyFormats, int depth) {
+    Format[] elementFormats = new Format[maxOffset + 1];
+    for (int i = 0; i <= maxOffset; ++i) {
+      elementFormats[i] = formats.get(argumentNames[i]);
+    }
+    return new CompiledMessage(locale, pattern,
+        Arrays.copyOf(offsets, maxOffset + 1),
+        Arrays.copyOf(argumentNames, maxOffset + 1),
+        elementFormats, copyFormats, depth);
+  }
 
-        if (subFormatter != null) {
-          arg = subFormatter.format(obj);
-        }
-        last = result.length();
-        result.append(arg);
-        if (i == 0 && fp != null && Field.ARGUMENT.equals(
-            fp.getFieldAttribute())) {
-          fp.setBeginIndex(last);
-          fp.setEndIndex(result.length());
+  /**
+   * Returns the current state as a tokenized template, which can recreate
+   * the subformats for any locale.
+   *
+   * @throws IllegalArgumentException if a subformat was not created from the pattern
+   */
+  MessageTemplate toTemplate() {
+    FormatDescriptor[] elementDescriptors = new FormatDescriptor[maxOffset + 1];
+    for (int i = 0; i <= maxOffset; ++i) {
+      if (formats.get(argumentNames[i]) != null) {
+        elementDescriptors[i] = descriptors == null ? null : descriptors.get(argumentNames[i]);
+        if (elementDescriptors[i] == null) {
+          throw new IllegalArgumentException("Format of argument '" + argumentNames[i]
+              + "' was not created from the pattern");
         }
       }
     }
-    result.append(pattern, lastOffset, pattern.length());
-    return result;
+    return new MessageTemplate(pattern,
+        Arrays.copyOf(offsets, maxOffset + 1),
+        Arrays.copyOf(argumentNames, maxOffset + 1),
+        elementDescriptors);
   }
 
   // Indices for segments
@@ -973,9 +1127,30 @@ public class NamedArgsMessageFormat extends Format {
     argumentNames[offsetNumber] = argumentName;
 
     // now get the format
+    Format newFormat;
+    try {
+      newFormat = createFormat(segments[SEG_TYPE], segments[SEG_MODIFIER], locale);
+    } catch (IllegalArgumentException e) {
+      maxOffset = oldMaxOffset;
+      throw e;
+    }
+    formats.put(argumentName, newFormat);
+    descriptors.put(argumentName,
+        newFormat == null ? null : new FormatDescriptor(segments[SEG_TYPE], segments[SEG_MODIFIER]));
+  }
+
+  /**
+   * Creates the subformat of a format element from its format type and
+   * format style.
+   *
+   * @return the subformat, or {@code null} if the element has no format type
+   * @throws IllegalArgumentException if the format type is unknown or the
+   *                                  format style is invalid
+   */
+  static Format createFormat(String formatType, String formatStyle, Locale locale) {
     Format newFormat = null;
-    if (!segments[SEG_TYPE].isEmpty()) {
-      int type = findKeyword(segments[SEG_TYPE], TYPE_KEYWORDS);
+    if (!formatType.isEmpty()) {
+      int type = findKeyword(formatType, TYPE_KEYWORDS);
       switch (type) {
         case TYPE_NULL:
           // Type "" is allowed. e.g., "{0,}", "{0,,}", and "{0,,#}"
@@ -983,7 +1158,7 @@ public class NamedArgsMessageFormat extends Format {
           break;
 
         case TYPE_NUMBER:
-          switch (findKeyword(segments[SEG_MODIFIER], NUMBER_MODIFIER_KEYWORDS)) {
+          switch (findKeyword(formatStyle, NUMBER_MODIFIER_KEYWORDS)) {
             case MODIFIER_DEFAULT:
               newFormat = NumberFormat.getInstance(locale);
               break;
@@ -997,20 +1172,15 @@ public class NamedArgsMessageFormat extends Format {
               newFormat = NumberFormat.getIntegerInstance(locale);
               break;
             default: // DecimalFormat pattern
-              try {
-                newFormat = new DecimalFormat(segments[SEG_MODIFIER],
-                    DecimalFormatSymbols.getInstance(locale));
-              } catch (IllegalArgumentException e) {
-                maxOffset = oldMaxOffset;
-                throw e;
-              }
+              newFormat = new DecimalFormat(formatStyle,
+                  DecimalFormatSymbols.getInstance(locale));
               break;
           }
           break;
 
         case TYPE_DATE:
         case TYPE_TIME:
-          int mod = findKeyword(segments[SEG_MODIFIER], DATE_TIME_MODIFIER_KEYWORDS);
+          int mod = findKeyword(formatStyle, DATE_TIME_MODIFIER_KEYWORDS);
           if (mod >= 0 && mod < DATE_TIME_MODIFIER_KEYWORDS.length) {
             if (type == TYPE_DATE) {
               newFormat = DateFormat.getDateInstance(DATE_TIME_MODIFIERS[mod],
@@ -1021,33 +1191,26 @@ public class NamedArgsMessageFormat extends Format {
             }
           } else {
             // SimpleDateFormat pattern
-            try {
-              newFormat = new SimpleDateFormat(segments[SEG_MODIFIER], locale);
-            } catch (IllegalArgumentException e) {
-              maxOffset = oldMaxOffset;
-              throw e;
-            }
+            newFormat = new SimpleDateFormat(formatStyle, locale);
           }
           break;
 
         case TYPE_CHOICE:
           try {
             // ChoiceFormat pattern
-            newFormat = new ChoiceFormat(segments[SEG_MODIFIER]);
+            newFormat = new ChoiceFormat(formatStyle);
           } catch (Exception e) {
-            maxOffset = oldMaxOffset;
             throw new IllegalArgumentException("Choice Pattern incorrect: "
-                + segments[SEG_MODIFIER], e);
+                + formatStyle, e);
           }
           break;
 
         default:
-          maxOffset = oldMaxOffset;
           throw new IllegalArgumentException("unknown format type: " +
-              segments[SEG_TYPE]);
+              formatType);
       }
     }
-    formats.put(argumentName, newFormat);
+    return newFormat;
   }
 
   private static final int findKeyword(String s, String[] list) {
@@ -1067,7 +1230,7 @@ public class NamedArgsMessageFormat extends Format {
     return -1;
   }
 
-  private static final void copyAndFixQuotes(
+  static void copyAndFixQuotes(
       String source, int start, int end,
       StringBuilder target
   ) {
@@ -0,0 +1,212 @@
+package sk.soliont.text.format;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, concurrent cache of compiled message patterns keyed by
+ * pattern string and locale. It backs the static
+ * {@link NamedArgsMessageFormat#format(String, java.util.Map)} method so that
+ * repeated calls with the same pattern do not parse the pattern and create
+ * its subformats again.
+ * <p>
+ * Lookups do not lock. When the cache grows over its maximum size, entries
+ * are evicted in approximate least-recently-used order (a "second chance"
+ * queue: entries that were hit since they were last examined are kept for
+ * one more round). Setting the maximum size to {@code 0} turns the cache off.
+ * <p>
+ * The shared instance is available through
+ * {@link NamedArgsMessageFormat#getPatternCache()}.
+ */
+public final class PatternCache {
+
+  /**
+   * The maximum size used by the shared instance unless changed.
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+  private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<Entry> evictionQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private volatile int maximumSize;
+
+  PatternCache(int maximumSize) {
+    setMaximumSize(maximumSize);
+  }
+
+  /**
+   * Returns the maximum number of patterns kept by this cache.
+   *
+   * @return the maximum size, {@code 0} if the cache is turned off
+   */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Sets the maximum number of patterns kept by this cache. Entries over
+   * the new limit are evicted immediately. A size of {@code 0} turns the
+   * cache off and empties it.
+   *
+   * @param maximumSize the new maximum size
+   * @throws IllegalArgumentException if {@code maximumSize} is negative
+   */
+  public void setMaximumSize(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Negative maximum size: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    evict();
+  }
+
+  /**
+   * Returns the number of patterns currently cached.
+   *
+   * @return the number of cached patterns
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Returns the number of lookups that found a cached pattern.
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of lookups that had to compile the pattern,
+   * including lookups made while the cache is turned off.
+   *
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the number of patterns removed to stay within the maximum size.
+   *
+   * @return the eviction count
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Removes all cached patterns. The counters are not reset.
+   */
+  public void clear() {
+    Entry entry;
+    while ((entry = evictionQueue.poll()) != null) {
+      if (entries.remove(entry.key, entry)) {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Returns the compiled message for the given pattern and locale,
+   * compiling and caching it if necessary.
+   */
+  CompiledMessage get(String pattern, Locale locale) {
+    if (maximumSize == 0) {
+      missCount.incrementAndGet();
+      lookedUp(false);
+      return CompiledMessage.compile(pattern, locale);
+    }
+    Key key = new Key(pattern, locale);
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.referenced = true;
+      hitCount.incrementAndGet();
+      lookedUp(true);
+      return entry.value;
+    }
+    missCount.incrementAndGet();
+    lookedUp(false);
+    Entry newEntry = new Entry(key, CompiledMessage.compile(pattern, locale));
+    entry = entries.putIfAbsent(key, newEntry);
+    if (entry != null) {
+      return entry.value;
+    }
+    size.incrementAndGet();
+    evictionQueue.offer(newEntry);
+    evict();
+    return newEntry.value;
+  }
+
+  private static void lookedUp(boolean hit) {
+    MessageListener listener = Instrumentation.listener;
+    if (listener != null) {
+      listener.cacheLookup(hit);
+    }
+  }
+
+  private void evict() {
+    while (size.get() > maximumSize) {
+      Entry entry = evictionQueue.poll();
+      if (entry == null) {
+        return;
+      }
+      if (entry.referenced && maximumSize > 0) {
+        // second chance, keep recently used entries for one more round
+        entry.referenced = false;
+        evictionQueue.offer(entry);
+      } else if (entries.remove(entry.key, entry)) {
+        size.decrementAndGet();
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  private static final class Key {
+    private final String pattern;
+    private final Locale locale;
+    private final int hash;
+
+    Key(String pattern, Locale locale) {
+      this.pattern = pattern;
+      this.locale = locale;
+      this.hash = 31 * pattern.hashCode() + (locale == null ? 0 : locale.hashCode());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return pattern.equals(other.pattern)
+          && (locale == null ? other.locale == null : locale.equals(other.locale));
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Entry {
+    private final Key key;
+    private final CompiledMessage value;
+    private volatile boolean referenced;
+
+    Entry(Key key, CompiledMessage value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
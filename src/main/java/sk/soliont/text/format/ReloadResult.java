@@ -0,0 +1,75 @@
+package sk.soliont.text.format;
+
+import java.time.Duration;
+
+/**
+ * The outcome of reloading a {@link MessageCatalog}.
+ * <p>
+ * Instances are immutable.
+ */
+public final class ReloadResult {
+
+  private final long version;
+  private final int changedKeys;
+  private final int recompiledMessages;
+  private final Duration duration;
+
+  ReloadResult(long version, int changedKeys, int recompiledMessages, Duration duration) {
+    this.version = version;
+    this.changedKeys = changedKeys;
+    this.recompiledMessages = recompiledMessages;
+    this.duration = duration;
+  }
+
+  /**
+   * Gets the version of the catalog published by the reload. The version
+   * of a new catalog is 0 and every reload increments it.
+   *
+   * @return the published version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the number of distinct keys that were added, removed or changed in
+   * any locale. A file of a properties catalog that the previous version
+   * never read is compared as it is read by the reload, so its changes are
+   * only counted while the catalog is watched, which reads all files first.
+   *
+   * @return the number of changed keys
+   */
+  public int getChangedKeys() {
+    return changedKeys;
+  }
+
+  /**
+   * Gets the number of compiled messages that were compiled again because
+   * their pattern changed. Unchanged messages are carried over as they are,
+   * and messages that were never requested stay uncompiled.
+   *
+   * @return the number of recompiled messages
+   */
+  public int getRecompiledMessages() {
+    return recompiledMessages;
+  }
+
+  /**
+   * Gets the time the reload took, from reading the source to publishing
+   * the new version.
+   *
+   * @return the duration of the reload
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   * Returns a string describing this result, for debugging.
+   */
+  @Override
+  public String toString() {
+    return "ReloadResult[version=" + version + ", changedKeys=" + changedKeys
+        + ", recompiledMessages=" + recompiledMessages + ", duration=" + duration + "]";
+  }
+}
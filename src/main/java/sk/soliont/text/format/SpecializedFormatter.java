@@ -0,0 +1,147 @@
+package sk.soliont.text.format;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.text.Format;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Builds the formatter of a {@linkplain CompiledMessage#specialize()
+ * specialized} message: a single <code>MethodHandle</code> of type
+ * <code>(StringBuilder, Object[], Format[])void</code> made of one step per
+ * literal segment and format element.
+ * <p>
+ * Literal segments are bound as constant strings. A format element reads
+ * its value from a fixed slot and appends it with a step chosen for the
+ * kind of the element when the message is specialized, so formatting does
+ * not walk the offsets and does not decide per call how an element is
+ * formatted. Choice elements and elements with a date subformat are
+ * formatted by the interpreter of the message.
+ */
+final class SpecializedFormatter {
+
+  static final MethodType TYPE =
+      MethodType.methodType(void.class, StringBuilder.class, Object[].class, Format[].class);
+
+  private static final MethodHandle APPEND;
+  private static final MethodHandle VALUE;
+  private static final MethodHandle APPEND_DEFAULT;
+  private static final MethodHandle APPEND_FORMATTED;
+  private static final MethodHandle APPEND_ELEMENT;
+  private static final MethodHandle FORMAT_GETTER = MethodHandles.arrayElementGetter(Format[].class);
+
+  static {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      APPEND = lookup.findVirtual(StringBuilder.class, "append",
+          MethodType.methodType(StringBuilder.class, String.class));
+      VALUE = lookup.findStatic(SpecializedFormatter.class, "value",
+          MethodType.methodType(Object.class, Object[].class, int.class));
+      APPEND_DEFAULT = lookup.findStatic(SpecializedFormatter.class, "appendDefault",
+          MethodType.methodType(void.class, StringBuilder.class, Object.class, String.class, Locale.class));
+      APPEND_FORMATTED = lookup.findStatic(SpecializedFormatter.class, "appendFormatted",
+          MethodType.methodType(void.class, StringBuilder.class, Object.class, Format.class, String.class,
+              IntegerWriter.class));
+      APPEND_ELEMENT = lookup.findVirtual(CompiledMessage.class, "appendElement",
+          MethodType.methodType(void.class, int.class, Object[].class, StringBuilder.class, Format[].class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Returns the step appending a literal segment.
+   */
+  static MethodHandle literal(String text) {
+    MethodHandle append = MethodHandles.insertArguments(APPEND, 1, text)
+        .asType(MethodType.methodType(void.class, StringBuilder.class));
+    return MethodHandles.dropArguments(append, 1, Object[].class, Format[].class);
+  }
+
+  /**
+   * Returns the step appending the value of an element without a subformat.
+   */
+  static MethodHandle defaultElement(int slot, String argumentName, Locale locale) {
+    MethodHandle append = MethodHandles.insertArguments(APPEND_DEFAULT, 2, argumentName, locale);
+    append = MethodHandles.filterArguments(append, 1, slotGetter(slot));
+    return MethodHandles.dropArguments(append, 2, Format[].class);
+  }
+
+  /**
+   * Returns the step appending the value of an element with a subformat
+   * that is neither a choice nor a date format, using the given writer,
+   * if any, for integral values.
+   */
+  static MethodHandle formattedElement(int slot, String argumentName, int element, IntegerWriter writer) {
+    MethodHandle append = MethodHandles.insertArguments(APPEND_FORMATTED, 3, argumentName, writer);
+    return MethodHandles.filterArguments(append, 1, slotGetter(slot),
+        MethodHandles.insertArguments(FORMAT_GETTER, 1, element));
+  }
+
+  /**
+   * Returns the step formatting an element with the interpreter of the message.
+   */
+  static MethodHandle interpretedElement(CompiledMessage message, int element) {
+    MethodHandle append = MethodHandles.insertArguments(APPEND_ELEMENT, 0, message, element);
+    return MethodHandles.permuteArguments(append, TYPE, 1, 0, 2);
+  }
+
+  /**
+   * Combines the steps into one handle that runs them in order.
+   */
+  static MethodHandle sequence(List<MethodHandle> steps) {
+    MethodHandle result = steps.isEmpty() ? literal("") : steps.get(steps.size() - 1);
+    for (int i = steps.size() - 2; i >= 0; i--) {
+      result = MethodHandles.foldArguments(result, steps.get(i));
+    }
+    return result;
+  }
+
+  private static MethodHandle slotGetter(int slot) {
+    return MethodHandles.insertArguments(VALUE, 1, slot);
+  }
+
+  private static Object value(Object[] values, int slot) {
+    if (slot >= values.length) {
+      return CompiledMessage.MISSING;
+    }
+    Object value = values[slot];
+    if (value instanceof Supplier) {
+      value = ((Supplier<?>) value).get();
+      // keep the value for the other elements of the argument
+      values[slot] = value;
+    }
+    return value;
+  }
+
+  private static void appendDefault(StringBuilder result, Object value, String argumentName, Locale locale) {
+    if (value == CompiledMessage.MISSING) {
+      result.append('{').append(argumentName).append('}');
+    } else if (value == null) {
+      result.append("null");
+    } else {
+      IntegerWriter writer = value instanceof Number ? DefaultFormats.integer(locale) : null;
+      if (writer == null || writer.append(value, result) < 0) {
+        result.append(CompiledMessage.formatDefault(value, locale));
+      }
+    }
+  }
+
+  private static void appendFormatted(
+      StringBuilder result, Object value, Format format, String argumentName, IntegerWriter writer
+  ) {
+    if (value == CompiledMessage.MISSING) {
+      result.append('{').append(argumentName).append('}');
+    } else if (value == null) {
+      result.append("null");
+    } else if (writer == null || writer.append(value, result) < 0) {
+      result.append(format.format(value));
+    }
+  }
+
+  private SpecializedFormatter() {
+  }
+}
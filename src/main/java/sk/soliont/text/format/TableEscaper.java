@@ -0,0 +1,79 @@
+package sk.soliont.text.format;
+
+import java.io.IOException;
+
+/**
+ * An escaper that replaces the characters below 128 found in a table and
+ * copies everything else in runs.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class TableEscaper implements Escaper {
+
+  private static final int TABLE_LENGTH = 128;
+
+  private final String[] replacements;
+
+  private TableEscaper(String[] replacements) {
+    this.replacements = replacements;
+  }
+
+  static TableEscaper html() {
+    String[] table = new String[TABLE_LENGTH];
+    table['&'] = "&amp;";
+    table['<'] = "&lt;";
+    table['>'] = "&gt;";
+    table['"'] = "&quot;";
+    table['\''] = "&#39;";
+    return new TableEscaper(table);
+  }
+
+  static TableEscaper xmlAttribute() {
+    String[] table = html().replacements;
+    table['\''] = "&apos;";
+    table['\t'] = "&#9;";
+    table['\n'] = "&#10;";
+    table['\r'] = "&#13;";
+    return new TableEscaper(table);
+  }
+
+  static TableEscaper json() {
+    String[] table = new String[TABLE_LENGTH];
+    for (int c = 0; c < 0x20; c++) {
+      table[c] = String.format("\\u%04x", c);
+    }
+    table['\b'] = "\\b";
+    table['\t'] = "\\t";
+    table['\n'] = "\\n";
+    table['\f'] = "\\f";
+    table['\r'] = "\\r";
+    table['"'] = "\\\"";
+    table['\\'] = "\\\\";
+    return new TableEscaper(table);
+  }
+
+  @Override
+  public int escape(CharSequence text, int start, int end, Appendable out) throws IOException {
+    String[] replacements = this.replacements;
+    int appended = 0;
+    int run = start;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      String replacement = c < TABLE_LENGTH ? replacements[c] : null;
+      if (replacement != null) {
+        if (run < i) {
+          out.append(text, run, i);
+          appended += i - run;
+        }
+        out.append(replacement);
+        appended += replacement.length();
+        run = i + 1;
+      }
+    }
+    if (run < end) {
+      out.append(text, run, end);
+      appended += end - run;
+    }
+    return appended;
+  }
+}
@@ -0,0 +1,229 @@
+package sk.soliont.text.format;
+
+/**
+ * The statistics of one template recorded by {@link MessageMetrics}: how
+ * often and how fast it was formatted, parsed and compiled.
+ * <p>
+ * Latencies are recorded in a histogram of power-of-two buckets: bucket
+ * {@code i} counts the calls that took less than <code>2<sup>i</sup></code>
+ * nanoseconds but not less than <code>2<sup>i-1</sup></code>. Percentiles
+ * are reported as the upper bound of the bucket they fall into.
+ * <p>
+ * Instances are immutable snapshots.
+ */
+public final class TemplateStatistics {
+
+  private final String pattern;
+  private final long formatCount;
+  private final long totalNanos;
+  private final long totalLength;
+  private final long maxLength;
+  private final long[] histogram;
+  private final long parseCount;
+  private final long parseFailureCount;
+  private final long totalParseNanos;
+  private final long[] parseHistogram;
+  private final long compileCount;
+  private final long totalCompileNanos;
+  private final long[] compileHistogram;
+
+  TemplateStatistics(String pattern, long formatCount, long totalNanos, long totalLength, long maxLength, long[] histogram,
+      long parseCount, long parseFailureCount, long totalParseNanos, long[] parseHistogram,
+      long compileCount, long totalCompileNanos, long[] compileHistogram) {
+    this.pattern = pattern;
+    this.formatCount = formatCount;
+    this.totalNanos = totalNanos;
+    this.totalLength = totalLength;
+    this.maxLength = maxLength;
+    this.histogram = histogram;
+    this.parseCount = parseCount;
+    this.parseFailureCount = parseFailureCount;
+    this.totalParseNanos = totalParseNanos;
+    this.parseHistogram = parseHistogram;
+    this.compileCount = compileCount;
+    this.totalCompileNanos = totalCompileNanos;
+    this.compileHistogram = compileHistogram;
+  }
+
+  /**
+   * Gets the pattern of the template.
+   *
+   * @return the pattern
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Gets the number of times the template was formatted.
+   *
+   * @return the format count
+   */
+  public long getFormatCount() {
+    return formatCount;
+  }
+
+  /**
+   * Gets the average time of formatting the template.
+   *
+   * @return the average time in nanoseconds
+   */
+  public long getAverageNanos() {
+    return formatCount == 0 ? 0 : totalNanos / formatCount;
+  }
+
+  /**
+   * Gets the median time of formatting the template.
+   *
+   * @return the upper bound of the median bucket in nanoseconds
+   */
+  public long getMedianNanos() {
+    return percentileNanos(histogram, 0.5);
+  }
+
+  /**
+   * Gets the 99th percentile of the time of formatting the template.
+   *
+   * @return the upper bound of the 99th percentile bucket in nanoseconds
+   */
+  public long get99thPercentileNanos() {
+    return percentileNanos(histogram, 0.99);
+  }
+
+  /**
+   * Gets the average length of the formatted output.
+   *
+   * @return the average number of characters
+   */
+  public long getAverageLength() {
+    return formatCount == 0 ? 0 : totalLength / formatCount;
+  }
+
+  /**
+   * Gets the longest formatted output.
+   *
+   * @return the maximum number of characters
+   */
+  public long getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Gets the latency histogram.
+   *
+   * @return the number of calls in each power-of-two bucket
+   */
+  public long[] getHistogram() {
+    return histogram.clone();
+  }
+
+  /**
+   * Gets the number of times the template was parsed.
+   *
+   * @return the parse count
+   */
+  public long getParseCount() {
+    return parseCount;
+  }
+
+  /**
+   * Gets the number of strings that did not match the template.
+   *
+   * @return the parse failure count
+   */
+  public long getParseFailureCount() {
+    return parseFailureCount;
+  }
+
+  /**
+   * Gets the average time of parsing with the template.
+   *
+   * @return the average time in nanoseconds
+   */
+  public long getAverageParseNanos() {
+    return parseCount == 0 ? 0 : totalParseNanos / parseCount;
+  }
+
+  /**
+   * Gets the median time of parsing with the template.
+   *
+   * @return the upper bound of the median bucket in nanoseconds
+   */
+  public long getMedianParseNanos() {
+    return percentileNanos(parseHistogram, 0.5);
+  }
+
+  /**
+   * Gets the 99th percentile of the time of parsing with the template.
+   *
+   * @return the upper bound of the 99th percentile bucket in nanoseconds
+   */
+  public long get99thPercentileParseNanos() {
+    return percentileNanos(parseHistogram, 0.99);
+  }
+
+  /**
+   * Gets the parse latency histogram.
+   *
+   * @return the number of parses in each power-of-two bucket
+   */
+  public long[] getParseHistogram() {
+    return parseHistogram.clone();
+  }
+
+  /**
+   * Gets the number of times the template was compiled.
+   *
+   * @return the compile count
+   */
+  public long getCompileCount() {
+    return compileCount;
+  }
+
+  /**
+   * Gets the average time of compiling the template.
+   *
+   * @return the average time in nanoseconds
+   */
+  public long getAverageCompileNanos() {
+    return compileCount == 0 ? 0 : totalCompileNanos / compileCount;
+  }
+
+  /**
+   * Gets the compile latency histogram.
+   *
+   * @return the number of compilations in each power-of-two bucket
+   */
+  public long[] getCompileHistogram() {
+    return compileHistogram.clone();
+  }
+
+  private static long percentileNanos(long[] histogram, double percentile) {
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile);
+    long seen = 0;
+    for (int i = 0; i < histogram.length; i++) {
+      seen += histogram[i];
+      if (seen >= rank) {
+        return 1L << i;
+      }
+    }
+    return 1L << (histogram.length - 1);
+  }
+
+  /**
+   * Returns a string describing these statistics, for debugging.
+   */
+  @Override
+  public String toString() {
+    return "TemplateStatistics[pattern=" + pattern + ", formatCount=" + formatCount
+        + ", averageNanos=" + getAverageNanos() + ", averageLength=" + getAverageLength()
+        + ", parseCount=" + parseCount + ", compileCount=" + compileCount + "]";
+  }
+}
@@ -0,0 +1,431 @@
+package sk.soliont.text.format;
+
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormat;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Formats <code>java.time</code> values for a format element that uses a
+ * <code>DateFormat</code> subformat, and for elements without a format type.
+ * <p>
+ * The pattern of a <code>SimpleDateFormat</code> is translated once into an
+ * equivalent, immutable <code>DateTimeFormatter</code>, so formatting
+ * temporal values needs no per-thread copies. A <code>DateTimeFormatter</code>
+ * pattern always uses the ISO calendar and ASCII digits, so only date
+ * formats with a Gregorian calendar and ASCII digits are translated; the
+ * Japanese imperial or Thai Buddhist calendars and native digits are
+ * left to the date format. Values that carry a zone or an
+ * offset are formatted in that zone; instants and local values use the time
+ * zone of the date format, just like a <code>Date</code> would. Patterns
+ * that have no exact <code>DateTimeFormatter</code> equivalent fall back to
+ * converting the value to a <code>Date</code>, which is
+ * formatted in the zone of the value as well.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class TemporalFormat {
+
+  private static final ConcurrentHashMap<Key, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
+  /**
+   * The number of translations kept in {@link #FORMATTERS}; further
+   * patterns and names are checked again on every translation.
+   */
+  private static final int MAX_FORMATTERS = 1024;
+
+  /**
+   * The cached formatter of patterns and default formats that have no
+   * <code>DateTimeFormatter</code> equivalent.
+   */
+  private static final DateTimeFormatter UNTRANSLATABLE = DateTimeFormatter.ISO_INSTANT;
+
+  /**
+   * The zone of the dates that a translated formatter is checked with.
+   */
+  private static final ZoneId SAMPLE_ZONE = ZoneId.of("Europe/Bratislava");
+
+  /**
+   * The maximum number of repeated pattern letters that mean the same in
+   * <code>SimpleDateFormat</code> and <code>DateTimeFormatter</code>, by letter.
+   * Letters not listed here, or longer runs, are not translated.
+   */
+  private static final int[] MAX_LETTERS = new int['z' + 1];
+
+  static {
+    for (char letter : "MLE".toCharArray()) {
+      MAX_LETTERS[letter] = 4;
+    }
+    for (char letter : "dhHkKms".toCharArray()) {
+      MAX_LETTERS[letter] = 2;
+    }
+    MAX_LETTERS['y'] = Integer.MAX_VALUE;
+    MAX_LETTERS['D'] = 3;
+    MAX_LETTERS['a'] = 1;
+    MAX_LETTERS['z'] = 4;
+    MAX_LETTERS['Z'] = 3;
+  }
+
+  /**
+   * Returns the temporal format for the given subformat, or {@code null}
+   * if the subformat is not a <code>DateFormat</code>.
+   */
+  static TemporalFormat of(Format format, Locale locale) {
+    if (!(format instanceof DateFormat)) {
+      return null;
+    }
+    DateFormat dateFormat = (DateFormat) format;
+    return new TemporalFormat(dateFormat, translate(dateFormat, locale));
+  }
+
+  /**
+   * Returns the <code>DateTimeFormatter</code> equivalent to the given date
+   * format, or {@code null} if there is none. The translation is checked
+   * against the date format itself, so it is cached by the names the
+   * format prints where they are not those of the locale: they may come
+   * from another locale or be set by the caller.
+   */
+  private static DateTimeFormatter translate(DateFormat format, Locale locale) {
+    if (!(format instanceof SimpleDateFormat) || !isIso(format)) {
+      return null;
+    }
+    SimpleDateFormat simple = (SimpleDateFormat) format;
+    String pattern = simple.toPattern();
+    if (!isTranslatable(pattern)) {
+      return null;
+    }
+    Key key = new Key(pattern, locale, null, null, names(simple, locale));
+    DateTimeFormatter formatter = FORMATTERS.get(key);
+    if (formatter == null) {
+      DateTimeFormatter candidate = DateTimeFormatter.ofPattern(pattern, locale);
+      formatter = cached(key, formatsAlike(simple, candidate) ? candidate : UNTRANSLATABLE);
+    }
+    return formatter == UNTRANSLATABLE ? null : formatter;
+  }
+
+  /**
+   * Returns the month, day and day period names of the date format, or
+   * {@code null} if they are those of the locale. Zone names are left out,
+   * as they are expensive to load and compare; they are only checked for
+   * the sample zone.
+   */
+  private static String[][] names(SimpleDateFormat format, Locale locale) {
+    String[][] names = names(format.getDateFormatSymbols());
+    return Arrays.deepEquals(names, names(DateFormatSymbols.getInstance(locale))) ? null : names;
+  }
+
+  private static String[][] names(DateFormatSymbols symbols) {
+    return new String[][] {
+        symbols.getMonths(), symbols.getShortMonths(), symbols.getWeekdays(), symbols.getShortWeekdays(), symbols.getAmPmStrings()
+    };
+  }
+
+  /**
+   * Checks that the translated formatter gives the same text as the
+   * date format for a date in every month, on every day of the week and in
+   * both halves of the day. The names of months, days and day periods come
+   * from different locale data in the two APIs and differ in some locales.
+   */
+  private static boolean formatsAlike(SimpleDateFormat format, DateTimeFormatter formatter) {
+    SimpleDateFormat sample = (SimpleDateFormat) format.clone();
+    sample.setTimeZone(TimeZone.getTimeZone(SAMPLE_ZONE));
+    DateTimeFormatter zoned = formatter.withZone(SAMPLE_ZONE);
+    for (int month = 1; month <= 12; month++) {
+      ZonedDateTime value = ZonedDateTime.of(2024, month, month + 1, (2 * month + 1) % 24, 4 * month, month, 0, SAMPLE_ZONE);
+      if (!sample.format(Date.from(value.toInstant())).equals(zoned.format(value))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks that a date format counts like the ISO chronology of
+   * <code>java.time</code>: with a Gregorian calendar and ASCII digits
+   * without grouping.
+   */
+  private static boolean isIso(DateFormat format) {
+    if (!"gregory".equals(format.getCalendar().getCalendarType())) {
+      return false;
+    }
+    NumberFormat numbers = format.getNumberFormat();
+    return numbers instanceof DecimalFormat
+        && !numbers.isGroupingUsed()
+        && ((DecimalFormat) numbers).getDecimalFormatSymbols().getZeroDigit() == '0';
+  }
+
+  /**
+   * Formats a temporal value of an argument that has no subformat, the
+   * counterpart of the short date-time format used for <code>Date</code>
+   * arguments: values with only a date or only a time use the short date
+   * or time format of the locale. Returns {@code null} for values that have
+   * neither date nor time fields.
+   */
+  static String formatDefault(TemporalAccessor value, Locale locale) {
+    boolean hasDate = value.isSupported(ChronoField.EPOCH_DAY);
+    boolean hasTime = value.isSupported(ChronoField.NANO_OF_DAY);
+    // an instant has neither and is shown in the default time zone
+    ZoneId zone = null;
+    Style style;
+    if (hasDate && hasTime) {
+      style = Style.DATE_TIME;
+    } else if (!hasDate && !hasTime && value.isSupported(ChronoField.INSTANT_SECONDS)) {
+      style = Style.DATE_TIME;
+      zone = ZoneId.systemDefault();
+    } else if (hasDate) {
+      style = Style.DATE;
+    } else if (hasTime) {
+      style = Style.TIME;
+    } else {
+      return null;
+    }
+    Key key = new Key(null, locale, style, zone, null);
+    DateTimeFormatter formatter = FORMATTERS.get(key);
+    if (formatter == null) {
+      DateTimeFormatter translated = translate(style.format(locale), locale);
+      // a locale without an equivalent is marked by a formatter that is not used
+      formatter = cached(key, translated == null ? UNTRANSLATABLE : translated.withZone(zone));
+    }
+    if (formatter == UNTRANSLATABLE) {
+      return formatDate(value, style.format(locale), ZoneId.systemDefault());
+    }
+    return formatter.format(value);
+  }
+
+  private static DateTimeFormatter cached(Key key, DateTimeFormatter formatter) {
+    if (FORMATTERS.size() >= MAX_FORMATTERS) {
+      return formatter;
+    }
+    DateTimeFormatter existing = FORMATTERS.putIfAbsent(key, formatter);
+    return existing == null ? formatter : existing;
+  }
+
+  /**
+   * Checks that a <code>SimpleDateFormat</code> pattern formats the same
+   * when used as a <code>DateTimeFormatter</code> pattern.
+   */
+  static boolean isTranslatable(String pattern) {
+    boolean inQuote = false;
+    // SimpleDateFormat uses the standalone month name when the month is
+    // the only field, DateTimeFormatter 'M' always the format form
+    boolean textMonth = false;
+    boolean otherField = false;
+    for (int i = 0; i < pattern.length(); ) {
+      char ch = pattern.charAt(i);
+      if (ch == '\'') {
+        inQuote = !inQuote;
+        i++;
+        continue;
+      }
+      if (inQuote) {
+        i++;
+        continue;
+      }
+      if (ch == '[' || ch == ']' || ch == '{' || ch == '}' || ch == '#') {
+        // reserved by DateTimeFormatter, literal in SimpleDateFormat
+        return false;
+      }
+      int count = 1;
+      while (i + count < pattern.length() && pattern.charAt(i + count) == ch) {
+        count++;
+      }
+      if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+        // milliseconds are only the same as fraction digits with three letters
+        boolean allowed = ch == 'S' ? count == 3 : count <= MAX_LETTERS[ch];
+        if (!allowed) {
+          return false;
+        }
+        if (ch == 'M' && count >= 3) {
+          textMonth = true;
+        } else {
+          otherField = true;
+        }
+      }
+      i += count;
+    }
+    return !inQuote && (!textMonth || otherField);
+  }
+
+  private final DateTimeFormatter formatter;
+  private final DateTimeFormatter zonedFormatter;
+  private final ZoneId zone;
+
+  /**
+   * The date format this format was created for, and what of it decides
+   * the translation: its pattern, time zone and number format.
+   */
+  private final DateFormat source;
+  private final String pattern;
+  private final TimeZone timeZone;
+  private final NumberFormat numbers;
+
+  private TemporalFormat(DateFormat source, DateTimeFormatter formatter) {
+    this.source = source;
+    this.pattern = source instanceof SimpleDateFormat ? ((SimpleDateFormat) source).toPattern() : null;
+    this.timeZone = source.getTimeZone();
+    this.numbers = source.getNumberFormat();
+    this.formatter = formatter;
+    this.zone = timeZone.toZoneId();
+    this.zonedFormatter = formatter == null ? null : formatter.withZone(zone);
+  }
+
+  /**
+   * Tells whether this format still fits the given subformat: that it was
+   * created for it, and that its pattern, time zone and number format have
+   * not been replaced since. Changed names are not noticed; setting a new
+   * subformat is.
+   */
+  boolean isCurrent(Format format) {
+    if (format != source) {
+      return false;
+    }
+    // both getters return the instances held by the format, without copying
+    return source.getTimeZone() == timeZone
+        && source.getNumberFormat() == numbers
+        && (pattern == null || pattern.equals(((SimpleDateFormat) source).toPattern()));
+  }
+
+  /**
+   * Tells whether the pattern has been translated to a
+   * <code>DateTimeFormatter</code>.
+   */
+  boolean isTranslated() {
+    return formatter != null;
+  }
+
+  /**
+   * Formats the value with the translated pattern. If the pattern could not
+   * be translated, or the value lacks fields the pattern needs, the value is
+   * converted to a <code>Date</code> and formatted with the given date format,
+   * in the zone of the value if it has one.
+   *
+   * @throws IllegalArgumentException if the value has neither date nor time fields
+   */
+  String format(TemporalAccessor value, Format dateFormat) {
+    if (formatter != null) {
+      try {
+        if (value.isSupported(ChronoField.OFFSET_SECONDS)) {
+          return formatter.format(value);
+        }
+        return zonedFormatter.format(value);
+      } catch (DateTimeException e) {
+        // e.g. a time pattern applied to a LocalDate, format it like a Date
+      }
+    }
+    return formatDate(value, dateFormat, zone);
+  }
+
+  /**
+   * Formats a temporal value with a date format. Values that carry a zone
+   * or an offset are formatted in that zone, like a translated pattern
+   * does, by a copy of the date format; other values use the given zone.
+   */
+  private static String formatDate(TemporalAccessor value, Format dateFormat, ZoneId zone) {
+    ZoneId own = value.query(TemporalQueries.zone());
+    if (own == null || !(dateFormat instanceof DateFormat)) {
+      return dateFormat.format(toDate(value, zone));
+    }
+    DateFormat zoned = (DateFormat) dateFormat.clone();
+    zoned.setTimeZone(TimeZone.getTimeZone(own));
+    return zoned.format(toDate(value, own));
+  }
+
+  /**
+   * Converts a temporal value to a <code>Date</code>, resolving local values
+   * in the given zone.
+   */
+  private static Date toDate(TemporalAccessor value, ZoneId zone) {
+    try {
+      if (value.isSupported(ChronoField.INSTANT_SECONDS)) {
+        return Date.from(Instant.from(value));
+      }
+      LocalDate date = value.query(TemporalQueries.localDate());
+      LocalTime time = value.query(TemporalQueries.localTime());
+      if (date == null && time == null) {
+        throw new IllegalArgumentException("Cannot format given Object as a Date");
+      }
+      return Date.from(ZonedDateTime.of(
+          date == null ? LocalDate.ofEpochDay(0) : date,
+          time == null ? LocalTime.MIDNIGHT : time,
+          zone).toInstant());
+    } catch (DateTimeException e) {
+      throw new IllegalArgumentException("Cannot format given Object as a Date", e);
+    }
+  }
+
+  /**
+   * The default formats of values without a subformat.
+   */
+  private enum Style {
+    DATE_TIME, DATE, TIME;
+
+    /**
+     * Returns the short date format of this style for the current thread.
+     */
+    DateFormat format(Locale locale) {
+      switch (this) {
+        case DATE:
+          return DefaultFormats.date(locale);
+        case TIME:
+          return DefaultFormats.time(locale);
+        default:
+          return DefaultFormats.dateTime(locale);
+      }
+    }
+  }
+
+  private static final class Key {
+    private final String pattern;
+    private final Locale locale;
+    private final Style style;
+    private final ZoneId zone;
+    private final String[][] names;
+
+    Key(String pattern, Locale locale, Style style, ZoneId zone, String[][] names) {
+      this.pattern = pattern;
+      this.locale = locale;
+      this.style = style;
+      this.zone = zone;
+      this.names = names;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return Objects.equals(pattern, other.pattern)
+          && Objects.equals(locale, other.locale)
+          && style == other.style
+          && Objects.equals(zone, other.zone)
+          && Arrays.deepEquals(names, other.names);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(pattern, locale, style, zone) * 31 + Arrays.deepHashCode(names);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package sk.soliont.text.format;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Flight Recorder events of the library, see {@link FlightRecording}.
+ * <p>
+ * This is the only class that refers to <code>jdk.jfr</code>. It is
+ * compiled for Java 11 and only loaded by {@link FlightRecording#install()}.
+ */
+final class JfrFlightRecording extends FlightRecording {
+
+  private static final String CATEGORY = "Named MessageFormat";
+
+  @Override
+  void start() {
+    FlightRecorder.addListener(new jdk.jfr.FlightRecorderListener() {
+      @Override
+      public void recordingStateChanged(Recording recording) {
+        update();
+      }
+    });
+    update();
+  }
+
+  private static void update() {
+    boolean running = false;
+    if (FlightRecorder.isInitialized()) {
+      for (Recording recording : FlightRecorder.getFlightRecorder().getRecordings()) {
+        running |= recording.getState() == RecordingState.RUNNING;
+      }
+    }
+    Instrumentation.recording = running;
+  }
+
+  @Override
+  Object compileStarted() {
+    CompileEvent event = new CompileEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void compileEnded(Object started, NamedArgsMessageFormat format, String pattern, int placeholders) {
+    CompileEvent event = (CompileEvent) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.patternHash = format.toPattern().hashCode();
+      event.patternLength = pattern.length();
+      event.placeholders = placeholders;
+      event.locale = String.valueOf(format.getLocale());
+      event.commit();
+    }
+  }
+
+  @Override
+  Object formatStarted() {
+    SlowFormatEvent event = new SlowFormatEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void formatEnded(Object started, CompiledMessage message, int length) {
+    SlowFormatEvent event = (SlowFormatEvent) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.pattern = message.getPattern();
+      event.patternHash = event.pattern.hashCode();
+      event.length = length;
+      event.commit();
+    }
+  }
+
+  @Override
+  Object choiceCompileStarted() {
+    ChoiceCompileEvent event = new ChoiceCompileEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void choiceCompileEnded(Object started, CompiledMessage branch, String pattern, int depth) {
+    ChoiceCompileEvent event = (ChoiceCompileEvent) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.patternHash = branch.getPattern().hashCode();
+      event.patternLength = pattern.length();
+      event.depth = depth;
+      event.commit();
+    }
+  }
+
+  @Name("sk.soliont.text.format.PatternCompilation")
+  @Label("Message Pattern Compilation")
+  @Description("A pattern parsed and its subformats created")
+  @Category(CATEGORY)
+  @Enabled(false)
+  static final class CompileEvent extends Event {
+    @Label("Pattern Hash")
+    @Description("Hash code of the pattern as returned by toPattern()")
+    int patternHash;
+
+    @Label("Pattern Length")
+    int patternLength;
+
+    @Label("Placeholders")
+    int placeholders;
+
+    @Label("Locale")
+    String locale;
+  }
+
+  @Name("sk.soliont.text.format.SlowFormat")
+  @Label("Slow Message Format")
+  @Description("A format call that took longer than the threshold")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @Threshold("1 ms")
+  @StackTrace(true)
+  static final class SlowFormatEvent extends Event {
+    @Label("Pattern")
+    String pattern;
+
+    @Label("Pattern Hash")
+    @Description("Hash code of the pattern as returned by toPattern()")
+    int patternHash;
+
+    @Label("Output Length")
+    int length;
+  }
+
+  @Name("sk.soliont.text.format.ChoiceCompilation")
+  @Label("Choice Branch Compilation")
+  @Description("A branch of a choice subformat compiled into a nested message")
+  @Category(CATEGORY)
+  @Enabled(false)
+  static final class ChoiceCompileEvent extends Event {
+    @Label("Pattern Hash")
+    @Description("Hash code of the branch pattern as returned by toPattern()")
+    int patternHash;
+
+    @Label("Pattern Length")
+    int patternLength;
+
+    @Label("Nesting Depth")
+    int depth;
+  }
+}
@@ -0,0 +1,60 @@
+package sk.soliont.text.format;
+
+import java.util.Locale;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BoundMessageTest {
+  public static class User {
+    private final String name;
+    private final boolean active;
+
+    User(String name, boolean active) {
+      this.name = name;
+      this.active = active;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isActive() {
+      return active;
+    }
+  }
+
+  public static class Order {
+    public final int quantity;
+    private final User user;
+
+    Order(int quantity, User user) {
+      this.quantity = quantity;
+      this.user = user;
+    }
+
+    public User user() {
+      return user;
+    }
+  }
+
+  @Test
+  void objectShouldBeFormattedThroughAccessors() {
+    final BoundMessage<Order> message = CompiledMessage.compile(
+        "{user.name} ordered {quantity,number,integer} items (active: {user.active})", Locale.ENGLISH).bind(Order.class);
+    Assertions.assertEquals("user ordered 1,200 items (active: true)", message.format(new Order(1200, new User("user", true))));
+  }
+
+  @Test
+  void nullAlongThePathShouldGiveNull() {
+    final BoundMessage<Order> message = CompiledMessage.compile("{user.name}/{quantity}", Locale.ENGLISH).bind(Order.class);
+    Assertions.assertEquals("null/3", message.format(new Order(3, null)));
+    Assertions.assertEquals("{user.name}/{quantity}", message.format(null));
+  }
+
+  @Test
+  void unknownPropertyShouldFailWhenBinding() {
+    final CompiledMessage message = CompiledMessage.compile("{user.email}", Locale.ENGLISH);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> message.bind(Order.class));
+  }
+}
@@ -0,0 +1,424 @@
+package sk.soliont.text.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.AttributedCharacterIterator;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CompiledMessageTest {
+  @Test
+  void compiledMessageShouldFormatLikeMessageFormat() {
+    final String pattern = "{name} has {count,number,integer} items worth {price,number,#.00} since {since,date,yyyy-MM-dd}"
+        + " and {count,choice,0#no files|1#one file|1<{count} files}.";
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("count", 1234);
+    arguments.put("price", 12.5);
+    arguments.put("since", new Date(0));
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat(pattern, Locale.ENGLISH);
+    Assertions.assertEquals(format.format(arguments), CompiledMessage.compile(pattern, Locale.ENGLISH).format(arguments));
+  }
+
+  @Test
+  void missingArgumentShouldBeKeptAsPlaceholder() {
+    final CompiledMessage message = CompiledMessage.compile("Hello {name} and {other}!", Locale.ROOT);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", null);
+    Assertions.assertEquals("Hello null and {other}!", message.format(arguments));
+    Assertions.assertEquals("Hello {name} and {other}!", message.format((Map<String, Object>) null));
+  }
+
+  @Test
+  void snapshotShouldNotSeeLaterChanges() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{value,number,#.0}", Locale.ENGLISH);
+    final CompiledMessage message = format.toCompiledMessage();
+    format.setFormatByArgumentName("value", new DecimalFormat("#.000"));
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", 1.5);
+    Assertions.assertEquals("1.5", message.format(arguments));
+    Assertions.assertEquals("1.500", format.format(arguments));
+  }
+
+  @Test
+  void sharedMessageShouldFormatConcurrently() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile("{when,date,yyyy-MM-dd HH:mm:ss.SSS} {value,number,#,##0.00}", Locale.ENGLISH);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<Boolean>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int seed = t;
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            final NamedArgsMessageFormat reference = new NamedArgsMessageFormat(
+                "{when,date,yyyy-MM-dd HH:mm:ss.SSS} {value,number,#,##0.00}", Locale.ENGLISH);
+            for (int i = 0; i < 2000; i++) {
+              final Map<String, Object> arguments = new HashMap<>();
+              arguments.put("when", new Date(seed * 1000000007L + i * 86400123L));
+              arguments.put("value", seed * 1000.0 + i / 7.0);
+              if (!reference.format(arguments).equals(message.format(arguments))) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        Assertions.assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void argumentNamesShouldBeResolvedToSlots() {
+    final CompiledMessage message = CompiledMessage.compile("{b} and {a}, then {b} again", Locale.ROOT);
+    Assertions.assertEquals(Arrays.asList("b", "a"), message.getArgumentNames());
+    Assertions.assertEquals(0, message.slotOf("b"));
+    Assertions.assertEquals(1, message.slotOf("a"));
+    Assertions.assertEquals(-1, message.slotOf("c"));
+  }
+
+  @Test
+  void slotValuesShouldFormatLikeMap() {
+    final CompiledMessage message = CompiledMessage.compile("{name} has {count,number} items, {count,choice,0#none|1#one|1<{count} of {name}}", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("count", 1500);
+    final String expected = message.format(arguments);
+    Assertions.assertEquals(expected, message.format(new Object[] {"user", 1500}));
+    final MessageArguments holder = message.newArguments();
+    Assertions.assertEquals("{name} has {count} items, {count}", message.format(holder));
+    holder.set("name", "user").set(message.slotOf("count"), 1500);
+    Assertions.assertEquals(expected, message.format(holder));
+    holder.clear();
+    Assertions.assertFalse(holder.isSet(0));
+  }
+
+  @Test
+  void shortArrayShouldLeaveArgumentsUnavailable() {
+    final CompiledMessage message = CompiledMessage.compile("{first} {second}", Locale.ROOT);
+    Assertions.assertEquals("1 {second}", message.format(new Object[] {"1"}));
+    Assertions.assertEquals("null {second}", message.format(new Object[] {null}));
+    Assertions.assertEquals("{first} {second}", message.format((Object[]) null));
+  }
+
+  @Test
+  void holderShouldOnlyWorkWithItsMessage() {
+    final MessageArguments holder = CompiledMessage.compile("{a}", Locale.ROOT).newArguments();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CompiledMessage.compile("{a}", Locale.ROOT).format(holder));
+  }
+
+  @Test
+  void choiceBranchesShouldSeeArgumentsOnlyTheyUse() {
+    final String pattern = "{n,choice,0#none|1#{n} item {x}|1<{n} items {x}}";
+    final CompiledMessage message = CompiledMessage.compile(pattern, Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("n", 1);
+    arguments.put("x", "X");
+    // output of the implementation before compiled messages
+    Assertions.assertEquals("1 item X", message.format(arguments));
+    Assertions.assertEquals("1 item X", new NamedArgsMessageFormat(pattern, Locale.ENGLISH).format(arguments));
+    Assertions.assertEquals("1 item X", message.format(new Object[] {1, "X"}));
+    Assertions.assertEquals(Arrays.asList("n", "x"), message.getArgumentNames());
+    arguments.put("n", 2);
+    Assertions.assertEquals("2 items X", message.format(arguments));
+    arguments.remove("x");
+    Assertions.assertEquals("2 items {x}", message.format(arguments));
+  }
+
+  @Test
+  void nestedChoiceShouldFormatLikeMessageFormat() {
+    final String pattern = "{count,choice,0#no files|1#one file by {name}|1<{count,number,integer} files by {name} {rest}}";
+    final CompiledMessage message = new NamedArgsMessageFormat(pattern, Locale.ENGLISH).toCompiledMessage();
+    // outputs of java.text.MessageFormat semantics, as formatted before compiled messages
+    final Object[] counts = {0, 1, 2, 12345L, 0.5, Double.NaN, -1};
+    final String[] expected = {
+        "no files", "one file by user", "2 files by user {rest}", "12,345 files by user {rest}",
+        "no files", "no files", "no files"
+    };
+    for (int i = 0; i < counts.length; i++) {
+      final Map<String, Object> arguments = new HashMap<>();
+      arguments.put("count", counts[i]);
+      arguments.put("name", "user");
+      Assertions.assertEquals(expected[i], message.format(arguments));
+      // again, with the compiled branch
+      Assertions.assertEquals(expected[i], message.format(arguments));
+    }
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("count", 3);
+    Assertions.assertEquals("3 files by {name} {rest}", message.format(arguments));
+  }
+
+  @Test
+  void suppliersShouldBeCalledOnlyWhenReached() {
+    final CompiledMessage message = CompiledMessage.compile(
+        "{name}: {count,choice,0#none|1<{count} by {name}}", Locale.ENGLISH);
+    final AtomicInteger calls = new AtomicInteger();
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("count", 0);
+    arguments.put("name", (Supplier<String>) () -> {
+      calls.incrementAndGet();
+      return "joe";
+    });
+    Assertions.assertEquals("joe: none", message.format(arguments));
+    Assertions.assertEquals(1, calls.get());
+    final AtomicInteger counts = new AtomicInteger();
+    arguments.put("count", (Supplier<Integer>) () -> {
+      counts.incrementAndGet();
+      return 2;
+    });
+    Assertions.assertEquals("joe: 2 by joe", message.format(arguments));
+    Assertions.assertEquals(2, calls.get());
+    Assertions.assertEquals(1, counts.get());
+    final Object[] values = message.slotValues(arguments);
+    Assertions.assertEquals("joe: 2 by joe", message.specialize().format(values));
+    Assertions.assertEquals(3, calls.get());
+    Assertions.assertEquals(2, counts.get());
+    // the array of the caller keeps its suppliers
+    Assertions.assertTrue(values[0] instanceof Supplier);
+  }
+
+  @Test
+  void specializedFormatShouldReadInvalidArgumentsOnce() {
+    final CompiledMessage message = CompiledMessage.compile("{a} then {b,number}", Locale.ENGLISH).specialize();
+    Assertions.assertTrue(message.isSpecialized());
+    final AtomicInteger calls = new AtomicInteger();
+    final Object[] values = {(Supplier<String>) () -> {
+      calls.incrementAndGet();
+      return "a";
+    }, "notANumber"};
+    Assertions.assertThrows(IllegalArgumentException.class, () -> message.format(values));
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  @Test
+  void escapedFormatShouldEscapeLiteralsAndValues() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile(
+        "<b>{name}</b> & {count,choice,0#no files & more|1<{count} \"files\" of {name}} {missing}", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "Tom & <Jerry>");
+    arguments.put("count", 1234);
+    final String expected = Escaper.HTML.escape(message.format(arguments));
+    Assertions.assertEquals(expected, message.format(arguments, Escaper.HTML));
+    Assertions.assertEquals(Escaper.JSON.escape(message.format(arguments)), message.format(arguments, Escaper.JSON));
+    Assertions.assertEquals(expected, message.format(arguments, Escaper.HTML));
+    Assertions.assertEquals(expected, message.formatTo(arguments, Escaper.HTML, new StringWriter()).toString());
+    final CompiledMessage specialized = message.specialize();
+    final MessageArguments holder = specialized.newArguments().set("name", "Tom & <Jerry>").set("count", 1234);
+    Assertions.assertEquals(expected, specialized.format(holder, Escaper.HTML));
+    arguments.put("count", 0);
+    Assertions.assertEquals("&lt;b&gt;Tom &amp; &lt;Jerry&gt;&lt;/b&gt; &amp; no files &amp; more {missing}",
+        message.format(arguments, Escaper.HTML));
+  }
+
+  @Test
+  void characterIteratorShouldKeepNestedAndDefaultFormatFields() {
+    final CompiledMessage message = CompiledMessage.compile("{count,choice,0#none|1<{count,number,integer} files} at {rate}", Locale.ENGLISH);
+    final AttributedCharacterIterator iterator = message.formatToCharacterIterator(new Object[] {2000, 0.5});
+    Assertions.assertEquals(0, iterator.getBeginIndex());
+    Assertions.assertEquals("2,000 files at 0.5".length(), iterator.getEndIndex());
+    iterator.setIndex(0);
+    Assertions.assertEquals("count", iterator.getAttribute(NamedArgsMessageFormat.Field.ARGUMENT));
+    Assertions.assertEquals(11, iterator.getRunLimit(NamedArgsMessageFormat.Field.ARGUMENT));
+    Assertions.assertEquals(5, iterator.getRunLimit(NumberFormat.Field.INTEGER));
+    iterator.setIndex(15);
+    Assertions.assertEquals("rate", iterator.getAttribute(NamedArgsMessageFormat.Field.ARGUMENT));
+    iterator.setIndex(16);
+    Assertions.assertEquals(NumberFormat.Field.DECIMAL_SEPARATOR, iterator.getAttribute(NumberFormat.Field.DECIMAL_SEPARATOR));
+  }
+
+  @Test
+  void tooDeeplyNestedChoiceShouldBeReplaced() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("<{n,choice,0#x{n}}>", Locale.ROOT);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("n", 0);
+    Assertions.assertEquals("<x0>", format.compile(true, CompiledMessage.MAX_NESTING_DEPTH - 1).format(arguments));
+    Assertions.assertEquals("<\uFFFD>", format.compile(true, CompiledMessage.MAX_NESTING_DEPTH).format(arguments));
+  }
+
+  @Test
+  void literalLengthShouldExcludeArguments() {
+    Assertions.assertEquals("Hello , !".length(), CompiledMessage.compile("Hello {name}, {other}!", Locale.ROOT).getLiteralLength());
+    Assertions.assertEquals(0, CompiledMessage.compile("{a}{b}", Locale.ROOT).getLiteralLength());
+  }
+
+  @Test
+  void estimatedLengthShouldFollowObservedOutput() {
+    final CompiledMessage message = CompiledMessage.compile("Hello {name}!", Locale.ROOT);
+    Assertions.assertTrue(message.getEstimatedLength() >= message.getLiteralLength());
+    final StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      name.append('x');
+    }
+    final int initial = message.getEstimatedLength();
+    Assertions.assertEquals(107, message.format(new Object[] {name.toString()}).length());
+    Assertions.assertTrue(message.getEstimatedLength() > initial);
+    Assertions.assertTrue(message.getEstimatedLength() < 107);
+    for (int i = 0; i < 100; i++) {
+      message.format(new Object[] {name.toString()});
+    }
+    Assertions.assertEquals(107, message.getEstimatedLength());
+    for (int i = 0; i < 100; i++) {
+      message.format(new Object[] {"y"});
+    }
+    Assertions.assertTrue(message.getEstimatedLength() < 107);
+    Assertions.assertTrue(message.getEstimatedLength() >= 8);
+  }
+
+  @Test
+  void estimatedLengthShouldNotFollowOutliers() {
+    final CompiledMessage message = CompiledMessage.compile("Hello {name}!", Locale.ROOT);
+    final int initial = message.getEstimatedLength();
+    final char[] name = new char[100_000];
+    Arrays.fill(name, 'x');
+    for (int i = 0; i < 100; i++) {
+      message.format(new Object[] {new String(name)});
+    }
+    Assertions.assertEquals(8 * initial, message.getEstimatedLength());
+  }
+
+  @Test
+  void formatAllShouldWriteEveryRow() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile("{id,number,integer};{name}", Locale.ENGLISH);
+    final List<Map<String, Object>> rows = IntStream.range(0, 5000).mapToObj(i -> {
+      final Map<String, Object> row = new HashMap<>();
+      row.put("id", i * 1000);
+      row.put("name", "user" + i);
+      return row;
+    }).collect(Collectors.toList());
+    rows.add(null);
+    final StringBuilder expected = new StringBuilder();
+    for (Map<String, Object> row : rows) {
+      expected.append(message.format(row)).append('\n');
+    }
+    final StringWriter writer = new StringWriter();
+    Assertions.assertEquals(5001, message.formatAll(rows.iterator(), "\n", writer));
+    Assertions.assertEquals(expected.toString(), writer.toString());
+  }
+
+  @Test
+  void formatAllShouldEncodeOutputStream() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile("\u017elt\u00fd {name}", Locale.ROOT);
+    final Map<String, Object> row = new HashMap<>();
+    row.put("name", "k\u00f4\u0148");
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Assertions.assertEquals(2, message.formatAll(Stream.of(row, row), "|", out, StandardCharsets.UTF_8));
+    Assertions.assertEquals("\u017elt\u00fd k\u00f4\u0148|\u017elt\u00fd k\u00f4\u0148|", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void formatParallelShouldKeepInputOrder() {
+    final CompiledMessage message = CompiledMessage.compile("{id,number,#,##0} {when,date,yyyy-MM-dd} {name}", Locale.ENGLISH);
+    final List<Map<String, Object>> rows = IntStream.range(0, 10000).mapToObj(i -> {
+      final Map<String, Object> row = new HashMap<>();
+      row.put("id", i);
+      row.put("when", new Date(i * 86400000L));
+      row.put("name", "user" + i);
+      return row;
+    }).collect(Collectors.toList());
+    rows.set(17, null);
+    final List<String> expected = rows.stream().map(message::format).collect(Collectors.toList());
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      Assertions.assertEquals(expected, message.formatParallel(rows, pool));
+      Assertions.assertEquals(expected, message.formatParallel(rows, executor, 7));
+      Assertions.assertEquals(expected.subList(0, 2), message.formatParallel(rows.subList(0, 2), executor, 7));
+      Assertions.assertEquals(expected, message.formatParallel(rows));
+      final List<Map<String, Object>> linked = new LinkedList<>(rows);
+      Assertions.assertEquals(expected, message.formatParallel(linked, pool));
+      Assertions.assertEquals(expected, message.formatParallel(linked, executor, 7));
+    } finally {
+      pool.shutdown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void formatParallelShouldRethrowFormatFailure() {
+    final CompiledMessage message = CompiledMessage.compile("{n,number}", Locale.ENGLISH);
+    final List<Map<String, Object>> rows = IntStream.range(0, 1000).mapToObj(i -> {
+      final Map<String, Object> row = new HashMap<>();
+      row.put("n", i == 500 ? "text" : i);
+      return row;
+    }).collect(Collectors.toList());
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Assertions.assertThrows(IllegalArgumentException.class, () -> message.formatParallel(rows));
+      Assertions.assertThrows(IllegalArgumentException.class, () -> message.formatParallel(rows, executor, 4));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void parseShouldFillHolder() {
+    final CompiledMessage message = CompiledMessage.compile("User {name} has {count,number,integer} items in {place}.", Locale.ENGLISH);
+    final MessageArguments arguments = message.newArguments();
+    final ParsePosition pos = new ParsePosition(2);
+    Assertions.assertTrue(message.parse(new StringBuilder("> User joe has 1,234 items in the box. <"), pos, arguments));
+    Assertions.assertEquals(38, pos.getIndex());
+    Assertions.assertEquals("joe", arguments.get(message.slotOf("name")));
+    Assertions.assertEquals(1234L, arguments.get(message.slotOf("count")));
+    Assertions.assertEquals("the box", arguments.get(message.slotOf("place")));
+    Assertions.assertTrue(message.parse("User {name} has 5 items in x.", new ParsePosition(0), arguments));
+    Assertions.assertFalse(arguments.isSet(message.slotOf("name")));
+    Assertions.assertEquals(5L, arguments.get(message.slotOf("count")));
+  }
+
+  @Test
+  void parseOfCharSequenceShouldKeepIndicesOfSubformats() {
+    final CompiledMessage message = CompiledMessage.compile("{a} {b,number,integer} and {c,number,integer}!", Locale.ENGLISH);
+    final MessageArguments arguments = message.newArguments();
+    final ParsePosition pos = new ParsePosition(3);
+    Assertions.assertTrue(message.parse(new StringBuilder(">> x 1,234 and 56! <<"), pos, arguments));
+    Assertions.assertEquals(18, pos.getIndex());
+    Assertions.assertEquals("x", arguments.get(message.slotOf("a")));
+    Assertions.assertEquals(1234L, arguments.get(message.slotOf("b")));
+    Assertions.assertEquals(56L, arguments.get(message.slotOf("c")));
+    final ParsePosition failed = new ParsePosition(3);
+    Assertions.assertFalse(message.parse(new StringBuilder(">> x 1,234 and y! <<"), failed, arguments));
+    Assertions.assertEquals(3, failed.getIndex());
+    Assertions.assertEquals(15, failed.getErrorIndex());
+  }
+
+  @Test
+  void failedParseShouldKeepIndex() {
+    final CompiledMessage message = CompiledMessage.compile("{a,number} and {b}!", Locale.ENGLISH);
+    final MessageArguments arguments = message.newArguments();
+    final ParsePosition pos = new ParsePosition(0);
+    Assertions.assertFalse(message.parse("12 or x!", pos, arguments));
+    Assertions.assertEquals(0, pos.getIndex());
+    Assertions.assertEquals(2, pos.getErrorIndex());
+    final ParsePosition other = new ParsePosition(0);
+    Assertions.assertFalse(message.parse("x and y!", other, arguments));
+    Assertions.assertEquals(0, other.getErrorIndex());
+  }
+}
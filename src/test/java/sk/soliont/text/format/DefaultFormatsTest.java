@@ -0,0 +1,45 @@
+package sk.soliont.text.format;
+
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DefaultFormatsTest {
+  @Test
+  void formatsShouldBeReusedPerLocale() {
+    Assertions.assertSame(DefaultFormats.number(Locale.GERMANY), DefaultFormats.number(Locale.GERMANY));
+    Assertions.assertNotSame(DefaultFormats.number(Locale.GERMANY), DefaultFormats.number(Locale.US));
+    Assertions.assertSame(DefaultFormats.dateTime(Locale.FRANCE), DefaultFormats.dateTime(Locale.FRANCE));
+  }
+
+  @Test
+  void outputShouldMatchFreshFormats() {
+    final Date date = new Date(1234567890123L);
+    for (Locale locale : new Locale[] {Locale.US, Locale.GERMANY, Locale.FRANCE, Locale.JAPAN, new Locale("ar", "EG"), new Locale("hi", "IN")}) {
+      Assertions.assertEquals(NumberFormat.getInstance(locale).format(-1234567.891), DefaultFormats.number(locale).format(-1234567.891));
+      Assertions.assertEquals(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale).format(date),
+          DefaultFormats.dateTime(locale).format(date));
+    }
+  }
+
+  @Test
+  void dateFormatShouldFollowDefaultTimeZone() {
+    final TimeZone original = TimeZone.getDefault();
+    try {
+      final Date date = new Date(0);
+      TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+      final String utc = DefaultFormats.dateTime(Locale.US).format(date);
+      TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+      Assertions.assertEquals(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, Locale.US).format(date),
+          DefaultFormats.dateTime(Locale.US).format(date));
+      Assertions.assertNotEquals(utc, DefaultFormats.dateTime(Locale.US).format(date));
+    } finally {
+      TimeZone.setDefault(original);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package sk.soliont.text.format;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DeferredMessageTest {
+  @Test
+  void messageShouldFormatOnlyWhenNeeded() {
+    final CompiledMessage message = CompiledMessage.compile("{name} has {count,number,integer} items", Locale.ENGLISH);
+    final AtomicInteger calls = new AtomicInteger();
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "joe");
+    arguments.put("count", (Supplier<Integer>) () -> {
+      calls.incrementAndGet();
+      return 1234;
+    });
+    final DeferredMessage deferred = message.defer(arguments);
+    Assertions.assertSame(message, deferred.getMessage());
+    Assertions.assertFalse(deferred.isFormatted());
+    Assertions.assertEquals(0, calls.get());
+
+    Assertions.assertEquals("joe has 1,234 items", deferred.toString());
+    Assertions.assertTrue(deferred.isFormatted());
+    Assertions.assertSame(deferred.toString(), deferred.toString());
+    Assertions.assertEquals(">joe has 1,234 items", deferred.formatTo(new StringBuilder(">")).toString());
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  @Test
+  void formatToShouldNotKeepText() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile("{a} and {b}", Locale.ROOT);
+    final DeferredMessage deferred = message.defer("x", "y");
+    Assertions.assertEquals("x and y", deferred.formatTo(new StringBuilder()).toString());
+    Assertions.assertEquals("x and y", deferred.formatTo(new StringWriter()).toString());
+    Assertions.assertFalse(deferred.isFormatted());
+    Assertions.assertEquals("{a} and {b}", message.defer((Map<String, ?>) null).toString());
+  }
+}
@@ -0,0 +1,32 @@
+package sk.soliont.text.format;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class EscaperTest {
+  @Test
+  void htmlShouldEscapeMarkup() {
+    Assertions.assertEquals("&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#39;s&lt;/a&gt;",
+        Escaper.HTML.escape("<a href=\"x\">Tom & Jerry's</a>"));
+    Assertions.assertEquals("plain \u00e9 text", Escaper.HTML.escape("plain \u00e9 text"));
+  }
+
+  @Test
+  void jsonShouldEscapeQuotesAndControlCharacters() {
+    Assertions.assertEquals("say \\\"hi\\\"\\n\\tC:\\\\dir\\u0001</b>",
+        Escaper.JSON.escape("say \"hi\"\n\tC:\\dir\u0001</b>"));
+  }
+
+  @Test
+  void xmlAttributeShouldKeepWhitespace() {
+    Assertions.assertEquals("a&#9;b&#10;c&#13;&apos;&lt;", Escaper.XML_ATTRIBUTE.escape("a\tb\nc\r'<"));
+  }
+
+  @Test
+  void escapeShouldReportAppendedLength() throws Exception {
+    final StringBuilder result = new StringBuilder("x");
+    Assertions.assertEquals(6, Escaper.HTML.escape("-a<b-", 1, 4, result));
+    Assertions.assertEquals("xa&lt;b", result.toString().substring(0, 7));
+    Assertions.assertEquals(7, result.length());
+  }
+}
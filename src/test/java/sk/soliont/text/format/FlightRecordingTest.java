@@ -0,0 +1,84 @@
+package sk.soliont.text.format;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FlightRecordingTest {
+  @Test
+  void eventsShouldBeRecordedWhenEnabled() throws Exception {
+    final String pattern = "{count,choice,0#none|1<{count,number,integer} of {name}}";
+    final Path file = Files.createTempFile("messages", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("sk.soliont.text.format.PatternCompilation");
+      recording.enable("sk.soliont.text.format.ChoiceCompilation");
+      recording.enable("sk.soliont.text.format.SlowFormat").withThreshold(Duration.ZERO);
+      recording.start();
+      Assertions.assertTrue(Instrumentation.recording);
+      final Map<String, Object> arguments = new HashMap<>();
+      arguments.put("count", 2);
+      arguments.put("name", "user");
+      final String output = CompiledMessage.compile(pattern, Locale.ENGLISH).format(arguments);
+      Assertions.assertEquals("2 of user", output);
+      recording.stop();
+      recording.dump(file);
+      final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      final RecordedEvent compilation = event(events, "sk.soliont.text.format.PatternCompilation", pattern.length());
+      Assertions.assertEquals(1, compilation.getInt("placeholders"));
+      Assertions.assertEquals("en", compilation.getString("locale"));
+      final RecordedEvent format = only(events, "sk.soliont.text.format.SlowFormat");
+      Assertions.assertEquals(output.length(), format.getInt("length"));
+      Assertions.assertEquals(format.getString("pattern").hashCode(), format.getInt("patternHash"));
+      Assertions.assertEquals(compilation.getInt("patternHash"), format.getInt("patternHash"));
+      Assertions.assertEquals(1, events.stream()
+          .filter(e -> e.getEventType().getName().equals("sk.soliont.text.format.ChoiceCompilation"))
+          .count());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+    Assertions.assertFalse(Instrumentation.recording);
+  }
+
+  @Test
+  void eventsShouldBeDisabledByDefault() throws Exception {
+    final Path file = Files.createTempFile("messages", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.start();
+      CompiledMessage.compile("{a}", Locale.ROOT).format(new Object[] {"x"});
+      recording.stop();
+      recording.dump(file);
+      Assertions.assertTrue(RecordingFile.readAllEvents(file).stream()
+          .noneMatch(e -> e.getEventType().getName().startsWith("sk.soliont.text.format.")));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static RecordedEvent event(List<RecordedEvent> events, String name, int patternLength) {
+    final List<RecordedEvent> matching = events.stream()
+        .filter(e -> e.getEventType().getName().equals(name) && e.getInt("patternLength") == patternLength)
+        .collect(Collectors.toList());
+    Assertions.assertEquals(1, matching.size());
+    return matching.get(0);
+  }
+
+  private static RecordedEvent only(List<RecordedEvent> events, String name) {
+    final List<RecordedEvent> matching = events.stream()
+        .filter(e -> e.getEventType().getName().equals(name))
+        .collect(Collectors.toList());
+    Assertions.assertEquals(1, matching.size());
+    return matching.get(0);
+  }
+}
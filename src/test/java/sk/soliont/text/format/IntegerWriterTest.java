@@ -0,0 +1,108 @@
+package sk.soliont.text.format;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IntegerWriterTest {
+  @Test
+  void writerShouldMatchDecimalFormatInAllLocales() {
+    final List<Object> values = values();
+    int writers = 0;
+    for (Locale locale : Locale.getAvailableLocales()) {
+      final List<NumberFormat> formats = new ArrayList<>();
+      formats.add(NumberFormat.getInstance(locale));
+      formats.add(NumberFormat.getIntegerInstance(locale));
+      formats.add(NumberFormat.getPercentInstance(locale));
+      formats.add(NumberFormat.getCurrencyInstance(locale));
+      final DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+      for (String pattern : new String[] {"#,##0", "0", "#", "#,##0.##", "#,##,###", "-#,##0 units;(#)", "0.00", "00"}) {
+        formats.add(new DecimalFormat(pattern, symbols));
+      }
+      for (NumberFormat format : formats) {
+        final IntegerWriter writer = IntegerWriter.of(format);
+        if (writer == null) {
+          continue;
+        }
+        writers++;
+        for (Object value : values) {
+          final String formatted = writer.format(value);
+          if (formatted != null) {
+            Assertions.assertEquals(format.format(value), formatted,
+                () -> locale + " " + ((DecimalFormat) format).toPattern() + " " + value);
+          }
+        }
+      }
+    }
+    Assertions.assertTrue(writers > Locale.getAvailableLocales().length);
+  }
+
+  @Test
+  void writerShouldOnlyExistForPlainFormats() {
+    Assertions.assertNotNull(IntegerWriter.of(NumberFormat.getInstance(Locale.ENGLISH)));
+    Assertions.assertNotNull(IntegerWriter.of(NumberFormat.getIntegerInstance(Locale.GERMAN)));
+    Assertions.assertNotNull(IntegerWriter.of(NumberFormat.getInstance(Locale.FRENCH)));
+    Assertions.assertNull(IntegerWriter.of(NumberFormat.getPercentInstance(Locale.ENGLISH)));
+    Assertions.assertNull(IntegerWriter.of(NumberFormat.getCurrencyInstance(Locale.US)));
+    Assertions.assertNull(IntegerWriter.of(new DecimalFormat("0.00")));
+    Assertions.assertNull(IntegerWriter.of(new DecimalFormat("000")));
+    Assertions.assertNull(IntegerWriter.of(new DecimalFormat("0.###E0")));
+    final IntegerWriter writer = IntegerWriter.of(NumberFormat.getInstance(Locale.ENGLISH));
+    Assertions.assertNull(writer.format(1.5));
+    Assertions.assertNull(writer.format(-0.0));
+    Assertions.assertNull(writer.format(new java.math.BigDecimal("12")));
+    Assertions.assertEquals("-9,223,372,036,854,775,808", writer.format(Long.MIN_VALUE));
+  }
+
+  @Test
+  void messagesShouldFormatLikeNamedArgsMessageFormat() {
+    final String pattern = "{a} {b,number} {b,number,integer} {c,number,#,##0} {d,number,percent} {e}";
+    for (Locale locale : new Locale[] {Locale.ENGLISH, Locale.GERMANY, Locale.FRANCE, new Locale("ar", "EG"), new Locale("hi", "IN"), new Locale("th", "TH", "TH")}) {
+      final CompiledMessage message = CompiledMessage.compile(pattern, locale);
+      final CompiledMessage specialized = message.specialize();
+      final NamedArgsMessageFormat reference = new NamedArgsMessageFormat(pattern, locale);
+      for (Object value : values()) {
+        final Map<String, Object> arguments = new HashMap<>();
+        arguments.put("a", value);
+        arguments.put("b", value);
+        arguments.put("c", value);
+        arguments.put("d", 3);
+        arguments.put("e", -0.0);
+        final String expected = reference.format(arguments);
+        Assertions.assertEquals(expected, message.format(arguments), locale + " " + value);
+        Assertions.assertEquals(expected, specialized.format(arguments), locale + " " + value);
+      }
+    }
+  }
+
+  private static List<Object> values() {
+    final List<Object> values = new ArrayList<>();
+    final Random random = new Random(7);
+    for (long value : new long[] {0, 1, -1, 9, 10, 99, 100, 999, 1000, -1000, 12345, 123456, 1234567,
+        Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1}) {
+      values.add(value);
+    }
+    for (int i = 0; i < 40; i++) {
+      values.add(random.nextLong() >> random.nextInt(64));
+      values.add(random.nextInt() >> random.nextInt(32));
+    }
+    values.add((short) -1234);
+    values.add((byte) 100);
+    values.add(1234567.0);
+    values.add(-98765.0f);
+    values.add(9007199254740991.0);
+    values.add(1.0e300);
+    values.add(0.5);
+    values.add(-0.0);
+    return values;
+  }
+}
@@ -0,0 +1,39 @@
+package sk.soliont.text.format;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LiteralMatcherTest {
+  @Test
+  void searchShouldFindLikeIndexOf() {
+    final Random random = new Random(42);
+    final char[] alphabet = {'a', 'b', ' ', '\u0161', '\u0261', '\u0100'};
+    for (int round = 0; round < 2000; round++) {
+      final String literal = randomString(random, alphabet, random.nextInt(8));
+      final String text = randomString(random, alphabet, random.nextInt(60));
+      final LiteralMatcher matcher = new LiteralMatcher(literal);
+      for (int from = 0; from <= text.length(); from += 1 + random.nextInt(5)) {
+        Assertions.assertEquals(text.indexOf(literal, from), matcher.indexIn(text, from), literal + " in " + text);
+        Assertions.assertEquals(text.startsWith(literal, from), matcher.matchesAt(text, from));
+      }
+    }
+  }
+
+  @Test
+  void searchShouldWorkOnAnyCharSequence() {
+    final LiteralMatcher matcher = new LiteralMatcher(" items, ");
+    final StringBuilder text = new StringBuilder("12 item, 13 items, 14");
+    Assertions.assertEquals(11, matcher.indexIn(text, 0));
+    Assertions.assertEquals(-1, matcher.indexIn(text, 12));
+  }
+
+  private static String randomString(Random random, char[] alphabet, int length) {
+    final StringBuilder result = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      result.append(alphabet[random.nextInt(alphabet.length)]);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,77 @@
+package sk.soliont.text.format;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LogExtractorTest {
+  @Test
+  void matchingLinesShouldBeExtracted() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile("user {name} logged in from {address}", Locale.ROOT);
+    final Path file = Files.createTempFile("extract", ".log");
+    try {
+      Files.write(file, ("user joe logged in from 10.0.0.1\r\n"
+          + "something else\n"
+          + "\n"
+          + "user \u017eofia logged in from ::1\n"
+          + "user anne logged in from 10.0.0.2").getBytes(StandardCharsets.UTF_8));
+      final LogExtractor extractor = LogExtractor.of(message);
+      final List<String> records = extractor.extract(file, arguments -> arguments.get(0) + "@" + arguments.get(1));
+      Assertions.assertEquals(3, records.size());
+      Assertions.assertEquals("joe@10.0.0.1", records.get(0));
+      Assertions.assertEquals("\u017eofia@::1", records.get(1));
+      Assertions.assertEquals("anne@10.0.0.2", records.get(2));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void parallelExtractionShouldKeepLineOrder() throws Exception {
+    final CompiledMessage message = CompiledMessage.compile("{id,number,integer} {name} {value,number,#.00}", Locale.ENGLISH);
+    final Path file = Files.createTempFile("extract", ".log");
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final List<Long> expected = new ArrayList<>();
+      try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        final StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+          longName.append('x');
+        }
+        for (int i = 0; i < 200000; i++) {
+          if (i % 1000 == 999) {
+            writer.write("noise\n");
+            continue;
+          }
+          writer.write(i + " " + (i == 5 ? longName : "user" + i) + " " + i + ".50\n");
+          expected.add((long) i);
+        }
+      }
+      final LogExtractor extractor = LogExtractor.of(message);
+      final List<Object> ids = extractor.extract(file, arguments -> arguments.get(0), pool);
+      Assertions.assertEquals(expected, ids);
+      Assertions.assertEquals(expected, extractor.extract(file, arguments -> arguments.get(0)));
+      final AtomicLong sum = new AtomicLong();
+      Assertions.assertEquals(expected.size(), extractor.forEach(file, arguments -> sum.addAndGet((Long) arguments.get(0)), pool));
+      Assertions.assertEquals(expected.stream().mapToLong(Long::longValue).sum(), sum.get());
+    } finally {
+      pool.shutdown();
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void multiByteLineFeedShouldBeRejected() {
+    final CompiledMessage message = CompiledMessage.compile("{a}", Locale.ROOT);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> LogExtractor.of(message, StandardCharsets.UTF_16));
+  }
+}
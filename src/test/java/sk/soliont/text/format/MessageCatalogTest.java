@@ -0,0 +1,272 @@
+package sk.soliont.text.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MessageCatalogTest {
+  private Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("catalog");
+    write("messages.properties", "greeting=Hello {name}!\nfarewell=Bye {name}\ncount={n,number,#,##0.0}\n"
+        + "files={n,choice,0#no files|1#one file|1<{n,number,integer} files} since {since,date,long}\n");
+    write("messages_de.properties", "greeting=Hallo {name}!\n");
+    write("messages_de_AT.properties", "greeting=Servus {name}!\n");
+    write("messages_sk.properties", "greeting=Ahoj {name}, \u017elt\u00fd k\u00f4\u0148!\n");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Test
+  void keyShouldBeResolvedAlongFallbackChain() {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Servus user!", catalog.format("greeting", new Locale("de", "AT"), arguments));
+    Assertions.assertEquals("Hallo user!", catalog.format("greeting", new Locale("de", "CH"), arguments));
+    Assertions.assertEquals("Bye user", catalog.format("farewell", new Locale("de", "AT"), arguments));
+    Assertions.assertEquals("Hello user!", catalog.format("greeting", Locale.FRENCH, arguments));
+    Assertions.assertEquals("Ahoj user, \u017elt\u00fd k\u00f4\u0148!", catalog.format("greeting", new Locale("sk"), arguments));
+  }
+
+  @Test
+  void localeWithoutFilesShouldFallBackToDefaultLocale() {
+    final Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(new Locale("de", "AT"));
+    try {
+      final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+      final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+      Assertions.assertEquals("Servus user!", catalog.format("greeting", Locale.FRENCH, arguments));
+      Assertions.assertEquals("Bye user", catalog.format("farewell", Locale.FRENCH, arguments));
+      Assertions.assertEquals("Ahoj user, \u017elt\u00fd k\u00f4\u0148!", catalog.format("greeting", new Locale("sk", "SK"), arguments));
+      Assertions.assertEquals(Locale.FRENCH, catalog.getMessage("greeting", Locale.FRENCH).getLocale());
+      Assertions.assertEquals("Hello user!", catalog.format("greeting", Locale.ROOT, arguments));
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  void messageShouldBeCompiledForRequestedLocale() {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("n", 1234.5);
+    Assertions.assertEquals("1.234,5", catalog.format("count", Locale.GERMAN, arguments));
+    Assertions.assertEquals("1,234.5", catalog.format("count", Locale.ENGLISH, arguments));
+    Assertions.assertEquals(Locale.GERMAN, catalog.getMessage("count", Locale.GERMAN).getLocale());
+  }
+
+  @Test
+  void compiledMessageShouldBeCached() {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    Assertions.assertSame(catalog.getMessage("greeting", Locale.GERMAN), catalog.getMessage("greeting", Locale.GERMAN));
+  }
+
+  @Test
+  void missingKeyShouldThrow() {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    Assertions.assertFalse(catalog.containsKey("unknown", Locale.GERMAN));
+    Assertions.assertTrue(catalog.containsKey("farewell", Locale.GERMAN));
+    final MissingResourceException e = Assertions.assertThrows(MissingResourceException.class,
+        () -> catalog.getMessage("unknown", Locale.GERMAN));
+    Assertions.assertEquals("unknown", e.getKey());
+    Assertions.assertThrows(MissingResourceException.class,
+        () -> MessageCatalog.of(directory, "other").getMessage("greeting", Locale.ROOT));
+  }
+
+  private void write(String name, String content) throws IOException {
+    Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void binaryCatalogShouldFormatLikeProperties() throws IOException {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final Path file = directory.resolve("messages.bin");
+    catalog.writeBinary(file);
+    final MessageCatalog binary = MessageCatalog.open(file);
+    Assertions.assertNull(binary.getDirectory());
+    Assertions.assertEquals("messages", binary.getBaseName());
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("n", 1234.5);
+    arguments.put("since", new Date(0));
+    for (Locale locale : new Locale[] {Locale.ROOT, Locale.GERMAN, new Locale("de", "AT"), new Locale("sk"), Locale.FRANCE}) {
+      for (String key : new String[] {"greeting", "farewell", "count", "files"}) {
+        Assertions.assertEquals(catalog.format(key, locale, arguments), binary.format(key, locale, arguments), key + " " + locale);
+      }
+      Assertions.assertFalse(binary.containsKey("unknown", locale));
+    }
+  }
+
+  @Test
+  void corruptBinaryCatalogShouldNotOpen() throws IOException {
+    write("corrupt.bin", "not a catalog");
+    Assertions.assertThrows(IOException.class, () -> MessageCatalog.open(directory.resolve("corrupt.bin")));
+  }
+
+  @Test
+  void reloadShouldRecompileOnlyChangedKeys() throws IOException {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final CompiledMessage greeting = catalog.getMessage("greeting", Locale.GERMAN);
+    final CompiledMessage farewell = catalog.getMessage("farewell", Locale.GERMAN);
+    write("messages_de.properties", "greeting=Guten Tag {name}!\nfarewell=Tsch\u00fcss {name}\n");
+    Assertions.assertSame(greeting, catalog.getMessage("greeting", Locale.GERMAN));
+    final ReloadResult result = catalog.reload();
+    Assertions.assertEquals(1, result.getVersion());
+    Assertions.assertEquals(1, catalog.getVersion());
+    Assertions.assertEquals(2, result.getChangedKeys());
+    Assertions.assertEquals(2, result.getRecompiledMessages());
+    Assertions.assertFalse(result.getDuration().isNegative());
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Guten Tag user!", catalog.format("greeting", Locale.GERMAN, arguments));
+    Assertions.assertEquals("Tsch\u00fcss user", catalog.format("farewell", Locale.GERMAN, arguments));
+    Assertions.assertNotSame(farewell, catalog.getMessage("farewell", Locale.GERMAN));
+    final CompiledMessage count = catalog.getMessage("count", Locale.GERMAN);
+    Assertions.assertEquals(0, catalog.reload().getChangedKeys());
+    Assertions.assertSame(count, catalog.getMessage("count", Locale.GERMAN));
+  }
+
+  @Test
+  void reloadShouldReadAllFilesBeforePublishing() throws IOException {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    catalog.reload();
+    write("messages_sk.properties", "greeting=Dobr\u00fd de\u0148 {name}!\n");
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Ahoj user, \u017elt\u00fd k\u00f4\u0148!", catalog.format("greeting", new Locale("sk"), arguments));
+    catalog.reload();
+    Assertions.assertEquals("Dobr\u00fd de\u0148 user!", catalog.format("greeting", new Locale("sk"), arguments));
+  }
+
+  @Test
+  void filesOfOtherBaseNamesShouldBeIgnored() throws IOException {
+    write("messages_extra.properties", "greeting=Extra {name}!\n");
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    catalog.reload();
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Hello user!", catalog.format("greeting", Locale.ROOT, arguments));
+    Assertions.assertNull(MessageCatalog.PropertiesSource.localeOf("messages", "messages_extra.properties"));
+    Assertions.assertNull(MessageCatalog.PropertiesSource.localeOf("messages", "messages_de.properties.bak"));
+    Assertions.assertEquals(new Locale("de", "AT"), MessageCatalog.PropertiesSource.localeOf("messages", "messages_de_AT.properties"));
+    Assertions.assertEquals(Locale.ROOT, MessageCatalog.PropertiesSource.localeOf("messages", "messages.properties"));
+  }
+
+  @Test
+  void reloadShouldPublishSnapshot() {
+    final Map<Locale, Map<String, String>> patterns = new HashMap<>();
+    patterns.put(Locale.ROOT, Collections.singletonMap("greeting", "Hello {name}!"));
+    final MessageCatalog catalog = MessageCatalog.of("messages", patterns);
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Hello user!", catalog.format("greeting", Locale.GERMAN, arguments));
+    final Map<Locale, Map<String, String>> update = new HashMap<>();
+    update.put(Locale.ROOT, Collections.singletonMap("greeting", "Hi {name}!"));
+    update.put(Locale.GERMAN, Collections.singletonMap("farewell", "Bye {name}"));
+    final ReloadResult result = catalog.reload(update);
+    Assertions.assertEquals(2, result.getChangedKeys());
+    Assertions.assertEquals("Hi user!", catalog.format("greeting", Locale.GERMAN, arguments));
+    Assertions.assertEquals("Bye user", catalog.format("farewell", Locale.GERMAN, arguments));
+    Assertions.assertThrows(IllegalStateException.class, () -> catalog.watch(r -> { }, e -> { }));
+  }
+
+  @Test
+  void binaryCatalogShouldReloadReplacedFile() throws Exception {
+    final Path file = directory.resolve("messages.bin");
+    MessageCatalog.of(directory, "messages").writeBinary(file);
+    final MessageCatalog binary = MessageCatalog.open(file);
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Hallo user!", binary.format("greeting", Locale.GERMAN, arguments));
+    write("messages_de.properties", "greeting=Guten Tag {name}!\n");
+    final Path next = directory.resolve("messages.bin.next");
+    MessageCatalog.of(directory, "messages").writeBinary(next);
+    Files.move(next, file, StandardCopyOption.REPLACE_EXISTING);
+    final ReloadResult result = binary.reloadAsync(Runnable::run).get();
+    Assertions.assertEquals(1, result.getChangedKeys());
+    Assertions.assertEquals("Guten Tag user!", binary.format("greeting", Locale.GERMAN, arguments));
+  }
+
+  @Test
+  void watchShouldReloadChangedFiles() throws Exception {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    Assertions.assertEquals("Hallo user!", catalog.format("greeting", Locale.GERMAN, arguments));
+    final CompletableFuture<ReloadResult> reloaded = new CompletableFuture<>();
+    try (Closeable watch = catalog.watch(reloaded::complete, reloaded::completeExceptionally)) {
+      write("messages_de.properties", "greeting=Guten Tag {name}!\n");
+      Assertions.assertEquals(1, reloaded.get(30, TimeUnit.SECONDS).getChangedKeys());
+    }
+    Assertions.assertEquals("Guten Tag user!", catalog.format("greeting", Locale.GERMAN, arguments));
+  }
+
+  @Test
+  void watchShouldCountChangesOfUnrequestedLocales() throws Exception {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final BlockingQueue<ReloadResult> reloads = new LinkedBlockingQueue<>();
+    try (Closeable watch = catalog.watch(reloads::add, e -> { })) {
+      write("messages_sk.properties", "greeting=Dobr\u00fd de\u0148 {name}!\nfarewell=Dovidenia {name}\n");
+      Assertions.assertEquals(2, reloads.poll(30, TimeUnit.SECONDS).getChangedKeys());
+      write("messages_fr.properties", "greeting=Bonjour {name}!\n");
+      Assertions.assertEquals(1, reloads.poll(30, TimeUnit.SECONDS).getChangedKeys());
+    }
+  }
+
+  @Test
+  void reloadShouldCountChangesOfUnrequestedLocales() {
+    final Map<Locale, Map<String, String>> patterns = new HashMap<>();
+    patterns.put(Locale.ROOT, Collections.singletonMap("greeting", "Hello {name}!"));
+    patterns.put(Locale.GERMAN, Collections.singletonMap("greeting", "Hallo {name}!"));
+    final MessageCatalog catalog = MessageCatalog.of("messages", patterns);
+    final Map<Locale, Map<String, String>> update = new HashMap<>(patterns);
+    update.put(Locale.GERMAN, Collections.singletonMap("greeting", "Guten Tag {name}!"));
+    update.put(Locale.FRENCH, Collections.singletonMap("farewell", "Au revoir {name}"));
+    Assertions.assertEquals(2, catalog.reload(update).getChangedKeys());
+    Assertions.assertEquals(0, catalog.reload(update).getChangedKeys());
+  }
+
+  @Test
+  void watchShouldGoOnAfterCallbackFails() throws Exception {
+    final MessageCatalog catalog = MessageCatalog.of(directory, "messages");
+    final Map<String, Object> arguments = Collections.singletonMap("name", "user");
+    final CompletableFuture<ReloadResult> first = new CompletableFuture<>();
+    final CompletableFuture<ReloadResult> second = new CompletableFuture<>();
+    final CompletableFuture<Exception> failure = new CompletableFuture<>();
+    try (Closeable watch = catalog.watch(result -> {
+      if (first.complete(result)) {
+        throw new IllegalStateException("callback failed");
+      }
+      second.complete(result);
+    }, failure::complete)) {
+      write("messages_de.properties", "greeting=Guten Tag {name}!\n");
+      first.get(30, TimeUnit.SECONDS);
+      Assertions.assertEquals("Guten Tag user!", catalog.format("greeting", Locale.GERMAN, arguments));
+      write("messages_de.properties", "greeting=Gr\u00fc\u00df Gott {name}!\n");
+      second.get(30, TimeUnit.SECONDS);
+    }
+    Assertions.assertEquals("Gr\u00fc\u00df Gott user!", catalog.format("greeting", Locale.GERMAN, arguments));
+    Assertions.assertFalse(failure.isDone());
+  }
+}
@@ -0,0 +1,81 @@
+package sk.soliont.text.format;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MessageEncoderTest {
+  private static final CompiledMessage MESSAGE = CompiledMessage.compile(
+      "Gr\u00fc\u00dfe {name} \u2014 {count,number,integer} \u20ac, {count,choice,0#none|1<{count} of {name}} {missing}!",
+      Locale.GERMAN);
+
+  private static Map<String, Object> arguments() {
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "J\u00f6rg \ud83d\ude00 \ud800x");
+    arguments.put("count", 12345);
+    return arguments;
+  }
+
+  @Test
+  void encoderShouldMatchStringEncoding() {
+    final byte[] expected = MESSAGE.format(arguments()).getBytes(StandardCharsets.UTF_8);
+    for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+      buffer.put((byte) '>');
+      final MessageEncoder encoder = MESSAGE.encoder(arguments());
+      Assertions.assertSame(CoderResult.UNDERFLOW, encoder.encode(buffer));
+      Assertions.assertTrue(encoder.isDone());
+      buffer.flip();
+      Assertions.assertEquals('>', buffer.get());
+      final byte[] actual = new byte[buffer.remaining()];
+      buffer.get(actual);
+      Assertions.assertArrayEquals(expected, actual);
+    }
+  }
+
+  @Test
+  void encoderShouldResumeAfterOverflow() {
+    final byte[] expected = MESSAGE.format(arguments()).getBytes(StandardCharsets.UTF_8);
+    for (int size = 4; size <= 9; size++) {
+      for (boolean direct : new boolean[] {false, true}) {
+        final ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final MessageEncoder encoder = MESSAGE.encoder(arguments());
+        CoderResult result;
+        do {
+          result = encoder.encode(buffer);
+          buffer.flip();
+          final byte[] chunk = new byte[buffer.remaining()];
+          buffer.get(chunk);
+          // every chunk holds whole characters
+          Assertions.assertArrayEquals(chunk, new String(chunk, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8));
+          out.write(chunk, 0, chunk.length);
+          buffer.clear();
+        } while (result.isOverflow());
+        Assertions.assertArrayEquals(expected, out.toByteArray(), "buffer of " + size);
+      }
+    }
+  }
+
+  @Test
+  void sinkShouldGrowAndKeepAppending() throws Exception {
+    final ByteSink sink = new ByteSink(2);
+    MESSAGE.encode(arguments(), sink);
+    MESSAGE.encode(null, sink);
+    final String expected = MESSAGE.format(arguments()) + MESSAGE.format((Map<String, ?>) null);
+    Assertions.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), sink.toByteArray());
+    Assertions.assertEquals(sink.size(), sink.asByteBuffer().remaining());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    sink.writeTo(out);
+    Assertions.assertArrayEquals(sink.toByteArray(), out.toByteArray());
+    sink.reset();
+    Assertions.assertEquals(0, sink.size());
+    Assertions.assertFalse(MESSAGE.encoder(new Object[0]).isDone());
+  }
+}
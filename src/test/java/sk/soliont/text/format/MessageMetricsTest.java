@@ -0,0 +1,146 @@
+package sk.soliont.text.format;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParsePosition;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MessageMetricsTest {
+  @AfterEach
+  void removeListener() {
+    Instrumentation.setListener(null);
+  }
+
+  @Test
+  void formattingShouldBeRecordedPerTemplate() throws Exception {
+    final MessageMetrics metrics = new MessageMetrics();
+    Instrumentation.setListener(metrics);
+    final CompiledMessage message = CompiledMessage.compile("Hello {name}, you have {count,number,integer} items", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("count", 1234);
+    message.format(arguments);
+    message.format(new Object[] {"user", 5});
+    message.formatTo(arguments, new StringBuilder());
+    Assertions.assertEquals(3, metrics.getFormatCount());
+    Assertions.assertEquals(1, metrics.getCompileCount());
+    final TemplateStatistics statistics = metrics.getTemplateStatistics(message.getPattern());
+    Assertions.assertEquals(3, statistics.getFormatCount());
+    Assertions.assertEquals("Hello user, you have 1,234 items".length(), statistics.getMaxLength());
+    Assertions.assertEquals(3, sum(statistics.getHistogram()));
+    Assertions.assertTrue(statistics.getMedianNanos() <= statistics.get99thPercentileNanos());
+  }
+
+  @Test
+  void patternShouldMatchFormatPattern() {
+    final String pattern = "'{'x'}' {a,number,#.0} {b,date,yyyy} {c}";
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat(pattern, Locale.ENGLISH);
+    Assertions.assertEquals(format.toPattern(), format.toCompiledMessage().getPattern());
+    Assertions.assertEquals(format.toPattern(), MessageTemplate.parse(pattern).compile(Locale.ENGLISH).getPattern());
+  }
+
+  @Test
+  void parsingAndCacheShouldBeRecorded() {
+    final MessageMetrics metrics = new MessageMetrics();
+    Instrumentation.setListener(metrics);
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{a} and {b}", Locale.ROOT);
+    format.parse("x and y", new ParsePosition(0));
+    format.parse("x or y", new ParsePosition(0));
+    Assertions.assertEquals(2, metrics.getParseCount());
+    Assertions.assertEquals(1, metrics.getParseFailureCount());
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", 1);
+    final String pattern = "metrics cache {value} " + System.nanoTime();
+    NamedArgsMessageFormat.format(pattern, arguments);
+    NamedArgsMessageFormat.format(pattern, arguments);
+    Assertions.assertEquals(0.5, metrics.getCacheHitRate());
+    metrics.reset();
+    Assertions.assertEquals(0, metrics.getParseCount());
+    Assertions.assertTrue(metrics.getTemplateStatistics().isEmpty());
+  }
+
+  @Test
+  void parsingAndCompilationShouldBeRecordedPerTemplate() throws Exception {
+    final MessageMetrics metrics = new MessageMetrics();
+    Instrumentation.setListener(metrics);
+    final CompiledMessage message = CompiledMessage.compile("user {name} logged in", Locale.ROOT);
+    final MessageArguments arguments = message.newArguments();
+    message.parse("user joe logged in", new ParsePosition(0), arguments);
+    message.parse("user joe logged out", new ParsePosition(0), arguments);
+    final Path file = Files.createTempFile("metrics", ".log");
+    try {
+      Files.write(file, "user anne logged in\nsomething else\n".getBytes(StandardCharsets.UTF_8));
+      Assertions.assertEquals(1, LogExtractor.of(message).forEach(file, values -> { }));
+    } finally {
+      Files.delete(file);
+    }
+    final TemplateStatistics statistics = metrics.getTemplateStatistics(message.getPattern());
+    Assertions.assertEquals(4, statistics.getParseCount());
+    Assertions.assertEquals(2, statistics.getParseFailureCount());
+    Assertions.assertEquals(4, sum(statistics.getParseHistogram()));
+    Assertions.assertTrue(statistics.getMedianParseNanos() <= statistics.get99thPercentileParseNanos());
+    Assertions.assertEquals(1, statistics.getCompileCount());
+    Assertions.assertEquals(1, sum(statistics.getCompileHistogram()));
+    Assertions.assertEquals(0, statistics.getFormatCount());
+    Assertions.assertEquals(4, metrics.getParseCount());
+    Assertions.assertEquals(1, metrics.getCompileCount());
+  }
+
+  @Test
+  void templatesOverLimitShouldBeAggregated() {
+    final MessageMetrics metrics = new MessageMetrics(2);
+    Instrumentation.setListener(metrics);
+    for (int i = 0; i < 5; i++) {
+      CompiledMessage.compile("message " + i + " {a}", Locale.ROOT).format(new Object[] {i});
+    }
+    final List<TemplateStatistics> statistics = metrics.getTemplateStatistics();
+    Assertions.assertEquals(3, statistics.size());
+    Assertions.assertEquals(MessageMetrics.OTHER_TEMPLATES, statistics.get(0).getPattern());
+    Assertions.assertEquals(3, statistics.get(0).getFormatCount());
+  }
+
+  @Test
+  void metricsShouldBeReadableThroughJmx() throws Exception {
+    final MessageMetrics metrics = new MessageMetrics();
+    Instrumentation.setListener(metrics);
+    final ObjectName name = metrics.registerMBean();
+    try {
+      CompiledMessage.compile("{a}", Locale.ROOT).format(new Object[] {"x"});
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      Assertions.assertEquals(1L, server.getAttribute(name, "FormatCount"));
+      final CompositeData[] templates = (CompositeData[]) server.getAttribute(name, "TemplateStatistics");
+      Assertions.assertEquals("{a}", templates[0].get("pattern"));
+    } finally {
+      metrics.unregisterMBean();
+    }
+  }
+
+  @Test
+  void bucketShouldBeLog2OfDuration() {
+    Assertions.assertEquals(0, MessageMetrics.bucket(0));
+    Assertions.assertEquals(1, MessageMetrics.bucket(1));
+    Assertions.assertEquals(10, MessageMetrics.bucket(1000));
+    Assertions.assertEquals(MessageMetrics.BUCKETS - 1, MessageMetrics.bucket(Long.MAX_VALUE));
+  }
+
+  private static long sum(long[] histogram) {
+    long sum = 0;
+    for (long count : histogram) {
+      sum += count;
+    }
+    return sum;
+  }
+}
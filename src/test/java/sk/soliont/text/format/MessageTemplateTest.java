@@ -0,0 +1,41 @@
+package sk.soliont.text.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MessageTemplateTest {
+  @Test
+  void templateShouldCompileLikePattern() throws IOException {
+    final String pattern = "{name} has {count,number,integer} items worth {price,number,currency} since {since,date,yyyy-MM-dd}"
+        + " and {count,choice,0#no files|1#one file|1<{count} files}.";
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageTemplate.parse(pattern).writeTo(new DataOutputStream(bytes));
+    final MessageTemplate template = MessageTemplate.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("count", 1234);
+    arguments.put("price", 12.5);
+    arguments.put("since", new Date(0));
+    for (Locale locale : new Locale[] {Locale.US, Locale.GERMANY, Locale.JAPAN}) {
+      Assertions.assertEquals(CompiledMessage.compile(pattern, locale).format(arguments), template.compile(locale).format(arguments));
+    }
+  }
+
+  @Test
+  void formatSetThroughApiShouldNotBeTokenized() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{a,number} {b}", Locale.ROOT);
+    format.toTemplate();
+    format.setFormatByArgumentName("a", new DecimalFormat("#.0"));
+    Assertions.assertThrows(IllegalArgumentException.class, format::toTemplate);
+  }
+}
@@ -1,6 +1,14 @@
 package sk.soliont.text.format;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.AttributedCharacterIterator;
+import java.text.ChoiceFormat;
+import java.text.FieldPosition;
+import java.text.Format;
+import java.text.NumberFormat;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import org.junit.jupiter.api.Assertions;
@@ -87,4 +95,119 @@ class NamedArgsMessageFormatTest {
     final String message = namedArgsMessageFormat.format(null);
     Assertions.assertEquals("{''{name}!", message);
   }
+
+  @Test
+  void builderAndAppendableShouldMatchStringBuffer() throws IOException {
+    final NamedArgsMessageFormat namedArgsMessageFormat = new NamedArgsMessageFormat("Hello {name}, you have {count} messages.");
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("count", 3);
+    final String expected = namedArgsMessageFormat.format(arguments, new StringBuffer(), null).toString();
+    Assertions.assertEquals(expected, namedArgsMessageFormat.format(arguments, new StringBuilder(), null).toString());
+    Assertions.assertEquals(expected, namedArgsMessageFormat.formatTo(arguments, new StringWriter()).toString());
+  }
+
+  @Test
+  void fieldPositionShouldBeRelativeToExistingContent() {
+    final NamedArgsMessageFormat namedArgsMessageFormat = new NamedArgsMessageFormat("Hello {name}!");
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    final FieldPosition bufferPosition = new FieldPosition(NamedArgsMessageFormat.Field.ARGUMENT);
+    namedArgsMessageFormat.format(arguments, new StringBuffer(">> "), bufferPosition);
+    Assertions.assertEquals(9, bufferPosition.getBeginIndex());
+    Assertions.assertEquals(13, bufferPosition.getEndIndex());
+    final FieldPosition builderPosition = new FieldPosition(NamedArgsMessageFormat.Field.ARGUMENT);
+    namedArgsMessageFormat.format(arguments, new StringBuilder(">> "), builderPosition);
+    Assertions.assertEquals(9, builderPosition.getBeginIndex());
+    Assertions.assertEquals(13, builderPosition.getEndIndex());
+  }
+
+  @Test
+  void cloneShouldCopyElementsWithoutFormat() {
+    final NamedArgsMessageFormat namedArgsMessageFormat = new NamedArgsMessageFormat("{name} has {count,number,integer}", Locale.ENGLISH);
+    final NamedArgsMessageFormat clone = (NamedArgsMessageFormat) namedArgsMessageFormat.clone();
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "user");
+    arguments.put("count", 1234);
+    Assertions.assertEquals("user has 1,234", clone.format(arguments));
+  }
+
+  @Test
+  void parseShouldUseSubformats() throws Exception {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{name} paid {amount,number,#.00} for {count,number,integer} items", Locale.ENGLISH);
+    final Map<String, Object> result = format.parse("joe paid 12.50 for 3 items");
+    Assertions.assertEquals("joe", result.get("name"));
+    Assertions.assertEquals(12.5, result.get("amount"));
+    Assertions.assertEquals(3L, result.get("count"));
+    Assertions.assertThrows(java.text.ParseException.class, () -> format.parse("joe paid much for 3 items"));
+  }
+
+  @Test
+  void formatToCharacterIteratorShouldAttributeArguments() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{name} has {count,number,integer} points, {missing}", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("name", "joe");
+    arguments.put("count", 12345);
+    final AttributedCharacterIterator iterator = format.formatToCharacterIterator(arguments);
+    final StringBuilder text = new StringBuilder();
+    for (char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+      text.append(c);
+    }
+    Assertions.assertEquals(format.format(arguments), text.toString());
+    Assertions.assertEquals("joe has 12,345 points, {missing}", text.toString());
+
+    iterator.setIndex(0);
+    Assertions.assertEquals("name", iterator.getAttribute(NamedArgsMessageFormat.Field.ARGUMENT));
+    Assertions.assertEquals(3, iterator.getRunLimit(NamedArgsMessageFormat.Field.ARGUMENT));
+    iterator.setIndex(8);
+    Assertions.assertEquals("count", iterator.getAttribute(NamedArgsMessageFormat.Field.ARGUMENT));
+    Assertions.assertEquals(8, iterator.getRunStart(NamedArgsMessageFormat.Field.ARGUMENT));
+    Assertions.assertEquals(14, iterator.getRunLimit(NamedArgsMessageFormat.Field.ARGUMENT));
+    Assertions.assertEquals(NumberFormat.Field.INTEGER, iterator.getAttribute(NumberFormat.Field.INTEGER));
+    iterator.setIndex(10);
+    Assertions.assertEquals(NumberFormat.Field.GROUPING_SEPARATOR, iterator.getAttribute(NumberFormat.Field.GROUPING_SEPARATOR));
+    iterator.setIndex(23);
+    Assertions.assertNull(iterator.getAttribute(NamedArgsMessageFormat.Field.ARGUMENT));
+  }
+
+  @Test
+  void formatToCharacterIteratorShouldRejectOtherObjects() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{name}");
+    Assertions.assertThrows(NullPointerException.class, () -> format.formatToCharacterIterator(null));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> format.formatToCharacterIterator(new Object[] {"joe"}));
+  }
+
+  @Test
+  void staticFormatShouldResolveNamesOfChoiceBranches() {
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("n", 1);
+    arguments.put("x", "X");
+    Assertions.assertEquals("1 item X", NamedArgsMessageFormat.format("{n,choice,0#none|1#{n} item {x}}", arguments));
+  }
+
+  @Test
+  void changedChoiceFormatShouldApply() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{n,choice,0#none|1#one|1<{n} of {x}}", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("n", 1);
+    arguments.put("x", "X");
+    Assertions.assertEquals("one", format.format(arguments));
+    final ChoiceFormat choice = (ChoiceFormat) format.getFormatsByArgumentName().get("n");
+    choice.applyPattern("0#zero|1#single|1<{n} out of {x}");
+    Assertions.assertEquals("single", format.format(arguments));
+    arguments.put("n", 2);
+    Assertions.assertEquals("2 out of X", format.format(arguments));
+    choice.applyPattern("0#zero|1#single|1<{n} of {x}");
+    Assertions.assertEquals("2 of X", format.format(arguments));
+  }
+
+  @Test
+  void formatThroughFormatShouldMoveEstimatedLength() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{text}", Locale.ROOT);
+    final int initial = format.compiled().getEstimatedLength();
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("text", new String(new char[100]).replace('\0', 'x'));
+    Assertions.assertEquals(arguments.get("text"), ((Format) format).format(arguments));
+    Assertions.assertTrue(format.compiled().getEstimatedLength() > initial);
+  }
 }
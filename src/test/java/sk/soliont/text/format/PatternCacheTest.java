@@ -0,0 +1,74 @@
+package sk.soliont.text.format;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PatternCacheTest {
+  @Test
+  void samePatternShouldBeCompiledOnce() {
+    final PatternCache cache = new PatternCache(10);
+    final CompiledMessage first = cache.get("Hello {name}!", Locale.ROOT);
+    final CompiledMessage second = cache.get("Hello {name}!", Locale.ROOT);
+    Assertions.assertSame(first, second);
+    Assertions.assertEquals(1, cache.getHitCount());
+    Assertions.assertEquals(1, cache.getMissCount());
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  @Test
+  void localeShouldBePartOfTheKey() {
+    final PatternCache cache = new PatternCache(10);
+    final CompiledMessage english = cache.get("{n,number}", Locale.ENGLISH);
+    final CompiledMessage german = cache.get("{n,number}", Locale.GERMAN);
+    Assertions.assertNotSame(english, german);
+    Assertions.assertEquals(Locale.GERMAN, german.getLocale());
+    Assertions.assertEquals(2, cache.size());
+  }
+
+  @Test
+  void cacheShouldStayWithinMaximumSize() {
+    final PatternCache cache = new PatternCache(3);
+    for (int i = 0; i < 10; i++) {
+      cache.get("{name" + i + "}", Locale.ROOT);
+    }
+    Assertions.assertEquals(3, cache.size());
+    Assertions.assertEquals(7, cache.getEvictionCount());
+  }
+
+  @Test
+  void recentlyUsedPatternShouldSurviveEviction() {
+    final PatternCache cache = new PatternCache(2);
+    final CompiledMessage hot = cache.get("{hot}", Locale.ROOT);
+    cache.get("{cold}", Locale.ROOT);
+    cache.get("{hot}", Locale.ROOT);
+    cache.get("{new}", Locale.ROOT);
+    Assertions.assertSame(hot, cache.get("{hot}", Locale.ROOT));
+    Assertions.assertEquals(2, cache.size());
+  }
+
+  @Test
+  void zeroSizeShouldTurnCacheOff() {
+    final PatternCache cache = new PatternCache(10);
+    cache.get("{name}", Locale.ROOT);
+    cache.setMaximumSize(0);
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertNotSame(cache.get("{name}", Locale.ROOT), cache.get("{name}", Locale.ROOT));
+    Assertions.assertEquals(0, cache.size());
+  }
+
+  @Test
+  void staticFormatShouldUseSharedCache() {
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("count", 1234);
+    final String pattern = "Count {count,number,integer} of {count}";
+    final long misses = NamedArgsMessageFormat.getPatternCache().getMissCount();
+    NamedArgsMessageFormat.format(pattern, arguments);
+    NamedArgsMessageFormat.format(pattern, arguments);
+    Assertions.assertEquals(new NamedArgsMessageFormat(pattern).format(arguments), NamedArgsMessageFormat.format(pattern, arguments));
+    Assertions.assertTrue(NamedArgsMessageFormat.getPatternCache().getMissCount() - misses <= 1);
+  }
+}
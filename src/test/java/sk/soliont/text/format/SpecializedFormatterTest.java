@@ -0,0 +1,93 @@
+package sk.soliont.text.format;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SpecializedFormatterTest {
+  @Test
+  void specializedMessageShouldFormatLikeInterpreter() {
+    final String[] patterns = {
+        "",
+        "no arguments",
+        "{only}",
+        "{a}{b} and {a}",
+        "{name} has {count,number,integer} items worth {price,number,#.00} and {count,choice,0#no files|1#one file|1<{count} files by {name}}.",
+        "{when} / {when,date,yyyy-MM-dd} / {when,time,short} / {price}",
+    };
+    final Object[][] values = {
+        {"user", 1234, 12.5, new Date(0)},
+        {null, 1, new BigDecimal("0.125"), LocalDate.of(2019, 1, 2)},
+        {"user", 0, -1, ZonedDateTime.of(2019, 1, 2, 3, 4, 5, 0, ZoneOffset.ofHours(2))},
+        {},
+    };
+    for (String pattern : patterns) {
+      final CompiledMessage message = CompiledMessage.compile(pattern, Locale.ENGLISH);
+      final CompiledMessage specialized = message.specialize();
+      Assertions.assertTrue(specialized.isSpecialized());
+      for (Object[] row : values) {
+        final Map<String, Object> arguments = new HashMap<>();
+        final String[] names = {"name", "count", "price", "when", "a", "b", "only"};
+        for (int i = 0; i < names.length && i < row.length; i++) {
+          arguments.put(names[i], row[i]);
+        }
+        final Object[] slots = new Object[message.getArgumentNames().size()];
+        for (int slot = 0; slot < slots.length; slot++) {
+          slots[slot] = arguments.get(message.getArgumentNames().get(slot));
+        }
+        Assertions.assertEquals(message.format(arguments), specialized.format(arguments), pattern);
+        Assertions.assertEquals(message.format(slots), specialized.format(slots), pattern);
+      }
+    }
+  }
+
+  @Test
+  void specializedMessageShouldAppendToExistingContent() {
+    final CompiledMessage message = CompiledMessage.compile("{a}-{b,number,#.0}", Locale.ENGLISH).specialize();
+    final StringBuilder result = new StringBuilder("prefix:");
+    message.format(new Object[] {"x", 2}, result);
+    Assertions.assertEquals("prefix:x-2.0", result.toString());
+  }
+
+  @Test
+  void unspecializedElementsShouldFallBackToInterpreter() {
+    final CompiledMessage message = CompiledMessage.compile(
+        "{n,choice,0#none|1#one on {when,date,yyyy-MM-dd}|1<{n} on {when,date,yyyy-MM-dd}} at {when,time,HH:mm}", Locale.ENGLISH);
+    final CompiledMessage specialized = message.specialize();
+    Assertions.assertTrue(specialized.isSpecialized());
+    final LocalDate day = LocalDate.of(2019, 1, 2);
+    for (Object when : new Object[] {day.atTime(3, 4), Date.from(day.atTime(3, 4).atZone(ZoneOffset.UTC).toInstant())}) {
+      for (int n = 0; n < 3; n++) {
+        final Object[] values = {n, when};
+        Assertions.assertEquals(message.format(values), specialized.format(values));
+      }
+    }
+    Assertions.assertEquals("2 on 2019-01-02 at 03:04", specialized.format(new Object[] {2, day.atTime(3, 4)}));
+  }
+
+  @Test
+  void argumentErrorShouldPropagateLikeInterpreter() {
+    final CompiledMessage message = CompiledMessage.compile("{a} {b,number}", Locale.ENGLISH).specialize();
+    final StringBuilder result = new StringBuilder("prefix:");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> message.format(new Object[] {"x", "not a number"}, result));
+    Assertions.assertEquals("prefix:x ", result.toString());
+  }
+
+  @Test
+  void specializeShouldReturnSameMessageWhenAlreadySpecialized() {
+    final CompiledMessage message = CompiledMessage.compile("{a}", Locale.ROOT);
+    Assertions.assertFalse(message.isSpecialized());
+    final CompiledMessage specialized = message.specialize();
+    Assertions.assertNotSame(message, specialized);
+    Assertions.assertSame(specialized, specialized.specialize());
+    Assertions.assertEquals(message.getArgumentNames(), specialized.getArgumentNames());
+  }
+}
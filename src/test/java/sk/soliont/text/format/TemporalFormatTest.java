@@ -0,0 +1,233 @@
+package sk.soliont.text.format;
+
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.Format;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+class TemporalFormatTest {
+  @Test
+  void patternsShouldBeTranslatedOnlyWhenEquivalent() {
+    Assertions.assertTrue(TemporalFormat.isTranslatable("yyyy-MM-dd HH:mm:ss.SSS"));
+    Assertions.assertTrue(TemporalFormat.isTranslatable("EEEE, d. MMMM y 'um' h:mm a"));
+    Assertions.assertFalse(TemporalFormat.isTranslatable("u"));
+    Assertions.assertFalse(TemporalFormat.isTranslatable("ss.S"));
+    Assertions.assertFalse(TemporalFormat.isTranslatable("[yyyy]"));
+    Assertions.assertTrue(TemporalFormat.isTranslatable("'[yyyy]'"));
+    Assertions.assertFalse(TemporalFormat.isTranslatable("MMMM"));
+    Assertions.assertFalse(TemporalFormat.isTranslatable("'in' MMM"));
+    Assertions.assertTrue(TemporalFormat.isTranslatable("MMMM yyyy"));
+    Assertions.assertTrue(TemporalFormat.isTranslatable("MM"));
+    Assertions.assertFalse(TemporalFormat.isTranslatable("MMM G"));
+  }
+
+  @Test
+  void temporalValuesShouldFormatLikeDates() {
+    final TimeZone original = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("Europe/Bratislava"));
+      final CompiledMessage message = CompiledMessage.compile(
+          "{value,date,yyyy-MM-dd HH:mm:ss.SSS}|{value,date,short}|{value,time,medium}|{value,date,EEEE, d. MMMM yyyy}|{value}", Locale.GERMANY);
+      final LocalDateTime local = LocalDateTime.of(2019, 3, 31, 14, 5, 6, 789000000);
+      final Instant instant = local.atZone(ZoneId.systemDefault()).toInstant();
+      final Map<String, Object> dateArguments = new HashMap<>();
+      dateArguments.put("value", Date.from(instant));
+      final String expected = message.format(dateArguments);
+      for (Object value : new Object[] {instant, local, local.atZone(ZoneId.systemDefault())}) {
+        final Map<String, Object> arguments = new HashMap<>();
+        arguments.put("value", value);
+        Assertions.assertEquals(expected, message.format(arguments), value.getClass().getName());
+      }
+    } finally {
+      TimeZone.setDefault(original);
+    }
+  }
+
+  @Test
+  void zonedValueShouldKeepItsZone() {
+    final CompiledMessage message = CompiledMessage.compile("{value,date,HH:mm}", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", ZonedDateTime.of(2020, 1, 1, 8, 30, 0, 0, ZoneOffset.ofHours(-11)));
+    Assertions.assertEquals("08:30", message.format(arguments));
+  }
+
+  @Test
+  void zonedValueShouldKeepItsZoneWithUntranslatablePattern() {
+    final TimeZone original = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+      final CompiledMessage message = CompiledMessage.compile("{plain,date,yyyy-MM-dd HH:mm}|{era,date,yyyy-MM-dd HH:mm G}", Locale.ENGLISH);
+      final ZonedDateTime zoned = ZonedDateTime.of(2024, 3, 5, 9, 0, 0, 0, ZoneId.of("Asia/Tokyo"));
+      for (Object value : new Object[] {zoned, zoned.toOffsetDateTime()}) {
+        final Map<String, Object> arguments = new HashMap<>();
+        arguments.put("plain", value);
+        arguments.put("era", value);
+        Assertions.assertEquals("2024-03-05 09:00|2024-03-05 09:00 AD", message.format(arguments), value.getClass().getName());
+      }
+    } finally {
+      TimeZone.setDefault(original);
+    }
+  }
+
+  @Test
+  void subformatNamesShouldApplyToTemporalValues() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{value,date,d MMMM yyyy}", Locale.ENGLISH);
+    final LocalDate date = LocalDate.of(2024, 3, 5);
+    final Map<String, Object> dateArguments = new HashMap<>();
+    dateArguments.put("value", Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", date);
+    format.setFormatByArgumentName("value", new SimpleDateFormat("d MMMM yyyy", Locale.GERMAN));
+    Assertions.assertEquals("5 M\u00e4rz 2024", format.format(dateArguments));
+    Assertions.assertEquals("5 M\u00e4rz 2024", format.format(arguments));
+    final DateFormatSymbols symbols = DateFormatSymbols.getInstance(Locale.ENGLISH);
+    symbols.setMonths(new String[] {"I", "II", "III", "IV", "V", "VI", "VII", "VIII", "IX", "X", "XI", "XII", ""});
+    format.setFormatByArgumentName("value", new SimpleDateFormat("d MMMM yyyy", symbols));
+    Assertions.assertEquals("5 III 2024", format.format(dateArguments));
+    Assertions.assertEquals("5 III 2024", format.format(arguments));
+    format.setFormatByArgumentName("value", new SimpleDateFormat("d MMMM yyyy", Locale.ENGLISH));
+    Assertions.assertEquals("5 March 2024", format.format(arguments));
+  }
+
+  @Test
+  void changedSubformatShouldApplyToTemporalValues() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{value,date,yyyy-MM-dd HH:mm}", Locale.ENGLISH);
+    final LocalDateTime local = LocalDateTime.of(2021, 6, 15, 8, 30);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", local);
+    Assertions.assertEquals("2021-06-15 08:30", format.format(arguments));
+    final SimpleDateFormat subformat = (SimpleDateFormat) format.getFormatsByArgumentName().get("value");
+    subformat.applyPattern("dd.MM.yyyy HH:mm");
+    subformat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    Assertions.assertEquals("15.06.2021 08:30", format.format(arguments));
+    arguments.put("value", local.toInstant(ZoneOffset.ofHours(2)));
+    Assertions.assertEquals("15.06.2021 06:30", format.format(arguments));
+  }
+
+  @Test
+  void untranslatablePatternShouldFallBackToDateFormat() {
+    final NamedArgsMessageFormat format = new NamedArgsMessageFormat("{value,date,u yyyy-MM-dd}", Locale.ENGLISH);
+    final LocalDate date = LocalDate.of(2021, 6, 15);
+    final SimpleDateFormat reference = new SimpleDateFormat("u yyyy-MM-dd", Locale.ENGLISH);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", date);
+    Assertions.assertEquals(reference.format(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant())), format.format(arguments));
+  }
+
+  @Test
+  void valueWithoutFormatShouldUseShortStyles() {
+    final CompiledMessage message = CompiledMessage.compile("{value}", Locale.US);
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", LocalDate.of(2020, 2, 29));
+    Assertions.assertEquals("2/29/20", message.format(arguments));
+    arguments.put("value", LocalTime.of(13, 45));
+    final Date date = Date.from(LocalDate.of(1970, 1, 1).atTime(13, 45).atZone(ZoneId.systemDefault()).toInstant());
+    Assertions.assertEquals(DateFormat.getTimeInstance(DateFormat.SHORT, Locale.US).format(date), message.format(arguments));
+  }
+
+  @Test
+  void temporalValuesShouldFormatLikeDatesInRepresentativeLocales() {
+    // other calendars, other digits, names that differ between the APIs, and the root locale
+    final Locale[] locales = {
+        new Locale("ja", "JP", "JP"), new Locale("th", "TH", "TH"), new Locale("zh", "SG"), Locale.ROOT, Locale.GERMANY, Locale.US
+    };
+    final List<String> failures = formatDifferences(locales);
+    Assertions.assertEquals(Collections.emptyList(), failures);
+    Assertions.assertFalse(TemporalFormat.of(new SimpleDateFormat("d MMM yyyy", locales[2]), locales[2]).isTranslated());
+    Assertions.assertTrue(TemporalFormat.of(new SimpleDateFormat("d MMM yyyy", Locale.GERMANY), Locale.GERMANY).isTranslated());
+  }
+
+  /**
+   * Compares every available locale; slow, so only run with the
+   * <code>exhaustive</code> profile.
+   */
+  @Test
+  @Tag("exhaustive")
+  void temporalValuesShouldFormatLikeDatesInAllLocales() {
+    final List<String> failures = formatDifferences(Locale.getAvailableLocales());
+    Assertions.assertEquals(Collections.emptyList(), failures.subList(0, Math.min(20, failures.size())), failures.size() + " failures");
+    int translated = 0;
+    for (Locale locale : Locale.getAvailableLocales()) {
+      if (TemporalFormat.of(new SimpleDateFormat("d. MMMM yyyy HH:mm", locale), locale).isTranslated()) {
+        translated++;
+      }
+    }
+    Assertions.assertTrue(translated > Locale.getAvailableLocales().length / 2);
+  }
+
+  private static List<String> formatDifferences(Locale[] locales) {
+    final String[] styles = {
+        "short", "medium", "long", "full", "yyyy-MM-dd HH:mm:ss.SSS", "d. MMMM yyyy", "MMMM", "MMM", "LLLL", "MMMM yyyy",
+        "EEEE, d MMM yy", "EEE h:mm a", "D k:mm", "KK:mm a z", "zzzz Z", "MMMM G"
+    };
+    final TimeZone original = TimeZone.getDefault();
+    final List<String> failures = new ArrayList<>();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("Europe/Bratislava"));
+      final LocalDateTime local = LocalDateTime.of(2024, 1, 15, 14, 5, 6, 789000000);
+      final Instant instant = local.atZone(ZoneId.systemDefault()).toInstant();
+      final Map<String, Object> dateArguments = new HashMap<>();
+      dateArguments.put("value", Date.from(instant));
+      for (Locale locale : locales) {
+        final List<String> patterns = new ArrayList<>();
+        patterns.add("{value}");
+        for (String style : styles) {
+          patterns.add("{value,date," + style + "}");
+          patterns.add("{value,time," + style + "}");
+        }
+        for (String pattern : patterns) {
+          final CompiledMessage message = CompiledMessage.compile(pattern, locale);
+          final String expected = message.format(dateArguments);
+          for (Object value : new Object[] {instant, local, local.atZone(ZoneId.systemDefault())}) {
+            final Map<String, Object> arguments = new HashMap<>();
+            arguments.put("value", value);
+            final String actual = message.format(arguments);
+            if (!expected.equals(actual)) {
+              failures.add(locale + " " + pattern + " " + value.getClass().getSimpleName() + ": " + expected + " != " + actual);
+            }
+          }
+        }
+      }
+    } finally {
+      TimeZone.setDefault(original);
+    }
+    return failures;
+  }
+
+  @Test
+  void otherCalendarsAndDigitsShouldFormatLikeDates() {
+    final LocalDateTime local = LocalDateTime.of(2024, 1, 15, 14, 5);
+    final Map<String, Object> dateArguments = new HashMap<>();
+    dateArguments.put("value", Date.from(local.atZone(ZoneId.systemDefault()).toInstant()));
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("value", local);
+    for (Locale locale : new Locale[] {new Locale("ja", "JP", "JP"), new Locale("th", "TH", "TH")}) {
+      for (String pattern : new String[] {"{value,date,yyyy-MM-dd}", "{value}"}) {
+        final CompiledMessage message = CompiledMessage.compile(pattern, locale);
+        Assertions.assertEquals(message.format(dateArguments), message.format(arguments), () -> locale + " " + pattern);
+      }
+      final Format format = new NamedArgsMessageFormat("{value,date,yyyy-MM-dd}", locale).getFormatsByArgumentName().get("value");
+      Assertions.assertFalse(TemporalFormat.of(format, locale).isTranslated(), locale::toString);
+    }
+    Assertions.assertEquals("6-01-15", CompiledMessage.compile("{value,date,y-MM-dd}", new Locale("ja", "JP", "JP")).format(arguments));
+  }
+}